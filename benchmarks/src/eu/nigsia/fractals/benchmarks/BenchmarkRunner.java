@@ -0,0 +1,173 @@
+package eu.nigsia.fractals.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import eu.nigsia.fractals.render.Kernel;
+import eu.nigsia.fractals.render.MandelbrotEngine;
+
+/**
+ * 	Runs every benchmark with the GC profiler (allocation rates) at 1, 2, 4... threads up to the number of cores, and prints a scaling curve for each one.
+ * 	The benchmarks are scaled with benchmark threads, except {@link RenderBenchmark}, which is scaled with the workers of its engine.
+ * 	Any benchmark can also be run alone with the usual JMH command line (<i>org.openjdk.jmh.Main</i>).
+ *
+ *  Usage: BenchmarkRunner [--quick] [regex]
+ *
+ * 	regex: Only the benchmark classes whose simple name matches it (every one by default).
+ * 	--quick: A single short warmup and measurement, to check that everything runs.
+ *
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class BenchmarkRunner
+{
+	/**
+	 * 	Benchmarks scaled with benchmark threads.
+	 */
+	private static final Class<?>[] THREADED = { KernelBenchmark.class, SierpinskiBenchmark.class, GeometryBenchmark.class, PixmapBenchmark.class };
+
+	public static void main(String[] args) throws RunnerException
+	{
+		String filter = ".*";
+		boolean quick = false;
+		for(String arg : args)
+		{
+			if(arg.equals("--quick"))
+				quick = true;
+			else
+				filter = arg;
+		}
+
+		List<Integer> counts = threadCounts(Runtime.getRuntime().availableProcessors());
+		List<RunResult> results = new ArrayList<RunResult>();
+		for(Class<?> benchmark : THREADED)
+		{
+			if(!benchmark.getSimpleName().matches(filter))
+				continue;
+			for(int threads : counts)
+			{
+				ChainedOptionsBuilder options = options(benchmark, quick).threads(threads);
+				if(benchmark == KernelBenchmark.class)
+					options.param("kernel", availableKernels());
+				results.addAll(new Runner(options.build()).run());
+			}
+		}
+		if(RenderBenchmark.class.getSimpleName().matches(filter))
+		{
+			String[] workers = new String[counts.size()];
+			for(int i = 0; i < workers.length; i++)
+				workers[i] = String.valueOf(counts.get(i));
+			results.addAll(new Runner(options(RenderBenchmark.class, quick).param("threads", workers).build()).run());
+		}
+		printScaling(results);
+	}
+
+	/**
+	 * 	Gets the common options of a benchmark class: the GC profiler and, when this JVM could load the vectorized kernels, their module.
+	 */
+	private static ChainedOptionsBuilder options(Class<?> benchmark, boolean quick)
+	{
+		ChainedOptionsBuilder options = new OptionsBuilder().include(benchmark.getName() + "\\.").addProfiler(GCProfiler.class);
+		if(MandelbrotEngine.isVectorAvailable())
+			options.jvmArgsAppend("--add-modules", "jdk.incubator.vector");
+		if(quick)
+			options.warmupIterations(1).measurementIterations(1).forks(1);
+		return options;
+	}
+
+	/**
+	 * 	Gets 1, 2, 4... up to cores, and cores itself.
+	 */
+	private static List<Integer> threadCounts(int cores)
+	{
+		List<Integer> counts = new ArrayList<Integer>();
+		for(int n = 1; n < cores; n *= 2)
+			counts.add(n);
+		counts.add(cores);
+		return counts;
+	}
+
+	/**
+	 * 	Gets the names of the kernels of {@link KernelBenchmark} this JVM can run.
+	 */
+	private static String[] availableKernels()
+	{
+		List<String> kernels = new ArrayList<String>();
+		for(Kernel kernel : Kernel.values())
+			if(MandelbrotEngine.isAvailable(kernel))
+				kernels.add(kernel.name());
+		return kernels.toArray(new String[kernels.size()]);
+	}
+
+	/**
+	 * 	Prints a table for every benchmark and combination of parameters: score, speedup over one thread and allocation rates at every thread count.
+	 */
+	private static void printScaling(Collection<RunResult> results)
+	{
+		Map<String, TreeMap<Integer, RunResult>> curves = new LinkedHashMap<String, TreeMap<Integer, RunResult>>();
+		for(RunResult result : results)
+		{
+			BenchmarkParams params = result.getParams();
+			StringBuilder name = new StringBuilder(params.getBenchmark());
+			int threads = params.getThreads();
+			for(String key : params.getParamsKeys())
+			{
+				if(key.equals("threads"))
+					threads = Integer.parseInt(params.getParam(key));
+				else
+					name.append(' ').append(key).append('=').append(params.getParam(key));
+			}
+			String key = name.toString();
+			if(!curves.containsKey(key))
+				curves.put(key, new TreeMap<Integer, RunResult>());
+			curves.get(key).put(threads, result);
+		}
+
+		System.out.println();
+		System.out.println("Scaling curves");
+		for(Map.Entry<String, TreeMap<Integer, RunResult>> curve : curves.entrySet())
+		{
+			RunResult first = curve.getValue().firstEntry().getValue();
+			boolean throughput = first.getParams().getMode() == Mode.Throughput;
+			double base = first.getPrimaryResult().getScore();
+			System.out.println();
+			System.out.println(curve.getKey() + " (" + first.getPrimaryResult().getScoreUnit() + ")");
+			System.out.printf("%8s %14s %9s %13s %13s%n", "threads", "score", "speedup", "alloc MB/s", "alloc B/op");
+			for(Map.Entry<Integer, RunResult> point : curve.getValue().entrySet())
+			{
+				double score = point.getValue().getPrimaryResult().getScore();
+				System.out.printf("%8d %14.4g %8.2fx %13.1f %13.1f%n", point.getKey(), score, throughput ? score / base : base / score,
+						secondary(point.getValue(), "gc.alloc.rate"), secondary(point.getValue(), "gc.alloc.rate.norm"));
+			}
+		}
+	}
+
+	/**
+	 * 	Gets the score of a result of the GC profiler, or NaN if there is none. Their labels have a prefix that depends on the version of JMH.
+	 */
+	private static double secondary(RunResult result, String label)
+	{
+		// JMH declares the map with the raw Result, so it's read by key
+		for(String key : result.getSecondaryResults().keySet())
+			if(key.endsWith(label))
+			{
+				Result<?> score = result.getSecondaryResults().get(key);
+				return score.getScore();
+			}
+		return Double.NaN;
+	}
+}
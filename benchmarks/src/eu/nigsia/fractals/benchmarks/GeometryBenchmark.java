@@ -0,0 +1,54 @@
+package eu.nigsia.fractals.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.nigsia.fractals.math.geom.Point;
+import eu.nigsia.fractals.math.geom.Triangle;
+
+/**
+ * 	Time of the geometry used by every step of the chaos game: {@link Point#midPoint(Point)} and {@link Triangle#getRandomVertex()}.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeometryBenchmark
+{
+	private Point a, b;
+	private Triangle triangle;
+
+	@Setup
+	public void setup()
+	{
+		a = new Point(250, 250);
+		b = new Point(500, 500);
+		triangle = new Triangle(new Point(250, 0), b, new Point(0, 500));
+	}
+
+	@Benchmark
+	public Point midPoint()
+	{
+		return a.midPoint(b);
+	}
+
+	@Benchmark
+	public Point getRandomVertex()
+	{
+		return triangle.getRandomVertex();
+	}
+}
@@ -0,0 +1,72 @@
+package eu.nigsia.fractals.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.nigsia.fractals.render.CancelToken;
+import eu.nigsia.fractals.render.IterationBuffer;
+import eu.nigsia.fractals.render.Kernel;
+import eu.nigsia.fractals.render.MandelbrotEngine;
+
+/**
+ * 	Throughput of the escape-time kernels, in pixels per second, on the {@link ReferenceView}s.
+ * 	Every benchmark thread has its own engine with a single worker, so running it with more threads gives the scaling of the kernel itself across cores.
+ * 	The vectorized kernels need the JVM to be started with <i>--add-modules jdk.incubator.vector</i>; {@link BenchmarkRunner} skips them when they aren't available.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(ReferenceView.PIXELS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class KernelBenchmark
+{
+	@Param({ "DEFAULT", "ZOOM", "INTERIOR", "BOUNDARY" })
+	public ReferenceView view;
+	@Param({ "DOUBLE", "DOUBLE_VECTOR", "FLOAT", "FLOAT_VECTOR" })
+	public Kernel kernel;
+
+	private ForkJoinPool pool;
+	private MandelbrotEngine engine;
+	private IterationBuffer buffer;
+
+	@Setup
+	public void setup()
+	{
+		if(!MandelbrotEngine.isAvailable(kernel))
+			throw new IllegalStateException("Kernel " + kernel + " isn't available in this JVM");
+		pool = new ForkJoinPool(1);
+		engine = new MandelbrotEngine(pool);
+		buffer = new IterationBuffer(view.view.width, view.view.height, false);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public IterationBuffer render()
+	{
+		engine.render(view.view, buffer, kernel, CancelToken.NONE);
+		return buffer;
+	}
+}
@@ -0,0 +1,109 @@
+package eu.nigsia.fractals.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+import eu.nigsia.fractals.Main;
+import eu.nigsia.fractals.util.PixelSink;
+
+/**
+ * 	Throughput of writing a whole image into a {@link Pixmap}, in pixels per second: the native calls of {@link Pixmap#drawPixel(int, int)}
+ * 	against the pixel by pixel and the bulk writes of {@link PixelSink}. A pixmap only needs the native library, not a GL context.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(Main.WIDTH * Main.HEIGHT)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PixmapBenchmark
+{
+	/**
+	 * 	The ways of writing the pixels.
+	 */
+	public static enum Method
+	{
+		/**
+		 * 	{@link Pixmap#setColor(int)} and {@link Pixmap#drawPixel(int, int)} for every pixel.
+		 */
+		DRAW_PIXEL,
+		/**
+		 * 	{@link PixelSink#set(int, int, int)} for every pixel.
+		 */
+		SINK_SET,
+		/**
+		 * 	A single {@link PixelSink#write(int[])}.
+		 */
+		SINK_WRITE
+	}
+
+	@Param({ "RGBA8888", "RGBA4444" })
+	public Pixmap.Format format;
+	@Param({ "DRAW_PIXEL", "SINK_SET", "SINK_WRITE" })
+	public Method method;
+
+	private Pixmap pixmap;
+	private PixelSink sink;
+	private int[] colors;
+
+	@Setup
+	public void setup()
+	{
+		GdxNativesLoader.load();
+		pixmap = new Pixmap(Main.WIDTH, Main.HEIGHT, format);
+		sink = PixelSink.of(pixmap);
+		colors = new int[Main.WIDTH * Main.HEIGHT];
+		for(int i = 0; i < colors.length; i++)
+			colors[i] = i * 0x9E3779B9 | 0xff;
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		pixmap.dispose();
+	}
+
+	@Benchmark
+	public Pixmap write()
+	{
+		switch(method)
+		{
+		case DRAW_PIXEL:
+			for(int y = 0, i = 0; y < Main.HEIGHT; y++)
+				for(int x = 0; x < Main.WIDTH; x++, i++)
+				{
+					pixmap.setColor(colors[i]);
+					pixmap.drawPixel(x, y);
+				}
+			break;
+		case SINK_SET:
+			for(int y = 0, i = 0; y < Main.HEIGHT; y++)
+				for(int x = 0; x < Main.WIDTH; x++, i++)
+					sink.set(x, y, colors[i]);
+			break;
+		default:
+			sink.write(colors);
+			break;
+		}
+		return pixmap;
+	}
+}
@@ -0,0 +1,44 @@
+package eu.nigsia.fractals.benchmarks;
+
+import eu.nigsia.fractals.Main;
+import eu.nigsia.fractals.render.View;
+
+/**
+ * 	Views of the Mandelbrot set every benchmark is measured on, so the results of different runs can be compared. They all have the size of the window.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public enum ReferenceView
+{
+	/**
+	 * 	The view the window starts with (R key): the whole set, mostly escaping in a few iterations.
+	 */
+	DEFAULT(new View(250, 250, 150, 1000, Main.WIDTH, Main.HEIGHT)),
+	/**
+	 * 	The target of the Z key: about two thirds of the pixels don't escape.
+	 */
+	ZOOM(new View(1552, 4840, 6380, 1000, Main.WIDTH, Main.HEIGHT)),
+	/**
+	 * 	Inside the period 3 bulb (-0.1226 - 0.745i): every pixel is inside the set and outside of the cardioid and the period 2 bulb, so none is skipped.
+	 */
+	INTERIOR(new View(863, 3975, 5000, 1000, Main.WIDTH, Main.HEIGHT)),
+	/**
+	 * 	Seahorse valley (-0.745 + 0.1i): filaments with long escape times next to the set.
+	 */
+	BOUNDARY(new View(37500, -4750, 50000, 1000, Main.WIDTH, Main.HEIGHT));
+
+	/**
+	 * 	Pixels of every view.
+	 */
+	public static final int PIXELS = Main.WIDTH * Main.HEIGHT;
+
+	/**
+	 * 	The view.
+	 */
+	public final View view;
+
+	private ReferenceView(View view)
+	{
+		this.view = view;
+	}
+}
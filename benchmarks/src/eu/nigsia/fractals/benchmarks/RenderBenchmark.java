@@ -0,0 +1,126 @@
+package eu.nigsia.fractals.benchmarks;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.nigsia.fractals.render.CancelToken;
+import eu.nigsia.fractals.render.IterationBuffer;
+import eu.nigsia.fractals.render.MandelbrotEngine;
+import eu.nigsia.fractals.render.MemoryTileCache;
+import eu.nigsia.fractals.render.RenderPipeline;
+import eu.nigsia.fractals.render.View;
+
+/**
+ * 	Time of the render paths of {@link MandelbrotEngine} for a whole {@link ReferenceView}, with a pool of {@link #threads} workers.
+ * 	The benchmark itself runs on one thread; the scaling curve is given by {@link #threads}.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(1)
+@Fork(1)
+public class RenderBenchmark
+{
+	/**
+	 * 	The ways a view can be calculated.
+	 */
+	public static enum Path
+	{
+		/**
+		 * 	Every pixel, in a single pass.
+		 */
+		FULL,
+		/**
+		 * 	Every pass of {@link RenderPipeline}, from blocks of {@value RenderPipeline#COARSEST_BLOCK} pixels to single pixels.
+		 */
+		PROGRESSIVE,
+		/**
+		 * 	A single pass with Mariani-Silver subdivision.
+		 */
+		SUBDIVIDED,
+		/**
+		 * 	Only the anti-aliasing samples of a finished view, with a budget of one sample per pixel.
+		 */
+		SUPERSAMPLED,
+		/**
+		 * 	Every tile copied from a {@link MemoryTileCache}.
+		 */
+		CACHED
+	}
+
+	@Param({ "DEFAULT", "ZOOM" })
+	public ReferenceView view;
+	@Param({ "FULL", "PROGRESSIVE", "SUBDIVIDED", "SUPERSAMPLED", "CACHED" })
+	public Path path;
+	/**
+	 * 	Workers of the engine.
+	 */
+	@Param({ "1" })
+	public int threads;
+
+	private ForkJoinPool pool;
+	private MandelbrotEngine engine;
+	private IterationBuffer buffer;
+
+	@Setup
+	public void setup()
+	{
+		pool = new ForkJoinPool(threads);
+		engine = new MandelbrotEngine(pool);
+		engine.setSubdividing(path == Path.SUBDIVIDED);
+		View v = view.view;
+		buffer = new IterationBuffer(v.width, v.height);
+		if(path == Path.SUPERSAMPLED || path == Path.CACHED)
+		{
+			if(path == Path.CACHED)
+				engine.setCache(new MemoryTileCache(64L << 20, null));
+			engine.render(v, buffer);
+		}
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		pool.shutdown();
+	}
+
+	@Benchmark
+	public Object render()
+	{
+		View v = view.view;
+		switch(path)
+		{
+		case PROGRESSIVE:
+			for(int block = RenderPipeline.COARSEST_BLOCK; block >= 1; block /= 2)
+				engine.render(v, buffer, block, block != RenderPipeline.COARSEST_BLOCK, CancelToken.NONE);
+			return buffer;
+		case SUPERSAMPLED:
+			return engine.supersample(v, buffer, 1, v.size(), CancelToken.NONE);
+		case CACHED:
+			if(!engine.load(v, buffer))
+				throw new IllegalStateException("The view isn't in the cache");
+			return buffer;
+		default:
+			engine.render(v, buffer, 1, false, CancelToken.NONE);
+			return buffer;
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package eu.nigsia.fractals.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import eu.nigsia.fractals.Main;
+import eu.nigsia.fractals.render.ChaosGame;
+
+/**
+ * 	Throughput of one walker of the chaos game of SierpinskiState.calculate(), in points per second. It plays on the benchmark thread, so the scaling curve is the one of the walkers.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(SierpinskiBenchmark.POINTS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SierpinskiBenchmark
+{
+	/**
+	 * 	Points of an invocation.
+	 */
+	static final int POINTS = 1 << 22;
+
+	private long[] hits;
+	private ChaosGame game;
+
+	@Setup
+	public void setup()
+	{
+		hits = new long[Main.WIDTH * Main.HEIGHT];
+		game = ChaosGame.sierpinski(Main.WIDTH, Main.HEIGHT, 1, null);
+	}
+
+	@Benchmark
+	public long[] calculate()
+	{
+		game.play(POINTS, hits);
+		return hits;
+	}
+}
@@ -74,4 +74,14 @@ public class Main extends ApplicationAdapter
 		
 		batch.end();
 	}
+	
+	/**
+	 * 	Method inherited from {@link ApplicationAdapter}. Called once when the application is closed. Disposes every state and the {@link SpriteBatch}.
+	 */
+	@Override
+	public void dispose()
+	{
+		sm.dispose();
+		batch.dispose();
+	}
 }
@@ -0,0 +1,33 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	This class is used to stop a calculation that is no longer wanted. The threads that calculate it check {@link #isCancelled()} every row and give up as soon as it's true.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class CancelToken
+{
+	/**
+	 * 	Token that is never cancelled. Used for calculations that must always finish.
+	 */
+	public static final CancelToken NONE = new CancelToken();
+
+	/**
+	 * 	Whether the calculation was cancelled or not. It's volatile since it's written and read from different threads.
+	 */
+	private volatile boolean cancelled = false;
+
+	/**
+	 * 	Cancels the calculation. It can't be undone.
+	 */
+	public void cancel()
+	{
+		if(this != NONE)
+			cancelled = true;
+	}
+
+	/**
+	 * 	Returns whether the calculation was cancelled or not.
+	 */
+	public boolean isCancelled(){	return cancelled;	}
+}
@@ -0,0 +1,332 @@
+package eu.nigsia.fractals.render;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+import eu.nigsia.fractals.math.geom.Point;
+import eu.nigsia.fractals.math.geom.Triangle;
+
+/**
+ * 	This class plays the chaos game that draws Sierpinski's triangle. It follows the next algorithm:
+ *  1. Generate 3 points creating an imaginary triangle. Let's call those points <i>p</i>, <i>q</i> and <i>r</i>.
+ *  2. Let <i>mid</i> be the center of the triangle.
+ *  3. <b>for</b> every iteration <b>do</b>
+ *  4. 			Get a random vertex (<i>p</i>, <i>q</i> or <i>r</i>).
+ *  5.			<i>mid</i> = Mid point of the segment created by the random vertex and the last mid point.
+ *  6.			Draw the pixel represented by the mid point.
+ * 	It's played by several independent walkers at the same time, one task each on a {@link ForkJoinPool}. A step allocates nothing:
+ * 	the mid point is two ints, the vertex is picked by a xoroshiro128+ generator of the walker (no shared {@link java.util.Random}), and the pixel is counted in the walker's own hit buffer.
+ * 	The buffers are only added to the caller's counts by {@link #merge(long[])}, when the counts are needed (or a buffer could overflow), so the result is the number of times every pixel was hit: the density of the triangle.
+ * 	That sweep is split in bands of rows between the threads of the pool, so playing a few points every frame doesn't cost a full pass over every buffer.
+ * 	The walkers keep their position and generator between calls, so a game can be played a little at a time.
+ * 	It needs no GL context.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class ChaosGame
+{
+	/**
+	 * 	Maximum steps of a walker per round. A pixel of its hit buffer can't be hit more times than that, so the ints never overflow.
+	 */
+	private static final long ROUND = 1 << 30;
+	/**
+	 * 	Steps a walker does before its points are counted, so the points of its way from the start to the triangle aren't drawn.
+	 */
+	private static final int BURN_IN = 32;
+	/**
+	 * 	Rows merged by a task. The bigger bands are split in halves.
+	 */
+	private static final int MERGE_ROWS = 16;
+	/**
+	 * 	Increment of the seeds (2^64 divided by the golden ratio), as in SplitMix64.
+	 */
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * 	Vertices of the triangle.
+	 */
+	private final int[] vx, vy;
+	/**
+	 * 	Size of the image. The points outside of it aren't counted.
+	 */
+	public final int width, height;
+	/**
+	 * 	Walkers. They are only used by one task at a time.
+	 */
+	private final Walker[] walkers;
+	/**
+	 * 	Pool where the walkers play, or null to play on the calling thread (with a single walker).
+	 */
+	private final ForkJoinPool pool;
+	/**
+	 * 	Most steps any walker has counted in its hit buffer since the last {@link #merge(long[])}.
+	 */
+	private long buffered = 0;
+
+	/**
+	 * 	Creates a game with the following parameters:
+	 *
+	 * @param triangle: {@link Triangle} whose vertices are picked.
+	 * @param start: First point of every walker.
+	 * @param width: Width of the image.
+	 * @param height: Height of the image.
+	 * @param walkers: Number of walkers. There is no point in having more than threads in pool.
+	 * @param pool: {@link ForkJoinPool} where the walkers play, or null to play on the calling thread. It needs a single walker.
+	 * @param seed: Seed of the generators. The same seed gives the same counts.
+	 */
+	public ChaosGame(Triangle triangle, Point start, int width, int height, int walkers, ForkJoinPool pool, long seed)
+	{
+		if(walkers < 1 || (pool == null && walkers != 1))
+			throw new IllegalArgumentException(walkers + " walkers");
+		vx = new int[]{ triangle.getP().x, triangle.getQ().x, triangle.getR().x };
+		vy = new int[]{ triangle.getP().y, triangle.getQ().y, triangle.getR().y };
+		this.width = width;
+		this.height = height;
+		this.pool = pool;
+		this.walkers = new Walker[walkers];
+		for (int k = 0; k < walkers; k++)
+			this.walkers[k] = new Walker(start.x, start.y, seed + (k + 1) * GOLDEN_GAMMA);
+	}
+
+	/**
+	 * 	Creates the game of an image of the given size, with one walker per thread of the pool shared by the engines: a triangle with its top vertex in the middle of the first row and the other two at the bottom corners, starting at the center.
+	 * @param width: Width of the image.
+	 * @param height: Height of the image.
+	 */
+	public static ChaosGame sierpinski(int width, int height)
+	{
+		ForkJoinPool pool = MandelbrotEngine.getSharedPool();
+		return sierpinski(width, height, pool.getParallelism(), pool);
+	}
+
+	/**
+	 * 	Creates the game of an image of the given size, like {@link #sierpinski(int, int)}.
+	 * @param width: Width of the image.
+	 * @param height: Height of the image.
+	 * @param walkers: Number of walkers.
+	 * @param pool: {@link ForkJoinPool} where the walkers play, or null to play on the calling thread. It needs a single walker.
+	 */
+	public static ChaosGame sierpinski(int width, int height, int walkers, ForkJoinPool pool)
+	{
+		Point p = new Point(width/2, 0);
+		Point q = new Point(width, height);
+		Point r = new Point(0, height);
+		return new ChaosGame(new Triangle(p, q, r), new Point(width/2, height/2), width, height, walkers, pool, TimeUtils.nanoTime());
+	}
+
+	/**
+	 * 	Plays some iterations, split between the walkers, and blocks until they are finished. Their hits stay in the buffers of the walkers until the next {@link #merge(long[])}.
+	 * @param iterations: Number of iterations of all the walkers together. It can't be more than {@link #getCapacity()}.
+	 */
+	public void play(long iterations)
+	{
+		if(iterations < 0 || iterations > getCapacity())
+			throw new IllegalArgumentException(iterations + " iterations, " + getCapacity() + " left before a merge");
+		int n = walkers.length;
+		long[] steps = new long[n];
+		for (int k = 0; k < n; k++)
+			steps[k] = iterations / n + (k < iterations % n ? 1 : 0);
+		if(pool == null)
+			walkers[0].walk(this, steps[0]);
+		else
+			pool.invoke(new WalkTask(this, steps, 0, n));
+		buffered += steps[0];
+	}
+
+	/**
+	 * 	Plays some iterations like {@link #play(long)}, merging the buffers into hits as often as needed, and blocks until they are finished.
+	 * @param iterations: Number of iterations of all the walkers together.
+	 * @param hits: Number of times every pixel (x, y) was hit, at x + y*width. The new hits, and the ones still in the buffers, are added to it.
+	 */
+	public void play(long iterations, long[] hits)
+	{
+		while(iterations > 0)
+		{
+			long round = Math.min(iterations, getCapacity());
+			play(round);
+			merge(hits);
+			iterations -= round;
+		}
+	}
+
+	/**
+	 * 	Adds the hits counted by the walkers since the last merge to hits, and clears their buffers. The rows are split between the threads of the pool.
+	 * @param hits: Number of times every pixel (x, y) was hit, at x + y*width.
+	 */
+	public void merge(long[] hits)
+	{
+		if(buffered == 0)
+			return;
+		if(pool == null)
+			walkers[0].mergeInto(hits, 0, hits.length);
+		else
+			pool.invoke(new MergeTask(this, hits, 0, height));
+		buffered = 0;
+	}
+
+	/**
+	 * 	Gets the number of iterations that can still be played before a {@link #merge(long[])}, so no pixel of a buffer overflows.
+	 */
+	public long getCapacity(){	return (ROUND - buffered) * walkers.length;	}
+
+	/**
+	 * 	Gets the number of walkers.
+	 */
+	public int getWalkers(){	return walkers.length;	}
+
+	/**
+	 * 	State of a walker: its last mid point, its generator and its hit buffer.
+	 */
+	private static final class Walker
+	{
+		/**
+		 * 	Last mid point.
+		 */
+		private int x, y;
+		/**
+		 * 	State of the xoroshiro128+ generator.
+		 */
+		private long s0, s1;
+		/**
+		 * 	Steps left before its points are counted.
+		 */
+		private int burnIn = BURN_IN;
+		/**
+		 * 	Hits of the current round. It's created by the first walk, on the thread that plays it.
+		 */
+		private int[] hits;
+
+		Walker(int x, int y, long seed)
+		{
+			this.x = x;
+			this.y = y;
+			s0 = mix(seed);
+			s1 = mix(seed + GOLDEN_GAMMA);
+		}
+
+		/**
+		 * 	Does some steps of the game and counts them in {@link #hits}.
+		 */
+		void walk(ChaosGame game, long steps)
+		{
+			int w = game.width, h = game.height;
+			if(hits == null)
+				hits = new int[w * h];
+			int[] vx = game.vx, vy = game.vy, hits = this.hits;
+			int x = this.x, y = this.y, burnIn = this.burnIn;
+			long s0 = this.s0, s1 = this.s1;
+			for (long i = 0; i < steps; i++)
+			{
+				// xoroshiro128+
+				long r = s0 + s1;
+				s1 ^= s0;
+				s0 = Long.rotateLeft(s0, 24) ^ s1 ^ (s1 << 16);
+				s1 = Long.rotateLeft(s1, 37);
+				// Vertex 0, 1 or 2 from the high 32 bits, without a division
+				int v = (int)(((r >>> 32) * 3) >>> 32);
+				x = (x + vx[v]) / 2;
+				y = (y + vy[v]) / 2;
+				if(burnIn > 0)
+					burnIn--;
+				else if((x | y) >= 0 && x < w && y < h)
+					hits[x + y * w]++;
+			}
+			this.x = x;
+			this.y = y;
+			this.burnIn = burnIn;
+			this.s0 = s0;
+			this.s1 = s1;
+		}
+
+		/**
+		 * 	Adds the pixels from to to (excluded) of {@link #hits} to counts and clears them for the next round.
+		 */
+		void mergeInto(long[] counts, int from, int to)
+		{
+			if(hits == null)
+				return;
+			for (int i = from; i < to; i++)
+			{
+				counts[i] += hits[i];
+				hits[i] = 0;
+			}
+		}
+
+		/**
+		 * 	SplitMix64 mixing function. It turns close seeds into unrelated states.
+		 */
+		private static long mix(long z)
+		{
+			z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+			z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+			return z ^ (z >>> 31);
+		}
+	}
+
+	/**
+	 * 	Plays the walkers from to to (excluded), splitting them in halves until there is one per task.
+	 */
+	private static final class WalkTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ChaosGame game;
+		private final long[] steps;
+		private final int from, to;
+
+		WalkTask(ChaosGame game, long[] steps, int from, int to)
+		{
+			this.game = game;
+			this.steps = steps;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > 1)
+			{
+				int half = (from + to) >>> 1;
+				invokeAll(new WalkTask(game, steps, from, half), new WalkTask(game, steps, half, to));
+				return;
+			}
+			game.walkers[from].walk(game, steps[from]);
+		}
+	}
+
+	/**
+	 * 	Merges the buffers of every walker into the counts of the rows from to to (excluded), splitting the rows in halves until there are at most {@link #MERGE_ROWS}.
+	 */
+	private static final class MergeTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final ChaosGame game;
+		private final long[] counts;
+		private final int from, to;
+
+		MergeTask(ChaosGame game, long[] counts, int from, int to)
+		{
+			this.game = game;
+			this.counts = counts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(to - from > MERGE_ROWS)
+			{
+				int half = (from + to) >>> 1;
+				invokeAll(new MergeTask(game, counts, from, half), new MergeTask(game, counts, half, to));
+				return;
+			}
+			for (Walker walker : game.walkers)
+				walker.mergeInto(counts, from * game.width, to * game.width);
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package eu.nigsia.fractals.render;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * 	This class calculates a {@link DeepView} of the Mandelbrot set using every core of the machine.
+ * 	It picks the cheapest {@link Kernel} that is still precise enough for the distance between pixels (see {@link #select(DeepView)}):
+ * 	plain doubles, then double-double, and finally perturbation theory.
+ * 	With perturbation, only one orbit (the center) is calculated with arbitrary precision; every pixel is iterated as a double difference to it with {@link PerturbationKernel}.
+ * 	The pixels that turn out to be glitches are calculated again with a new reference taken from the glitches themselves, up to {@value #MAX_REFERENCES} references.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class DeepEngine
+{
+	/**
+	 * 	Maximum number of references per view. The glitches left after the last one are kept as they are.
+	 */
+	public static final int MAX_REFERENCES = 32;
+	/**
+	 * 	Rows calculated by each task.
+	 */
+	private static final int ROWS = 8;
+	/**
+	 * 	Smallest distance between pixels, relative to the magnitude of the center, that {@link Kernel#DOUBLE} can tell apart.
+	 */
+	private static final double DOUBLE_LIMIT = 1e-13;
+	/**
+	 * 	Smallest distance between pixels, relative to the magnitude of the center, that {@link Kernel#DOUBLE_DOUBLE} can tell apart.
+	 * 	It leaves 8 digits of margin, since long orbits (tens of thousands of iterations) lose several of them.
+	 */
+	private static final double DOUBLE_DOUBLE_LIMIT = 1e-24;
+
+	/**
+	 * 	Pool where the rows are calculated.
+	 */
+	private final ForkJoinPool pool;
+	/**
+	 * 	Number of references used by the last view. It's 0 if it didn't need perturbation.
+	 */
+	private volatile int references;
+	/**
+	 * 	Kernel used by the last view.
+	 */
+	private volatile Kernel kernel;
+
+	/**
+	 * 	Creates an engine that uses the pool shared by every {@link MandelbrotEngine}.
+	 */
+	public DeepEngine()
+	{
+		this(MandelbrotEngine.getSharedPool());
+	}
+
+	/**
+	 * 	Creates an engine that calculates its rows on pool.
+	 * @param pool: The {@link ForkJoinPool} where the rows are calculated.
+	 */
+	public DeepEngine(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * 	Calculates every pixel of view and blocks until it's finished.
+	 *
+	 * @param view: The {@link DeepView} to calculate.
+	 * @param out: {@link IterationBuffer} of the same size as the view, where the result is stored.
+	 * @param token: {@link CancelToken} checked every row. When it's cancelled the remaining rows are skipped.
+	 * @return True if the view was finished, false if it was cancelled (then out is only partially calculated).
+	 */
+	public boolean render(DeepView view, IterationBuffer out, CancelToken token)
+	{
+		if(out.width != view.width || out.height != view.height)
+			throw new IllegalArgumentException("Buffer of " + out.width + "x" + out.height + " for " + view);
+
+		kernel = select(view);
+		if(kernel != Kernel.PERTURBATION)
+		{
+			references = 0;
+			pool.invoke(new RowTask(view, out, kernel, null, 0, 0, false, false, token, 0, view.height));
+			return !token.isCancelled();
+		}
+
+		MathContext mc = view.getMathContext();
+		int refX = view.width/2, refY = view.height/2;
+		ReferenceOrbit ref = new ReferenceOrbit(view.centerRe, view.centerIm, view.maxIter, mc, token);
+		int count = 1;
+		pool.invoke(new RowTask(view, out, kernel, ref, refX, refY, false, true, token, 0, view.height));
+
+		while(!token.isCancelled())
+		{
+			int glitch = pickGlitch(out);
+			if(glitch < 0)
+				break;
+			// The reference pixel is never a glitch of its own, so every round fixes at least one pixel.
+			refX = glitch % view.width;
+			refY = glitch / view.width;
+			ref = new ReferenceOrbit(view.re(refX), view.im(refY), view.maxIter, mc, token);
+			count++;
+			pool.invoke(new RowTask(view, out, kernel, ref, refX, refY, true, count < MAX_REFERENCES, token, 0, view.height));
+		}
+		references = count;
+		return !token.isCancelled();
+	}
+
+	/**
+	 * 	Picks the cheapest kernel that can tell apart two pixels of view. The distance between them is compared with the magnitude of the center,
+	 * 	since that's what limits the precision of <i>c</i>.
+	 * @param view: The {@link DeepView} to calculate.
+	 */
+	public static Kernel select(DeepView view)
+	{
+		double magnitude = Math.max(1, Math.abs(view.centerRe.doubleValue()) + Math.abs(view.centerIm.doubleValue()));
+		double spacing = view.scale / magnitude;
+		if(spacing >= DOUBLE_LIMIT)
+			return Kernel.DOUBLE;
+		if(spacing >= DOUBLE_DOUBLE_LIMIT)
+			return Kernel.DOUBLE_DOUBLE;
+		return Kernel.PERTURBATION;
+	}
+
+	/**
+	 * 	Gets the number of references used by the last view. It's 0 if it didn't need perturbation.
+	 */
+	public int getReferences(){	return references;	}
+	/**
+	 * 	Gets the kernel used by the last view.
+	 */
+	public Kernel getKernel(){	return kernel;	}
+
+	/**
+	 * 	Picks the pixel used as the next reference: the middle one of every glitch, in scan order.
+	 * @return Its index, or -1 if there are no glitches.
+	 */
+	private static int pickGlitch(IterationBuffer out)
+	{
+		int[] iterations = out.iterations;
+		int size = out.size();
+		int glitches = 0;
+		for(int i = 0; i < size; i++)
+			if(iterations[i] == PerturbationKernel.GLITCH)
+				glitches++;
+		if(glitches == 0)
+			return -1;
+
+		int middle = glitches / 2;
+		for(int i = 0; i < size; i++)
+			if(iterations[i] == PerturbationKernel.GLITCH && middle-- == 0)
+				return i;
+		return -1;
+	}
+
+	/**
+	 * 	Calculates a band of rows with one kernel (relative to one reference, with perturbation). It's split in two until it's not bigger than {@value #ROWS} rows.
+	 */
+	private static class RowTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final DeepView view;
+		private final IterationBuffer out;
+		private final Kernel kernel;
+		private final ReferenceOrbit ref;
+		private final int refX, refY;
+		private final boolean onlyGlitches;
+		private final boolean detect;
+		private final CancelToken token;
+		private final int y, h;
+
+		RowTask(DeepView view, IterationBuffer out, Kernel kernel, ReferenceOrbit ref, int refX, int refY, boolean onlyGlitches, boolean detect, CancelToken token, int y, int h)
+		{
+			this.view = view;
+			this.out = out;
+			this.kernel = kernel;
+			this.ref = ref;
+			this.refX = refX;
+			this.refY = refY;
+			this.onlyGlitches = onlyGlitches;
+			this.detect = detect;
+			this.token = token;
+			this.y = y;
+			this.h = h;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(token.isCancelled())
+				return;
+
+			if(h > ROWS)
+			{
+				int half = h / 2;
+				invokeAll(new RowTask(view, out, kernel, ref, refX, refY, onlyGlitches, detect, token, y, half),
+						new RowTask(view, out, kernel, ref, refX, refY, onlyGlitches, detect, token, y + half, h - half));
+				return;
+			}
+
+			int width = view.width;
+			int maxIter = view.maxIter;
+			if(kernel == Kernel.DOUBLE)
+			{
+				double re = view.centerRe.doubleValue(), im = view.centerIm.doubleValue();
+				for (int py = y; py < y + h && !token.isCancelled(); py++)
+				{
+					double cY = im + view.dy(py);
+					for (int px = 0; px < width; px++)
+						MandelbrotKernel.iterate(re + view.dx(px), cY, maxIter, out, px + py*width);
+				}
+				return;
+			}
+
+			if(kernel == Kernel.DOUBLE_DOUBLE)
+			{
+				// c = center + offset, where the offset is a plain double
+				BigDecimal re = view.centerRe, im = view.centerIm;
+				double reHi = re.doubleValue(), reLo = DoubleDoubleKernel.lo(re);
+				double imHi = im.doubleValue(), imLo = DoubleDoubleKernel.lo(im);
+				for (int py = y; py < y + h && !token.isCancelled(); py++)
+				{
+					double dy = view.dy(py);
+					double cyHi = imHi + dy;
+					double cyLo = DoubleDoubleKernel.sumError(imHi, dy, cyHi) + imLo;
+					for (int px = 0; px < width; px++)
+					{
+						double dx = view.dx(px);
+						double cxHi = reHi + dx;
+						double cxLo = DoubleDoubleKernel.sumError(reHi, dx, cxHi) + reLo;
+						DoubleDoubleKernel.iterate(cxHi, cxLo, cyHi, cyLo, maxIter, out, px + py*width);
+					}
+				}
+				return;
+			}
+
+			for (int py = y; py < y + h && !token.isCancelled(); py++)
+			{
+				double dcY = (py - refY) * view.scale;
+				for (int px = 0; px < width; px++)
+				{
+					int index = px + py*width;
+					if(!onlyGlitches || out.iterations[index] == PerturbationKernel.GLITCH)
+						PerturbationKernel.iterate(ref, (px - refX) * view.scale, dcY, maxIter, detect, out, index);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,166 @@
+package eu.nigsia.fractals.render;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * 	This class represents a region of the Mandelbrot set that can be zoomed far beyond the precision of a double.
+ * 	Its center is stored with arbitrary precision ({@link BigDecimal}), while the distance between two pixels is a double, which is enough down to about 1e-300.
+ * 	Unlike {@link View}, zooming is multiplicative, so every step of the mouse wheel zooms by the same factor no matter how deep the view is.
+ * 	It's immutable, so the same instance can be shared between every thread that calculates a part of it.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class DeepView
+{
+	/**
+	 * 	Minimum number of significant digits used for the center.
+	 */
+	private static final int MIN_DIGITS = 20;
+	/**
+	 * 	Digits kept beyond the ones needed to tell two pixels apart.
+	 */
+	private static final int GUARD_DIGITS = 20;
+	/**
+	 * 	Smallest distance between pixels. A double keeps its precision down to about 1e-308, and the offsets of the pixels must still be normal numbers.
+	 */
+	public static final double MIN_SCALE = 1e-300;
+	/**
+	 * 	Biggest distance between pixels. The whole set is a few pixels wide at it, and zooming out further would only take it to 0.
+	 */
+	public static final double MAX_SCALE = 1;
+
+	/**
+	 * 	Constant <i>c</i> (in the Real axis) of the pixel (width/2, height/2).
+	 */
+	public final BigDecimal centerRe;
+	/**
+	 * 	Constant <i>c</i> (in the Complex axis) of the pixel (width/2, height/2).
+	 */
+	public final BigDecimal centerIm;
+	/**
+	 * 	Distance between two pixels in the complex plane.
+	 */
+	public final double scale;
+	/**
+	 * 	Number of iterations per pixel.
+	 */
+	public final int maxIter;
+	/**
+	 * 	Width of the image in pixels.
+	 */
+	public final int width;
+	/**
+	 * 	Height of the image in pixels.
+	 */
+	public final int height;
+
+	/**
+	 * 	Creates a new view with the following parameters:
+	 *
+	 * @param centerRe: Constant <i>c</i> (in the Real axis) of the pixel (width/2, height/2).
+	 * @param centerIm: Constant <i>c</i> (in the Complex axis) of the pixel (width/2, height/2).
+	 * @param scale: Distance between two pixels in the complex plane.
+	 * @param maxIter: Number of iterations per pixel.
+	 * @param width: Width of the image in pixels.
+	 * @param height: Height of the image in pixels.
+	 */
+	public DeepView(BigDecimal centerRe, BigDecimal centerIm, double scale, int maxIter, int width, int height)
+	{
+		this.centerRe = centerRe;
+		this.centerIm = centerIm;
+		this.scale = scale;
+		this.maxIter = maxIter;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * 	Creates a deep view that shows exactly the same region as v.
+	 * @param v: The {@link View} to convert.
+	 */
+	public static DeepView of(View v)
+	{
+		return new DeepView(new BigDecimal(v.re(v.width/2)), new BigDecimal(v.im(v.height/2)), 1 / v.zoom, v.maxIter, v.width, v.height);
+	}
+
+	/**
+	 * 	Gets the offset (in the Real axis) of the pixel column x from the center.
+	 * @param x: Pixel column.
+	 */
+	public double dx(int x){	return (x - width/2) * scale;	}
+	/**
+	 * 	Gets the offset (in the Complex axis) of the pixel row y from the center.
+	 * @param y: Pixel row.
+	 */
+	public double dy(int y){	return (y - height/2) * scale;	}
+
+	/**
+	 * 	Gets the constant <i>c</i> (in the Real axis) for the pixel column x, with full precision.
+	 * @param x: Pixel column.
+	 */
+	public BigDecimal re(int x){	return centerRe.add(new BigDecimal(dx(x)), getMathContext());	}
+	/**
+	 * 	Gets the constant <i>c</i> (in the Complex axis) for the pixel row y, with full precision.
+	 * @param y: Pixel row.
+	 */
+	public BigDecimal im(int y){	return centerIm.add(new BigDecimal(dy(y)), getMathContext());	}
+
+	/**
+	 * 	Gets the precision needed by this view: enough digits to tell two pixels apart, plus {@value #GUARD_DIGITS}.
+	 */
+	public MathContext getMathContext()
+	{
+		int digits = (int)Math.ceil(-Math.log10(scale)) + GUARD_DIGITS;
+		return new MathContext(Math.max(MIN_DIGITS, digits));
+	}
+
+	/**
+	 * 	Creates a view moved by (dx, dy) pixels. It behaves like adding dx and dy to {@link View#centerX} and {@link View#centerY}.
+	 * @param dx: Pixels moved horizontally.
+	 * @param dy: Pixels moved vertically.
+	 */
+	public DeepView translate(int dx, int dy)
+	{
+		MathContext mc = getMathContext();
+		BigDecimal re = centerRe.subtract(new BigDecimal(dx * scale), mc);
+		BigDecimal im = centerIm.subtract(new BigDecimal(dy * scale), mc);
+		return new DeepView(re, im, scale, maxIter, width, height);
+	}
+
+	/**
+	 * 	Creates a view with the same center and the distance between pixels multiplied by factor. A factor smaller than 1 zooms in.
+	 * 	The distance is clamped between {@link #MIN_SCALE} and {@link #MAX_SCALE}, so zooming past them does nothing.
+	 * @param factor: Factor applied to {@link #scale}.
+	 * @return The new view, or this one if the distance didn't change.
+	 */
+	public DeepView zoom(double factor)
+	{
+		double s = Math.max(MIN_SCALE, Math.min(scale * factor, MAX_SCALE));
+		if(s == scale)
+			return this;
+		return new DeepView(centerRe, centerIm, s, maxIter, width, height);
+	}
+
+	/**
+	 * 	Creates the same view with another number of iterations.
+	 * @param maxIter: Number of iterations per pixel.
+	 */
+	public DeepView withMaxIter(int maxIter)
+	{
+		if(maxIter == this.maxIter)
+			return this;
+		return new DeepView(centerRe, centerIm, scale, maxIter, width, height);
+	}
+
+	/**
+	 * 	Gets the number of pixels of the image.
+	 */
+	public int size(){	return width * height;	}
+
+	@Override
+	public String toString()
+	{
+		return "DeepView[center=(" + centerRe + ", " + centerIm + "), scale=" + scale + ", maxIter=" + maxIter + ", " + width + "x" + height + "]";
+	}
+}
@@ -0,0 +1,108 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	This class accumulates the hits of a {@link ChaosGame} over any number of calls and turns them into an image with log density tone mapping:
+ * 	the alpha of a pixel is <i>log(1 + hits) / log(1 + max hits)</i>, so the image converges smoothly as more points are played instead of saturating.
+ * 	The hits are left in the buffers of the game while it's played, and only merged into the map when it's tone mapped (or the buffers are full).
+ * 	It remembers the alpha of every pixel, so it tells when a new tone mapping changed anything visible and the image only has to be uploaded then.
+ * 	It isn't thread safe.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class DensityMap
+{
+	/**
+	 * 	Size of the image.
+	 */
+	public final int width, height;
+	/**
+	 * 	Game whose hits are accumulated.
+	 */
+	private final ChaosGame game;
+	/**
+	 * 	Number of times every pixel (x, y) was hit, at x + y*width.
+	 */
+	private final long[] hits;
+	/**
+	 * 	Alpha (0 to 255) of every pixel in the last tone mapping.
+	 */
+	private final byte[] levels;
+	/**
+	 * 	Number of points played.
+	 */
+	private long samples = 0;
+	/**
+	 * 	Number of points played at the last tone mapping.
+	 */
+	private long mappedSamples = 0;
+
+	/**
+	 * 	Creates an empty map of the hits of game. It has the size of its image.
+	 * @param game: {@link ChaosGame} to play.
+	 */
+	public DensityMap(ChaosGame game)
+	{
+		this.game = game;
+		width = game.width;
+		height = game.height;
+		hits = new long[width * height];
+		levels = new byte[width * height];
+	}
+
+	/**
+	 * 	Plays some iterations of the game. It blocks until they are finished.
+	 * @param iterations: Number of iterations.
+	 */
+	public void play(long iterations)
+	{
+		samples += iterations;
+		while(iterations > 0)
+		{
+			if(game.getCapacity() == 0)
+				game.merge(hits);
+			long round = Math.min(iterations, game.getCapacity());
+			game.play(round);
+			iterations -= round;
+		}
+	}
+
+	/**
+	 * 	Tone maps the hits and writes the pixels whose alpha changed since the last tone mapping.
+	 * @param color: RGBA8888 color of the fractal. Its alpha is replaced by the density.
+	 * @param colors: RGBA8888 colors of the image, written by the previous tone mappings. Only the changed pixels are written.
+	 * @return The number of pixels that changed. When it's 0, the image doesn't need to be uploaded again.
+	 */
+	public int toneMap(int color, int[] colors)
+	{
+		game.merge(hits);
+		mappedSamples = samples;
+		long max = 0;
+		for (long h : hits)
+			max = Math.max(max, h);
+		if(max == 0)
+			return 0;
+		int rgb = color & 0xffffff00;
+		double scale = 255 / Math.log1p(max);
+		int changed = 0;
+		for (int i = 0; i < hits.length; i++)
+		{
+			// Only the pixels that were hit need a logarithm
+			int level = hits[i] == 0 ? 0 : (int)(Math.log1p(hits[i]) * scale + 0.5);
+			if((levels[i] & 0xff) == level)
+				continue;
+			levels[i] = (byte)level;
+			colors[i] = level == 0 ? 0 : rgb | level;
+			changed++;
+		}
+		return changed;
+	}
+
+	/**
+	 * 	Gets the number of points played.
+	 */
+	public long getSamples(){	return samples;	}
+	/**
+	 * 	Gets the number of points played at the last {@link #toneMap(int, int[])}.
+	 */
+	public long getMappedSamples(){	return mappedSamples;	}
+}
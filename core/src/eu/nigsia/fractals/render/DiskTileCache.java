@@ -0,0 +1,358 @@
+package eu.nigsia.fractals.render;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 	{@link TileCache} stored in a memory-mapped file, so the tiles survive a restart and a revisited view is only a read from the page cache.
+ * 	The file is split in slots of the same size, one tile each, so it never grows past the size it was created with.
+ * 	A tile is found by the SHA-1 of its {@link TileKey} (stored at the start of its slot) and, when the file is full, the least recently used tile is replaced.
+ * 	Every slot also stores when it was used last, so the order of use is rebuilt when the file is opened again.
+ * 	The slots are split in stripes with their own lock and order of use, so the threads of the engine don't wait for each other; the evicted tile is the least recently used one of its stripe.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class DiskTileCache extends TileCache implements Closeable
+{
+	/**
+	 * 	Biggest tile that can be stored, in pixels. It's the tile of {@link MandelbrotEngine}.
+	 */
+	private static final int MAX_PIXELS = MandelbrotEngine.TILE_SIZE * MandelbrotEngine.TILE_SIZE;
+	/**
+	 * 	Bytes of the header of a slot: SHA-1 of the key (20), last use (8), width (2) and height (2).
+	 */
+	private static final int HEADER = 32;
+	/**
+	 * 	Bytes of a slot: the header and, for every pixel, iterations (4), smooth count (4) and orbit (8 + 8).
+	 */
+	private static final int SLOT = HEADER + MAX_PIXELS * 24;
+	/**
+	 * 	Slots per mapped segment. A single mapping can't be bigger than 2GB.
+	 */
+	private static final int SEGMENT_SLOTS = 2048;
+	/**
+	 * 	Maximum number of stripes. The threads of the engine only wait for each other when their tiles fall in the same one.
+	 */
+	private static final int STRIPES = 16;
+	private static final int DIGEST = 20, STAMP = 20, WIDTH = 28, HEIGHT = 30;
+
+	private final RandomAccessFile file;
+	private final MappedByteBuffer[] segments;
+	/**
+	 * 	Number of slots.
+	 */
+	private final int slots;
+	/**
+	 * 	Stripes of the slots. Slot s belongs to stripe s % stripes.length, and a tile is stored in the stripe of its digest.
+	 */
+	private final Stripe[] stripes;
+	/**
+	 * 	Counter of uses, stored in the slots to keep the order.
+	 */
+	private final AtomicLong clock = new AtomicLong();
+
+	/**
+	 * 	Opens or creates a cache. The file is locked while it's open, so two instances of the program never map the same file.
+	 *
+	 * @param path: The file of the cache. It's created if it doesn't exist, and resized if it was created with another size (the tiles of the removed slots are lost).
+	 * @param maxBytes: Size of the file. It holds about maxBytes / 24KB tiles.
+	 * @throws IOException If the file can't be opened, or another cache (of this or another process) has it open. Then the caller can go on without it.
+	 */
+	public DiskTileCache(File path, long maxBytes) throws IOException
+	{
+		long count = maxBytes / SLOT;
+		if(count < 1 || count > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Cache of " + maxBytes + " bytes");
+		slots = (int)count;
+		File dir = path.getAbsoluteFile().getParentFile();
+		if(dir != null && !dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Can't create " + dir);
+
+		file = new RandomAccessFile(path, "rw");
+		try
+		{
+			FileChannel channel = file.getChannel();
+			// Locked before resizing it, since another instance may be using it. The lock is released when the file is closed.
+			FileLock lock;
+			try
+			{
+				lock = channel.tryLock();
+			}
+			catch(OverlappingFileLockException e)
+			{
+				lock = null;
+			}
+			if(lock == null)
+				throw new IOException(path + " is being used by another cache");
+
+			file.setLength((long)slots * SLOT);
+			segments = new MappedByteBuffer[(slots + SEGMENT_SLOTS - 1) / SEGMENT_SLOTS];
+			for (int s = 0; s < segments.length; s++)
+			{
+				long start = (long)s * SEGMENT_SLOTS * SLOT;
+				long size = (long)Math.min(SEGMENT_SLOTS, slots - s * SEGMENT_SLOTS) * SLOT;
+				segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, start, size);
+			}
+		}
+		catch(IOException e)
+		{
+			file.close();
+			throw e;
+		}
+		stripes = new Stripe[Math.min(STRIPES, slots)];
+		for (int s = 0; s < stripes.length; s++)
+			stripes[s] = new Stripe();
+		rebuild();
+	}
+
+	/**
+	 * 	Reads the header of every slot and rebuilds the index of every stripe in the order the tiles were used.
+	 * 	A tile that isn't in the stripe of its digest (the file was created with another size) or whose digest is repeated (only the newest one is kept) is dropped, and its slot is free.
+	 */
+	private void rebuild()
+	{
+		List<long[]> used = new ArrayList<long[]>();
+		byte[] digest = new byte[DIGEST];
+		for (int slot = 0; slot < slots; slot++)
+		{
+			MappedByteBuffer b = segments[slot / SEGMENT_SLOTS];
+			int base = (slot % SEGMENT_SLOTS) * SLOT;
+			if(b.getShort(base + WIDTH) <= 0 || !hasDigest(b, base, digest) || stripe(digest) != stripes[slot % stripes.length])
+				stripes[slot % stripes.length].free.add(slot);
+			else
+				used.add(new long[]{ b.getLong(base + STAMP), slot });
+		}
+		Collections.sort(used, new Comparator<long[]>()
+		{
+			@Override
+			public int compare(long[] a, long[] b)
+			{
+				return a[0] < b[0] ? -1 : a[0] > b[0] ? 1 : 0;
+			}
+		});
+		long last = 0;
+		for (long[] u : used)
+		{
+			int slot = (int)u[1];
+			MappedByteBuffer b = segments[slot / SEGMENT_SLOTS];
+			hasDigest(b, (slot % SEGMENT_SLOTS) * SLOT, digest);
+			Stripe stripe = stripes[slot % stripes.length];
+			Integer older = stripe.index.put(hex(digest), slot);
+			if(older != null)
+				stripe.free.add(older);
+			last = Math.max(last, u[0]);
+		}
+		clock.set(last);
+	}
+
+	/**
+	 * 	Reads the digest of the slot at base into digest.
+	 * @return False if it's empty (all zeros).
+	 */
+	private static boolean hasDigest(MappedByteBuffer b, int base, byte[] digest)
+	{
+		boolean any = false;
+		for (int i = 0; i < DIGEST; i++)
+		{
+			digest[i] = b.get(base + i);
+			any |= digest[i] != 0;
+		}
+		return any;
+	}
+
+	/**
+	 * 	Gets the SHA-1 of {@link TileKey#toString()}. It's the address of the tile on disk.
+	 * 	It's here and not in {@link TileKey} because the html version has neither SHA-1 nor disk.
+	 * @param key: The {@link TileKey} of the tile.
+	 */
+	static byte[] digest(TileKey key)
+	{
+		try
+		{
+			return MessageDigest.getInstance("SHA-1").digest(key.toString().getBytes(Charset.forName("UTF-8")));
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * 	Gets the stripe of the tiles with the given digest, from its first 4 bytes.
+	 */
+	private Stripe stripe(byte[] digest)
+	{
+		int hash = (digest[0] & 0xff) << 24 | (digest[1] & 0xff) << 16 | (digest[2] & 0xff) << 8 | (digest[3] & 0xff);
+		return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+	}
+
+	@Override
+	protected boolean read(TileKey key, IterationBuffer out)
+	{
+		byte[] digest = digest(key);
+		Stripe stripe = stripe(digest);
+		// The slot can't be replaced by a store while it's being copied
+		synchronized(stripe)
+		{
+			Integer slot = stripe.index.get(hex(digest));
+			if(slot == null)
+				return false;
+			MappedByteBuffer b = segments[slot / SEGMENT_SLOTS];
+			int base = (slot % SEGMENT_SLOTS) * SLOT;
+			int w = key.width, h = key.height, n = w * h;
+			if(b.getShort(base + WIDTH) != w || b.getShort(base + HEIGHT) != h)
+				return false;
+			b.putLong(base + STAMP, clock.incrementAndGet());
+
+			int iterations = base + HEADER, smooth = iterations + 4 * n, zx = smooth + 4 * n, zy = zx + 8 * n;
+			for (int py = 0; py < h; py++)
+			{
+				int index = key.x + (key.y + py) * out.width;
+				int i = py * w;
+				at(b, iterations + 4 * i).asIntBuffer().get(out.iterations, index, w);
+				at(b, smooth + 4 * i).asFloatBuffer().get(out.smooth, index, w);
+				if(out.hasOrbits())
+				{
+					at(b, zx + 8 * i).asDoubleBuffer().get(out.zx, index, w);
+					at(b, zy + 8 * i).asDoubleBuffer().get(out.zy, index, w);
+				}
+			}
+			return true;
+		}
+	}
+
+	@Override
+	public void store(TileKey key, IterationBuffer src)
+	{
+		int w = key.width, h = key.height, n = w * h;
+		if(n > MAX_PIXELS)
+			return;
+		byte[] digest = digest(key);
+		String hex = hex(digest);
+		Stripe stripe = stripe(digest);
+		synchronized(stripe)
+		{
+			Integer slot = stripe.index.get(hex);
+			if(slot == null)
+				slot = stripe.free.poll();
+			if(slot == null)
+			{
+				// Least recently used tile of the stripe
+				Iterator<Integer> eldest = stripe.index.values().iterator();
+				slot = eldest.next();
+				eldest.remove();
+			}
+			MappedByteBuffer b = segments[slot / SEGMENT_SLOTS];
+			int base = (slot % SEGMENT_SLOTS) * SLOT;
+
+			// The digest is written last, so a slot interrupted in the middle is empty when the file is opened again
+			for (int i = 0; i < DIGEST; i++)
+				b.put(base + i, (byte)0);
+			b.putShort(base + WIDTH, (short)w);
+			b.putShort(base + HEIGHT, (short)h);
+			int iterations = base + HEADER, smooth = iterations + 4 * n, zx = smooth + 4 * n, zy = zx + 8 * n;
+			for (int py = 0; py < h; py++)
+			{
+				int index = key.x + (key.y + py) * src.width;
+				int i = py * w;
+				at(b, iterations + 4 * i).asIntBuffer().put(src.iterations, index, w);
+				at(b, smooth + 4 * i).asFloatBuffer().put(src.smooth, index, w);
+				if(src.hasOrbits())
+				{
+					at(b, zx + 8 * i).asDoubleBuffer().put(src.zx, index, w);
+					at(b, zy + 8 * i).asDoubleBuffer().put(src.zy, index, w);
+				}
+				else
+					for (int px = 0; px < w; px++)
+					{
+						b.putDouble(zx + 8 * (i + px), Double.NaN);
+						b.putDouble(zy + 8 * (i + px), Double.NaN);
+					}
+			}
+			b.putLong(base + STAMP, clock.incrementAndGet());
+			for (int i = 0; i < DIGEST; i++)
+				b.put(base + i, digest[i]);
+			stripe.index.put(hex, slot);
+		}
+	}
+
+	/**
+	 * 	Gets the number of tiles stored.
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (Stripe stripe : stripes)
+			synchronized(stripe)
+			{
+				size += stripe.index.size();
+			}
+		return size;
+	}
+	/**
+	 * 	Gets the number of tiles that fit in the file.
+	 */
+	public int capacity(){	return slots;	}
+
+	/**
+	 * 	Writes every change to the disk, closes the file and releases its lock. The cache can't be used after this, nor while it's being closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		for (MappedByteBuffer b : segments)
+			b.force();
+		file.close();
+	}
+
+	/**
+	 * 	Gets a view of b that starts at the byte position. Rows are copied through it with a single bulk get or put.
+	 */
+	private static ByteBuffer at(MappedByteBuffer b, int position)
+	{
+		ByteBuffer d = b.duplicate();
+		d.position(position);
+		return d;
+	}
+
+	private static String hex(byte[] bytes)
+	{
+		StringBuilder s = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes)
+			s.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+		return s.toString();
+	}
+
+	/**
+	 * 	Index of the tiles of a group of slots. Its tiles are evicted in the order they were used, apart from the other stripes. It's its own lock.
+	 */
+	private static final class Stripe
+	{
+		/**
+		 * 	Slot of every stored tile by the hexadecimal SHA-1 of its key, from the least to the most recently used. Guarded by this.
+		 */
+		private final LinkedHashMap<String, Integer> index = new LinkedHashMap<String, Integer>(16, 0.75f, true);
+		/**
+		 * 	Empty slots. Guarded by this.
+		 */
+		private final ArrayDeque<Integer> free = new ArrayDeque<Integer>();
+	}
+}
@@ -0,0 +1,117 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	Escape-time kernel of the Mandelbrot set in single precision. It does the same as {@link MandelbrotKernel}, but with floats.
+ * 	Every pixel keeps a bound of how far its float orbit can be from the exact one, from the rounding of <i>c</i> and of every step.
+ * 	While the bound can't change whether <i>|z_n| >= 2</i>, the result is the same as in double precision; when it could, the pixel is calculated again with {@link MandelbrotKernel}.
+ * 	So the result only differs from the double kernel where the double kernel itself is wrong, and the float kernel is only faster on shallow views, where few pixels fall back.
+ * 	Periodic orbits repeat themselves much sooner with 24 bits than with 53, so points inside the set are also detected sooner, as long as the bound is below {@link #CYCLE_ERROR}.
+ * 	It has no state at all, so it can be called from any number of threads at the same time.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class FloatKernel
+{
+	/**
+	 * 	Error added to the bound by every step, relative to <i>|z_n|^2 + |c|</i>: 8 times the unit roundoff of a float (2^-24), which covers the five roundings of a step.
+	 */
+	public static final float ROUNDING = 8f / (1 << 24);
+	/**
+	 * 	Biggest bound of the error for which a cycle found in floats is trusted. Bigger ones are calculated again in double precision.
+	 */
+	public static final float CYCLE_ERROR = 1e-4f;
+
+	private FloatKernel(){}
+
+	/**
+	 * 	Iterates <i>z_n+1 = z_n^2 + c</i> starting from <i>z_0 = 0</i> until <i>|z_n| >= 2</i> or maxIter iterations are done, and stores the result.
+	 * 	c is rounded to floats here, so that the error of the rounding is known.
+	 *
+	 * @param cX: Constant <i>c</i> (in the Real axis).
+	 * @param cY: Constant <i>c</i> (in the Complex axis).
+	 * @param maxIter: Maximum number of iterations.
+	 * @param out: {@link IterationBuffer} where the result is stored.
+	 * @param index: Index of the pixel in out.
+	 * @return The number of iterations done. It's maxIter when the point didn't escape, or {@link MandelbrotKernel#INTERIOR} when it's known to be inside the set.
+	 */
+	public static int iterate(double cX, double cY, int maxIter, IterationBuffer out, int index)
+	{
+		if(MandelbrotKernel.isInCardioidOrBulb(cX, cY))
+		{
+			out.set(index, MandelbrotKernel.INTERIOR, MandelbrotKernel.INTERIOR, 0, 0);
+			return MandelbrotKernel.INTERIOR;
+		}
+		float x = (float)cX, y = (float)cY;
+		int iter = iterate(x, y, (float)(Math.abs(cX - x) + Math.abs(cY - y)), maxIter, out, index);
+		if(iter < 0)
+			return MandelbrotKernel.iterate(cX, cY, maxIter, out, index);
+		return iter;
+	}
+
+	/**
+	 * 	Does the same as {@link #iterate(double, double, int, IterationBuffer, int)} with the new maxIter.
+	 * 	Unlike {@link MandelbrotKernel#resume(double, double, int, IterationBuffer, int)}, the stored orbit isn't continued, since the bound of its error isn't stored:
+	 * 	the point is iterated again from <i>z_0 = 0</i>. Only the points that didn't escape are resumed, which are few on the views calculated in floats.
+	 *
+	 * @param cX: Constant <i>c</i> (in the Real axis).
+	 * @param cY: Constant <i>c</i> (in the Complex axis).
+	 * @param maxIter: Maximum number of iterations.
+	 * @param out: {@link IterationBuffer} where the result is stored.
+	 * @param index: Index of the pixel in out.
+	 * @return The number of iterations done.
+	 */
+	public static int resume(double cX, double cY, int maxIter, IterationBuffer out, int index)
+	{
+		return iterate(cX, cY, maxIter, out, index);
+	}
+
+	/**
+	 * 	Iterates from <i>z_0 = 0</i>, with Brent's cycle detection like {@link MandelbrotKernel}, and keeps the bound of the error of the orbit.
+	 *
+	 * @param error: Bound of the error of c (its rounding to floats).
+	 * @return The number of iterations done, or -1 if the bound could change the result and the point must be calculated in double precision. Then nothing is stored.
+	 */
+	private static int iterate(float cX, float cY, float error, int maxIter, IterationBuffer out, int index)
+	{
+		float tmp, norm = 0, radius;
+		float size = Math.abs(cX) + Math.abs(cY);
+		float zx = 0, zy = 0;
+		float savedX = zx, savedY = zy;
+		int power = 1, steps = 0, iter = 0;
+		while (iter < maxIter)
+		{
+			// Every exact z within the error escapes, or none does
+			radius = (float)Math.sqrt(norm);
+			if(radius + error >= 2f)
+			{
+				if(radius - error >= 2f)
+					break;
+				return -1;
+			}
+			error = 2f * radius * error + error * error + ROUNDING * (norm + size);
+
+			tmp = zx * zx - zy * zy + cX;
+			zy = 2f * zx * zy + cY;
+			zx = tmp;
+			norm = zx * zx + zy * zy;
+			iter++;
+
+			if(zx == savedX && zy == savedY)
+			{
+				if(error > CYCLE_ERROR)
+					return -1;
+				out.set(index, MandelbrotKernel.INTERIOR, MandelbrotKernel.INTERIOR, zx, zy);
+				return MandelbrotKernel.INTERIOR;
+			}
+			if(++steps == power)
+			{
+				savedX = zx;
+				savedY = zy;
+				power <<= 1;
+				steps = 0;
+			}
+		}
+		out.set(index, iter, MandelbrotKernel.smooth(iter, maxIter, norm), zx, zy);
+		return iter;
+	}
+}
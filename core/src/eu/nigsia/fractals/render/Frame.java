@@ -0,0 +1,109 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	This class represents one finished pass of a {@link RenderPipeline}. It's never modified after being published, so it can be read from the GL thread.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class Frame
+{
+	/**
+	 * 	The {@link View} that was calculated, or null if it was a {@link DeepView}.
+	 */
+	public final View view;
+	/**
+	 * 	The {@link DeepView} that was calculated, or null if it was a {@link View}.
+	 */
+	public final DeepView deep;
+	/**
+	 * 	Maximum number of iterations the pass was calculated with.
+	 */
+	public final int maxIter;
+	/**
+	 * 	{@link Kernel} the pass was calculated with.
+	 */
+	public final Kernel kernel;
+	/**
+	 * 	Result of every pixel.
+	 */
+	public final IterationBuffer buffer;
+	/**
+	 * 	Side of the blocks of this pass in pixels. 1 means that every pixel was calculated.
+	 */
+	public final int block;
+	/**
+	 * 	Extra samples of the edge pixels, or null if it isn't anti-aliased.
+	 */
+	public final Supersamples samples;
+
+	/**
+	 * 	Creates a new frame with the following parameters:
+	 *
+	 * @param view: The {@link View} that was calculated.
+	 * @param buffer: Result of every pixel. It must not be modified after this.
+	 * @param block: Side of the blocks of this pass in pixels.
+	 */
+	public Frame(View view, IterationBuffer buffer, int block)
+	{
+		this(view, buffer, block, Kernel.DOUBLE);
+	}
+
+	/**
+	 * 	Creates a new frame with the following parameters:
+	 *
+	 * @param view: The {@link View} that was calculated.
+	 * @param buffer: Result of every pixel. It must not be modified after this.
+	 * @param block: Side of the blocks of this pass in pixels.
+	 * @param kernel: {@link Kernel} it was calculated with.
+	 */
+	public Frame(View view, IterationBuffer buffer, int block, Kernel kernel)
+	{
+		this.view = view;
+		this.deep = null;
+		this.maxIter = view.maxIter;
+		this.kernel = kernel;
+		this.buffer = buffer;
+		this.block = block;
+		this.samples = null;
+	}
+
+	/**
+	 * 	Creates a new frame of a deep view. Deep views are calculated in a single pass.
+	 *
+	 * @param deep: The {@link DeepView} that was calculated.
+	 * @param buffer: Result of every pixel. It must not be modified after this.
+	 * @param kernel: {@link Kernel} it was calculated with.
+	 */
+	public Frame(DeepView deep, IterationBuffer buffer, Kernel kernel)
+	{
+		this.view = null;
+		this.deep = deep;
+		this.maxIter = deep.maxIter;
+		this.kernel = kernel;
+		this.buffer = buffer;
+		this.block = 1;
+		this.samples = null;
+	}
+
+	/**
+	 * 	Creates an anti-aliased copy of a final frame.
+	 *
+	 * @param frame: The final {@link Frame}.
+	 * @param samples: {@link Supersamples} of its edge pixels.
+	 */
+	public Frame(Frame frame, Supersamples samples)
+	{
+		this.view = frame.view;
+		this.deep = frame.deep;
+		this.maxIter = frame.maxIter;
+		this.kernel = frame.kernel;
+		this.buffer = frame.buffer;
+		this.block = frame.block;
+		this.samples = samples;
+	}
+
+	/**
+	 * 	Returns whether every pixel of this frame was calculated or not.
+	 */
+	public boolean isFinal(){	return block == 1;	}
+}
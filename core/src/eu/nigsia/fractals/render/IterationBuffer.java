@@ -0,0 +1,130 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	This class stores the result of the escape-time kernel for every pixel of an image, independently of how it's colored.
+ * 	Since colors are only derived from it, changing the palette never needs the fractal to be calculated again.
+ * 	It can also keep the last <i>z_n</i> of every pixel, so an orbit can be continued later with a bigger maxIter instead of starting again from <i>z_0 = 0</i>.
+ * 	The pixel (x, y) is stored at x + y*width.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class IterationBuffer
+{
+	/**
+	 * 	Width of the image in pixels.
+	 */
+	public final int width;
+	/**
+	 * 	Height of the image in pixels.
+	 */
+	public final int height;
+	/**
+	 * 	Number of iterations done before the point escaped. It's maxIter when it didn't escape, or {@link MandelbrotKernel#INTERIOR} when it's known to be inside the set.
+	 */
+	public final int[] iterations;
+	/**
+	 * 	Smooth (fractional) iteration count of the escaped points: <i>n + 1 - log2(ln|z_n|)</i>. It's the same as {@link #iterations} when the point didn't escape.
+	 */
+	public final float[] smooth;
+	/**
+	 * 	Last <i>z_n</i> (in the Real axis) of every pixel, or null if this buffer doesn't keep the orbits.
+	 */
+	public final double[] zx;
+	/**
+	 * 	Last <i>z_n</i> (in the Complex axis) of every pixel, or null if this buffer doesn't keep the orbits.
+	 */
+	public final double[] zy;
+
+	/**
+	 * 	Creates an empty buffer that keeps the orbits.
+	 * @param width: Width of the image in pixels.
+	 * @param height: Height of the image in pixels.
+	 */
+	public IterationBuffer(int width, int height)
+	{
+		this(width, height, true);
+	}
+
+	/**
+	 * 	Creates an empty buffer.
+	 * @param width: Width of the image in pixels.
+	 * @param height: Height of the image in pixels.
+	 * @param orbits: Whether the last <i>z_n</i> of every pixel is kept or not.
+	 */
+	public IterationBuffer(int width, int height, boolean orbits)
+	{
+		this.width = width;
+		this.height = height;
+		iterations = new int[width*height];
+		smooth = new float[width*height];
+		zx = orbits ? new double[width*height] : null;
+		zy = orbits ? new double[width*height] : null;
+	}
+
+	/**
+	 * 	Gets the number of pixels of the buffer.
+	 */
+	public int size(){	return width*height;	}
+
+	/**
+	 * 	Returns whether this buffer keeps the orbits or not.
+	 */
+	public boolean hasOrbits(){	return zx != null;	}
+
+	/**
+	 * 	Sets the result of a pixel.
+	 * @param index: Index of the pixel.
+	 * @param iter: Number of iterations done.
+	 * @param nu: Smooth iteration count.
+	 * @param x: Last <i>z_n</i> (in the Real axis).
+	 * @param y: Last <i>z_n</i> (in the Complex axis).
+	 */
+	public void set(int index, int iter, float nu, double x, double y)
+	{
+		iterations[index] = iter;
+		smooth[index] = nu;
+		if(zx != null)
+		{
+			zx[index] = x;
+			zy[index] = y;
+		}
+	}
+
+	/**
+	 * 	Copies the result of the pixel from to the pixel to.
+	 */
+	public void copy(int from, int to)
+	{
+		iterations[to] = iterations[from];
+		smooth[to] = smooth[from];
+		if(zx != null)
+		{
+			zx[to] = zx[from];
+			zy[to] = zy[from];
+		}
+	}
+
+	/**
+	 * 	Copies count pixels of src, starting at srcIndex, to this buffer, starting at index. The orbits are copied if both buffers keep them.
+	 */
+	public void copy(IterationBuffer src, int srcIndex, int index, int count)
+	{
+		System.arraycopy(src.iterations, srcIndex, iterations, index, count);
+		System.arraycopy(src.smooth, srcIndex, smooth, index, count);
+		if(zx != null && src.zx != null)
+		{
+			System.arraycopy(src.zx, srcIndex, zx, index, count);
+			System.arraycopy(src.zy, srcIndex, zy, index, count);
+		}
+	}
+
+	/**
+	 * 	Creates a copy of this buffer without the orbits. That's all that is needed to color it.
+	 */
+	public IterationBuffer copyCounts()
+	{
+		IterationBuffer b = new IterationBuffer(width, height, false);
+		b.copy(this, 0, 0, size());
+		return b;
+	}
+}
@@ -0,0 +1,156 @@
+package eu.nigsia.fractals.render;
+
+import com.badlogic.gdx.utils.TimeUtils;
+
+/**
+ * 	This class calculates a small image of the Julia set of a point <i>c</i>, a little at a time, so it can follow the mouse without ever taking more than a fixed time per frame.
+ * 	Every pixel is iterated by {@link MandelbrotKernel#julia(double, double, double, double, int, IterationBuffer, int)} and stored in an {@link IterationBuffer}, so it's colored by a {@link Palette} like the Mandelbrot set.
+ * 	It's progressive like {@link RenderPipeline}: first one pixel out of every {@value #COARSEST_BLOCK}x{@value #COARSEST_BLOCK} block, then the blocks are halved until every pixel is calculated.
+ * 	A Julia set is symmetric under a rotation of 180 degrees (<i>-z</i> has the same orbit as <i>z</i> after one step), so only the top half is calculated and the bottom half is its mirror.
+ * 	It isn't thread safe: it's meant to be used from the GL thread only.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class JuliaPreview
+{
+	/**
+	 * 	Side of the blocks of the first pass in pixels.
+	 */
+	public static final int COARSEST_BLOCK = 8;
+	/**
+	 * 	Half the side of the square of the complex plane that is shown. Every Julia set of a point of the Mandelbrot set fits in it.
+	 */
+	private static final double RADIUS = 2;
+
+	/**
+	 * 	Side of the image in pixels.
+	 */
+	public final int size;
+	/**
+	 * 	Number of iterations per pixel.
+	 */
+	public final int maxIter;
+	/**
+	 * 	Top half of the image, without orbits.
+	 */
+	private final IterationBuffer buffer;
+	/**
+	 * 	Constant <i>c</i> of the Julia set.
+	 */
+	private double cX, cY;
+	/**
+	 * 	Whether {@link #setPoint(double, double)} was called or not.
+	 */
+	private boolean hasPoint = false;
+	/**
+	 * 	Block side of the pass being calculated, or 0 when every pixel is calculated (or there is no point yet).
+	 */
+	private int block = 0;
+	/**
+	 * 	Next row of the pass being calculated.
+	 */
+	private int row = 0;
+
+	/**
+	 * 	Creates a preview with no point. Nothing is calculated until {@link #setPoint(double, double)} is called.
+	 * @param size: Side of the image in pixels. It must be a multiple of twice {@link #COARSEST_BLOCK}.
+	 * @param maxIter: Number of iterations per pixel.
+	 */
+	public JuliaPreview(int size, int maxIter)
+	{
+		if(size <= 0 || size % (2 * COARSEST_BLOCK) != 0)
+			throw new IllegalArgumentException("Preview of " + size + " pixels");
+		this.size = size;
+		this.maxIter = maxIter;
+		buffer = new IterationBuffer(size, size / 2, false);
+	}
+
+	/**
+	 * 	Sets the point whose Julia set is shown. If it's a new one, the calculation starts again from the coarsest pass.
+	 * @param cX: Constant <i>c</i> (in the Real axis).
+	 * @param cY: Constant <i>c</i> (in the Complex axis).
+	 */
+	public void setPoint(double cX, double cY)
+	{
+		if(hasPoint && cX == this.cX && cY == this.cY)
+			return;
+		hasPoint = true;
+		this.cX = cX;
+		this.cY = cY;
+		block = COARSEST_BLOCK;
+		row = 0;
+	}
+
+	/**
+	 * 	Calculates rows of the current passes until the time is over. A row takes a fraction of a millisecond, so it doesn't go much further than budget.
+	 * @param budget: Time it can take, in nanoseconds.
+	 * @return True if any pixel changed, so the image has to be colored again.
+	 */
+	public boolean refine(long budget)
+	{
+		if(block == 0)
+			return false;
+		long deadline = TimeUtils.nanoTime() + budget;
+		do
+		{
+			calculateRow(row, block);
+			row += block;
+			if(row >= buffer.height)
+			{
+				block /= 2;
+				row = 0;
+			}
+		}
+		while(block != 0 && TimeUtils.nanoTime() < deadline);
+		return true;
+	}
+
+	/**
+	 * 	Calculates the pixels of a pass in row y: one pixel per block, which is copied to its whole block. The pixels calculated by the coarser passes are skipped.
+	 */
+	private void calculateRow(int y, int block)
+	{
+		int w = buffer.width, h = buffer.height;
+		double step = 2 * RADIUS / size;
+		double zY = (y + 0.5 - size / 2) * step;
+		boolean known = block != COARSEST_BLOCK && y % (2 * block) == 0;
+		for (int x = 0; x < w; x += block)
+		{
+			if(known && x % (2 * block) == 0)
+				continue;
+			int index = x + y * w;
+			MandelbrotKernel.julia((x + 0.5 - size / 2) * step, zY, cX, cY, maxIter, buffer, index);
+			for (int by = y; by < Math.min(y + block, h); by++)
+				for (int bx = x; bx < Math.min(x + block, w); bx++)
+					if(bx != x || by != y)
+						buffer.copy(index, bx + by * w);
+		}
+	}
+
+	/**
+	 * 	Colors the image: the top half with palette and the bottom half as its rotation.
+	 * @param palette: {@link Palette} to color it with.
+	 * @param colors: Output RGBA8888 colors, size*size.
+	 */
+	public void color(Palette palette, int[] colors)
+	{
+		palette.color(buffer, maxIter, colors);
+		// The pixel (x, y) is the point z, and (size - 1 - x, size - 1 - y) is -z
+		int n = size * size, half = buffer.size();
+		for (int i = 0; i < half; i++)
+			colors[n - 1 - i] = colors[i];
+	}
+
+	/**
+	 * 	Returns whether every pixel of the current point is calculated.
+	 */
+	public boolean isFinished(){	return hasPoint && block == 0;	}
+	/**
+	 * 	Gets the constant <i>c</i> (in the Real axis) of the Julia set.
+	 */
+	public double getX(){	return cX;	}
+	/**
+	 * 	Gets the constant <i>c</i> (in the Complex axis) of the Julia set.
+	 */
+	public double getY(){	return cY;	}
+}
@@ -0,0 +1,52 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	Escape-time kernels an engine can calculate a view with, from the cheapest to the most precise.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public enum Kernel
+{
+	/**
+	 * 	{@link FloatKernel}: single precision, for shallow views.
+	 */
+	FLOAT("float"),
+	/**
+	 * 	{@link FloatKernel} on several pixels at once, with the Vector API.
+	 */
+	FLOAT_VECTOR("float SIMD"),
+	/**
+	 * 	{@link MandelbrotKernel}: plain doubles.
+	 */
+	DOUBLE("double"),
+	/**
+	 * 	{@link MandelbrotKernel} on several pixels at once, with the Vector API.
+	 */
+	DOUBLE_VECTOR("double SIMD"),
+	/**
+	 * 	{@link DoubleDoubleKernel}: about 106 bits of precision.
+	 */
+	DOUBLE_DOUBLE("double-double"),
+	/**
+	 * 	{@link PerturbationKernel}: an arbitrary precision reference and double differences.
+	 */
+	PERTURBATION("perturbation");
+
+	/**
+	 * 	Name shown to the user.
+	 */
+	private final String name;
+
+	private Kernel(String name)
+	{
+		this.name = name;
+	}
+
+	/**
+	 * 	Returns whether this kernel calculates in single precision.
+	 */
+	public boolean isSinglePrecision(){	return this == FLOAT || this == FLOAT_VECTOR;	}
+
+	@Override
+	public String toString(){	return name;	}
+}
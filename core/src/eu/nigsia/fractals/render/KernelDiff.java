@@ -0,0 +1,67 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	This class holds the differences between two calculations of the same {@link View}, usually a fast kernel against a more precise one.
+ * 	Only the number of iterations is compared. Every pixel that didn't escape counts as maxIter, since they all have the same color.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class KernelDiff
+{
+	/**
+	 * 	{@link Kernel} the result was compared with.
+	 */
+	public final Kernel reference;
+	/**
+	 * 	Number of pixels compared.
+	 */
+	public final int pixels;
+	/**
+	 * 	Number of pixels with a different number of iterations.
+	 */
+	public final int mismatches;
+	/**
+	 * 	Biggest difference of iterations of a pixel.
+	 */
+	public final int maxDifference;
+
+	/**
+	 * 	Compares every pixel of result with expected.
+	 *
+	 * @param reference: {@link Kernel} expected was calculated with.
+	 * @param result: The result to validate.
+	 * @param expected: The same view calculated with reference.
+	 * @param maxIter: Maximum number of iterations of the view.
+	 */
+	public KernelDiff(Kernel reference, IterationBuffer result, IterationBuffer expected, int maxIter)
+	{
+		if(result.size() != expected.size())
+			throw new IllegalArgumentException("Buffers of " + result.size() + " and " + expected.size() + " pixels");
+		int mismatches = 0, maxDifference = 0;
+		for (int i = 0; i < result.size(); i++)
+		{
+			int difference = Math.abs(Math.min(result.iterations[i], maxIter) - Math.min(expected.iterations[i], maxIter));
+			if(difference != 0)
+			{
+				mismatches++;
+				maxDifference = Math.max(maxDifference, difference);
+			}
+		}
+		this.reference = reference;
+		this.pixels = result.size();
+		this.mismatches = mismatches;
+		this.maxDifference = maxDifference;
+	}
+
+	/**
+	 * 	Gets the fraction of pixels that are different, from 0 to 1.
+	 */
+	public double getMismatchRatio(){	return pixels == 0 ? 0 : (double)mismatches / pixels;	}
+
+	@Override
+	public String toString()
+	{
+		// No String.format: the html version doesn't have it
+		return mismatches + " of " + pixels + " pixels differ from " + reference + " (" + Math.round(100000 * getMismatchRatio()) / 1000.0 + "%), by up to " + maxDifference + " iterations";
+	}
+}
@@ -0,0 +1,711 @@
+package eu.nigsia.fractals.render;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import eu.nigsia.fractals.math.geom.Rectangle;
+
+/**
+ * 	This class calculates a {@link View} of the Mandelbrot set using every core of the machine.
+ * 	The image is split recursively into tiles of {@value #TILE_SIZE}x{@value #TILE_SIZE} pixels that are calculated on a {@link ForkJoinPool},
+ * 	so idle threads steal the tiles of the busy ones (tiles inside the set cost far more than the ones outside).
+ * 	Optionally, every tile can be calculated with Mariani-Silver subdivision instead of pixel by pixel: if every pixel on the border of a {@link Rectangle}
+ * 	has the same number of iterations, the whole rectangle is filled with it; otherwise it's split in four and each part is checked again.
+ * 	Big uniform areas then only cost their perimeter.
+ * 	Full rows are calculated by a {@link RowKernel}: the vectorized one of the <i>simd</i> module when the JVM supports it, or a plain loop over {@link MandelbrotKernel}. Both give the same bits.
+ * 	With the vectorized kernel, shallow views, where the distance between pixels is far above the precision of a float, are calculated in single precision instead, unless {@link #setSinglePrecision(boolean)} turns it off.
+ * 	The pixels whose float orbit isn't known precisely enough fall back to double precision, so {@link #compare(View, IterationBuffer, Kernel, CancelToken)} should find no difference.
+ * 	With a {@link TileCache}, every finished tile of the last pass is stored, and the tiles found in it are copied instead of calculated.
+ * 	{@link #supersample(View, IterationBuffer, float, int, CancelToken)} anti-aliases a finished view by calculating extra samples of its edge pixels only.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class MandelbrotEngine
+{
+	/**
+	 * 	Side of the tiles in pixels.
+	 */
+	public static final int TILE_SIZE = 32;
+	/**
+	 * 	Block value of the tasks that continue the orbits already in the buffer.
+	 */
+	private static final int RESUME = 0;
+	/**
+	 * 	Rectangles with a side not bigger than this are calculated pixel by pixel instead of being split again.
+	 */
+	private static final int MIN_SIDE = 4;
+	/**
+	 * 	Class of the vectorized {@link RowKernel}. It's in its own module, since it needs a newer Java than the rest of the project.
+	 */
+	private static final String VECTOR_KERNEL = "eu.nigsia.fractals.render.simd.VectorKernel";
+	/**
+	 * 	Class of the vectorized single precision {@link RowKernel}.
+	 */
+	private static final String FLOAT_VECTOR_KERNEL = "eu.nigsia.fractals.render.simd.FloatVectorKernel";
+	/**
+	 * 	Floats are used while the distance between pixels is at least this times the biggest coordinate of the view (about 8000 times the precision of a float).
+	 * 	Deeper views are still correct in floats, but so many of their pixels fall back to double precision that they are slower.
+	 */
+	private static final double FLOAT_LIMIT = 1e-3;
+	/**
+	 * 	Floats are only used up to this maxIter. The vectorized kernel counts the iterations in floats, which are exact up to 2^24.
+	 */
+	private static final int FLOAT_MAX_ITER = 1 << 24;
+	/**
+	 * 	{@link RowKernel} that calls {@link MandelbrotKernel} for every pixel.
+	 */
+	private static final RowKernel SCALAR = new RowKernel()
+	{
+		@Override
+		public void iterate(View view, int y, int x, int count, IterationBuffer out)
+		{
+			double cY = view.im(y);
+			int row = y * view.width;
+			for (int px = x; px < x + count; px++)
+				MandelbrotKernel.iterate(view.re(px), cY, view.maxIter, out, row + px);
+		}
+	};
+	/**
+	 * 	{@link RowKernel} that calls {@link FloatKernel} for every pixel.
+	 */
+	private static final RowKernel FLOAT = new RowKernel()
+	{
+		@Override
+		public void iterate(View view, int y, int x, int count, IterationBuffer out)
+		{
+			double cY = view.im(y);
+			int row = y * view.width;
+			for (int px = x; px < x + count; px++)
+				FloatKernel.iterate(view.re(px), cY, view.maxIter, out, row + px);
+		}
+	};
+	/**
+	 * 	Vectorized {@link RowKernel}, or null if this JVM can't load it.
+	 */
+	private static final RowKernel VECTOR = Platform.loadRowKernel(VECTOR_KERNEL);
+	/**
+	 * 	Vectorized single precision {@link RowKernel}, or null if this JVM can't load it.
+	 */
+	private static final RowKernel FLOAT_VECTOR = Platform.loadRowKernel(FLOAT_VECTOR_KERNEL);
+
+	/**
+	 * 	Name of the fractal in the {@link TileKey}s.
+	 */
+	private static final String FRACTAL = "mandelbrot";
+
+	/**
+	 * 	Pool shared by every engine. There is no point in having more threads than cores.
+	 */
+	private static ForkJoinPool sharedPool;
+
+	/**
+	 * 	Pool where the tiles are calculated.
+	 */
+	private final ForkJoinPool pool;
+	/**
+	 * 	Whether the tiles are calculated with Mariani-Silver subdivision or pixel by pixel.
+	 */
+	private volatile boolean subdivide = false;
+	/**
+	 * 	Whether the full rows are calculated with {@link #VECTOR} or not.
+	 */
+	private volatile boolean vectorized = VECTOR != null;
+	/**
+	 * 	Whether shallow views may be calculated in single precision or not.
+	 */
+	private volatile boolean singlePrecision = true;
+	/**
+	 * 	Cache of finished tiles, or null.
+	 */
+	private volatile TileCache cache;
+
+	/**
+	 * 	Creates an engine that uses the pool shared by every engine (one thread per core).
+	 */
+	public MandelbrotEngine()
+	{
+		this(getSharedPool());
+	}
+
+	/**
+	 * 	Creates an engine that calculates its tiles on pool.
+	 * @param pool: The {@link ForkJoinPool} where the tiles are calculated.
+	 */
+	public MandelbrotEngine(ForkJoinPool pool)
+	{
+		this.pool = pool;
+	}
+
+	/**
+	 * 	Gets the pool shared by every engine. It's created the first time it's needed.
+	 */
+	public static synchronized ForkJoinPool getSharedPool()
+	{
+		if(sharedPool == null)
+			sharedPool = new ForkJoinPool(Platform.getProcessors());
+		return sharedPool;
+	}
+
+	/**
+	 * 	Calculates every pixel of view and blocks until it's finished.
+	 *
+	 * @param view: The {@link View} to calculate.
+	 * @param out: {@link IterationBuffer} of the same size as the view, where the result is stored.
+	 */
+	public void render(View view, IterationBuffer out)
+	{
+		render(view, out, 1, false, CancelToken.NONE);
+	}
+
+	/**
+	 * 	Calculates one pixel out of every block x block square of view (the top left one) and fills the whole square with it. Blocks until it's finished.
+	 * 	This is used to draw a coarse preview first and refine it later.
+	 *
+	 * @param view: The {@link View} to calculate.
+	 * @param out: {@link IterationBuffer} of the same size as the view, where the result is stored.
+	 * @param block: Side of the squares in pixels. It must be a power of two not bigger than {@value #TILE_SIZE}.
+	 * @param refine: True if out already holds the pass of block*2 for this view. Those pixels are not calculated again.
+	 * @param token: {@link CancelToken} checked every row. When it's cancelled the remaining rows are skipped.
+	 * @return True if the pass was finished, false if it was cancelled (then out is only partially calculated).
+	 */
+	public boolean render(View view, IterationBuffer out, int block, boolean refine, CancelToken token)
+	{
+		check(view, out);
+		pool.invoke(new TileTask(view, out, block, refine, subdivide, getKernel(view), cache, token, 0, 0, view.width, view.height));
+		return !token.isCancelled();
+	}
+
+	/**
+	 * 	Copies every tile of view from the cache, if they are all there. It doesn't calculate anything.
+	 *
+	 * @param view: The {@link View} to load.
+	 * @param out: {@link IterationBuffer} of the same size as the view, where the tiles are copied.
+	 * @return True if every tile was found. Otherwise out holds some of them and the view must be calculated.
+	 */
+	public boolean load(View view, IterationBuffer out)
+	{
+		check(view, out);
+		TileCache cache = this.cache;
+		if(cache == null)
+			return false;
+		Kernel kernel = getKernel(view);
+		boolean subdivide = this.subdivide;
+		// The same tiles the TileTasks are split in
+		for (int y = 0; y < view.height; y += TILE_SIZE)
+			for (int x = 0; x < view.width; x += TILE_SIZE)
+				if(!cache.load(new TileKey(FRACTAL, view, kernel, subdivide, x, y, Math.min(TILE_SIZE, view.width - x), Math.min(TILE_SIZE, view.height - y)), out))
+					return false;
+		return true;
+	}
+
+	/**
+	 * 	Calculates every pixel of view with the given kernel, pixel by pixel, and blocks until it's finished.
+	 *
+	 * @param view: The {@link View} to calculate.
+	 * @param out: {@link IterationBuffer} of the same size as the view, where the result is stored.
+	 * @param kernel: {@link Kernel} to use. It must be one of the kernels of this class (single or double precision), and the vectorized ones must be available.
+	 * @param token: {@link CancelToken} checked every row. When it's cancelled the remaining rows are skipped.
+	 * @return True if it was finished, false if it was cancelled.
+	 */
+	public boolean render(View view, IterationBuffer out, Kernel kernel, CancelToken token)
+	{
+		check(view, out);
+		if(getRowKernel(kernel) == null)
+			throw new IllegalArgumentException("Kernel " + kernel + " isn't available");
+		pool.invoke(new TileTask(view, out, 1, false, false, kernel, null, token, 0, 0, view.width, view.height));
+		return !token.isCancelled();
+	}
+
+	/**
+	 * 	Validates a result: calculates view again with reference and counts the pixels whose number of iterations is different.
+	 * 	Every pixel that didn't escape counts as maxIter, since they all have the same color.
+	 *
+	 * @param view: The {@link View} result was calculated for.
+	 * @param result: Every pixel of view, calculated with any kernel.
+	 * @param reference: {@link Kernel} that is trusted, usually {@link Kernel#DOUBLE}.
+	 * @param token: {@link CancelToken} checked every row.
+	 * @return The {@link KernelDiff}, or null if it was cancelled.
+	 */
+	public KernelDiff compare(View view, IterationBuffer result, Kernel reference, CancelToken token)
+	{
+		IterationBuffer expected = new IterationBuffer(view.width, view.height, false);
+		if(!render(view, expected, reference, token))
+			return null;
+		return new KernelDiff(reference, result, expected, view.maxIter);
+	}
+
+	/**
+	 * 	Calculates every pixel of a region of view and blocks until it's finished. The pixels outside the region are not touched.
+	 *
+	 * @param view: The {@link View} to calculate.
+	 * @param out: {@link IterationBuffer} of the same size as the view, where the result is stored.
+	 * @param region: {@link Rectangle} of pixels to calculate, it must be inside the view. Its (x, y) is the first pixel.
+	 * @param token: {@link CancelToken} checked every row. When it's cancelled the remaining rows are skipped.
+	 * @return True if the region was finished, false if it was cancelled.
+	 */
+	public boolean render(View view, IterationBuffer out, Rectangle region, CancelToken token)
+	{
+		check(view, out);
+		if(region.width > 0 && region.height > 0)
+			pool.invoke(new TileTask(view, out, 1, false, subdivide, getKernel(view), null, token, region.x, region.y, region.width, region.height));
+		return !token.isCancelled();
+	}
+
+	/**
+	 * 	Continues the orbits of out that didn't escape up to the maxIter of view. Blocks until it's finished.
+	 * 	Pixels that escaped or already have view.maxIter iterations are not touched, so only the new iterations are done.
+	 *
+	 * @param view: The {@link View} to calculate. It must be the same region out was calculated for, usually with a bigger maxIter, and use the same precision.
+	 * @param out: {@link IterationBuffer} that keeps the orbits.
+	 * @param token: {@link CancelToken} checked every row. When it's cancelled the remaining rows are skipped.
+	 * @return True if it was finished, false if it was cancelled.
+	 */
+	public boolean resume(View view, IterationBuffer out, CancelToken token)
+	{
+		check(view, out);
+		if(!out.hasOrbits())
+			throw new IllegalArgumentException("The buffer doesn't keep the orbits");
+		pool.invoke(new TileTask(view, out, RESUME, false, subdivide, getKernel(view), cache, token, 0, 0, view.width, view.height));
+		return !token.isCancelled();
+	}
+
+	/**
+	 * 	Calculates extra samples of the edge pixels of a finished view, for anti-aliasing. Blocks until it's finished.
+	 * 	The edges are the pixels whose smooth iteration count differs from a neighbour's by more than threshold. Each gets a first level of samples
+	 * 	and, while the budget lasts, the ones whose samples still differ get a second one. Flat regions and the interior are never sampled again.
+	 *
+	 * @param view: The {@link View} buffer was calculated for.
+	 * @param buffer: Every pixel of view.
+	 * @param threshold: Smallest difference of iterations between neighbours that is refined.
+	 * @param budget: Maximum number of extra samples. When there are more edges, the ones with the biggest differences are refined first.
+	 * @param token: {@link CancelToken} checked by every group of pixels.
+	 * @return The {@link Supersamples}, or null if it was cancelled.
+	 */
+	public Supersamples supersample(View view, IterationBuffer buffer, float threshold, int budget, CancelToken token)
+	{
+		check(view, buffer);
+		boolean single = getKernel(view).isSinglePrecision();
+		int[] edges = Supersamples.findEdges(buffer, view.maxIter, threshold, budget / Supersamples.FIRST);
+		IterationBuffer first = new IterationBuffer(edges.length * Supersamples.FIRST, 1, false);
+		pool.invoke(new SampleTask(view, edges, Supersamples.FIRST_X, Supersamples.FIRST_Y, single, first, token, 0, edges.length));
+		if(token.isCancelled())
+			return null;
+
+		int[] uneven = Supersamples.findUneven(buffer, edges, first, view.maxIter, threshold, (budget - first.size()) / Supersamples.SECOND);
+		int[] pixels = new int[uneven.length];
+		for (int u = 0; u < uneven.length; u++)
+			pixels[u] = edges[uneven[u]];
+		IterationBuffer second = new IterationBuffer(uneven.length * Supersamples.SECOND, 1, false);
+		pool.invoke(new SampleTask(view, pixels, Supersamples.SECOND_X, Supersamples.SECOND_Y, single, second, token, 0, pixels.length));
+		if(token.isCancelled())
+			return null;
+		return new Supersamples(edges, first, uneven, second);
+	}
+
+	/**
+	 * 	Returns whether the tiles are calculated with Mariani-Silver subdivision or pixel by pixel.
+	 */
+	public boolean isSubdividing(){	return subdivide;	}
+	/**
+	 * 	Sets whether the tiles are calculated with Mariani-Silver subdivision or pixel by pixel. It's used from the next calculation on.
+	 * 	The iterations are the same on the usual views, but the filled pixels get a smooth iteration count equal to their number of iterations,
+	 * 	so {@link Palette.Mode#SMOOTH} shows flat bands there.
+	 */
+	public void setSubdividing(boolean subdivide){	this.subdivide = subdivide;	}
+
+	/**
+	 * 	Gets the cache of finished tiles, or null if there is none.
+	 */
+	public TileCache getCache(){	return cache;	}
+	/**
+	 * 	Sets the cache of finished tiles. Null disables it. Only the tiles of whole views are cached, not the regions of {@link #render(View, IterationBuffer, Rectangle, CancelToken)}.
+	 */
+	public void setCache(TileCache cache){	this.cache = cache;	}
+
+	/**
+	 * 	Returns whether this JVM can calculate a view with kernel in {@link #render(View, IterationBuffer, Kernel, CancelToken)}.
+	 * 	The deep kernels are calculated by {@link DeepEngine} instead.
+	 */
+	public static boolean isAvailable(Kernel kernel){	return getRowKernel(kernel) != null;	}
+	/**
+	 * 	Returns whether this JVM can use the vectorized kernel.
+	 */
+	public static boolean isVectorAvailable(){	return VECTOR != null;	}
+	/**
+	 * 	Returns whether the full rows are calculated with the vectorized kernel. It's on by default when it's available.
+	 */
+	public boolean isVectorized(){	return vectorized;	}
+	/**
+	 * 	Sets whether the full rows are calculated with the vectorized kernel. It's ignored when it isn't available.
+	 */
+	public void setVectorized(boolean vectorized){	this.vectorized = vectorized && VECTOR != null;	}
+	/**
+	 * 	Returns whether shallow views may be calculated in single precision. It's on by default, but only used with the vectorized kernel.
+	 */
+	public boolean isSinglePrecision(){	return singlePrecision;	}
+	/**
+	 * 	Sets whether shallow views may be calculated in single precision. It's used from the next calculation on.
+	 */
+	public void setSinglePrecision(boolean singlePrecision){	this.singlePrecision = singlePrecision;	}
+
+	/**
+	 * 	Returns whether floats are worth it for view: the distance between its pixels must be far above the precision of a float around its coordinates, or too many pixels fall back to double precision.
+	 * @param view: The {@link View} to check.
+	 */
+	public static boolean isFloatEnough(View view)
+	{
+		double re = Math.max(Math.abs(view.re(0)), Math.abs(view.re(view.width - 1)));
+		double im = Math.max(Math.abs(view.im(0)), Math.abs(view.im(view.height - 1)));
+		return view.maxIter < FLOAT_MAX_ITER && 1 / view.zoom >= FLOAT_LIMIT * Math.max(1, Math.max(re, im));
+	}
+
+	/**
+	 * 	Gets the {@link Kernel} that the next calculations of view will use.
+	 * @param view: The {@link View} to calculate.
+	 */
+	public Kernel getKernel(View view)
+	{
+		// Floats only pay off when a vector holds twice as many of them: the scalar float kernel is slower than the double one
+		if(singlePrecision && vectorized && FLOAT_VECTOR != null && isFloatEnough(view))
+			return Kernel.FLOAT_VECTOR;
+		return vectorized ? Kernel.DOUBLE_VECTOR : Kernel.DOUBLE;
+	}
+
+	/**
+	 * 	Gets the {@link RowKernel} of kernel.
+	 * @return The row kernel, or null if it isn't one of this class or it isn't available.
+	 */
+	private static RowKernel getRowKernel(Kernel kernel)
+	{
+		switch(kernel)
+		{
+		case FLOAT:
+			return FLOAT;
+		case FLOAT_VECTOR:
+			return FLOAT_VECTOR;
+		case DOUBLE:
+			return SCALAR;
+		case DOUBLE_VECTOR:
+			return VECTOR;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * 	Checks that out has the size of view.
+	 */
+	private static void check(View view, IterationBuffer out)
+	{
+		if(out.width != view.width || out.height != view.height)
+			throw new IllegalArgumentException("Buffer of " + out.width + "x" + out.height + " for " + view);
+	}
+
+	/**
+	 * 	Calculates a rectangle of the view. It's split in two until it's not bigger than a tile.
+	 * 	A block of {@link #RESUME} means that the orbits already in out are continued.
+	 * 	When subdivide is set, the tiles of the last pass (block 1) are calculated with Mariani-Silver subdivision.
+	 * 	Every pixel is calculated in the precision of kernel, so a view never mixes floats and doubles.
+	 * 	With a cache, the tiles of the last pass and of {@link #RESUME} are copied from it when they are there, and stored in it otherwise.
+	 */
+	private static class TileTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final View view;
+		private final IterationBuffer out;
+		private final int block;
+		private final boolean refine;
+		private final boolean subdivide;
+		private final Kernel kernel;
+		private final RowKernel rows;
+		private final boolean single;
+		private final TileCache cache;
+		private final CancelToken token;
+		private final int x, y, w, h;
+
+		TileTask(View view, IterationBuffer out, int block, boolean refine, boolean subdivide, Kernel kernel, TileCache cache, CancelToken token, int x, int y, int w, int h)
+		{
+			this.view = view;
+			this.out = out;
+			this.block = block;
+			this.refine = refine;
+			this.subdivide = subdivide;
+			this.kernel = kernel;
+			this.rows = getRowKernel(kernel);
+			this.single = kernel.isSinglePrecision();
+			this.cache = cache;
+			this.token = token;
+			this.x = x;
+			this.y = y;
+			this.w = w;
+			this.h = h;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(token.isCancelled())
+				return;
+			
+			if(w > TILE_SIZE || h > TILE_SIZE)
+			{
+				// Split along the longest side, at a tile boundary so every tile starts at a multiple of TILE_SIZE
+				if(w >= h)
+				{
+					int half = (w + TILE_SIZE - 1) / TILE_SIZE / 2 * TILE_SIZE;
+					invokeAll(new TileTask(view, out, block, refine, subdivide, kernel, cache, token, x, y, half, h), new TileTask(view, out, block, refine, subdivide, kernel, cache, token, x + half, y, w - half, h));
+				}
+				else
+				{
+					int half = (h + TILE_SIZE - 1) / TILE_SIZE / 2 * TILE_SIZE;
+					invokeAll(new TileTask(view, out, block, refine, subdivide, kernel, cache, token, x, y, w, half), new TileTask(view, out, block, refine, subdivide, kernel, cache, token, x, y + half, w, h - half));
+				}
+				return;
+			}
+
+			// Only whole tiles of the last pass are cached: they are the same whatever the passes before were.
+			TileKey key = cache != null && (block == 1 || block == RESUME) ? new TileKey(FRACTAL, view, kernel, subdivide, x, y, w, h) : null;
+			if(key != null && cache.load(key, out))
+				return;
+			calculate();
+			if(key != null && !token.isCancelled())
+				cache.store(key, out);
+		}
+
+		/**
+		 * 	Calculates the tile, which is not bigger than {@link #TILE_SIZE}.
+		 */
+		private void calculate()
+		{
+			int width = view.width;
+			int maxIter = view.maxIter;
+			if(block == RESUME)
+			{
+				for (int py = y; py < y + h && !token.isCancelled(); py++)
+				{
+					double cY = view.im(py);
+					for (int px = x; px < x + w; px++)
+					{
+						int index = px + py*width;
+						if(out.iterations[index] >= maxIter)
+							continue;
+						if(single)
+							FloatKernel.resume(view.re(px), cY, maxIter, out, index);
+						else
+							MandelbrotKernel.resume(view.re(px), cY, maxIter, out, index);
+					}
+				}
+				return;
+			}
+			
+			if(block == 1 && subdivide)
+			{
+				subdivide();
+				return;
+			}
+			
+			if(block == 1)
+			{
+				// The pass of block 2 only calculated the even pixels of the even rows
+				for (int py = y; py < y + h && !token.isCancelled(); py++)
+				{
+					if(!refine || (py & 1) != 0)
+						rows.iterate(view, py, x, w, out);
+					else
+						for (int px = x | 1; px < x + w; px += 2)
+							iterate(px, py);
+				}
+				return;
+			}
+
+			// Tiles start at multiples of TILE_SIZE, so they are also aligned to block.
+			int coarse = block*2 - 1;
+			for (int py = y; py < y + h && !token.isCancelled(); py += block)
+			{
+				int bh = Math.min(block, y + h - py);
+				for (int px = x; px < x + w; px += block)
+				{
+					int index = px + py*width;
+					if(!refine || (px & coarse) != 0 || (py & coarse) != 0)
+						iterate(px, py);
+
+					int bw = Math.min(block, x + w - px);
+					for (int by = py; by < py + bh; by++)
+						for (int bx = px; bx < px + bw; bx++)
+							out.copy(index, bx + by*width);
+				}
+			}
+		}
+	
+		/**
+		 * 	Calculates the border of the tile and subdivides it.
+		 */
+		private void subdivide()
+		{
+			for (int px = x; px < x + w; px++)
+			{
+				sample(px, y);
+				sample(px, y + h - 1);
+			}
+			for (int py = y + 1; py < y + h - 1; py++)
+			{
+				sample(x, py);
+				sample(x + w - 1, py);
+			}
+			subdivide(new Rectangle(x, y, w, h));
+		}
+
+		/**
+		 * 	Calculates the inside of r, whose border is already calculated.
+		 * 	If every pixel of the border has the same number of iterations, the inside is filled with it. Otherwise r is split in four by its middle row and column.
+		 */
+		private void subdivide(Rectangle r)
+		{
+			if(token.isCancelled())
+				return;
+
+			int width = view.width;
+			int maxIter = view.maxIter;
+			int x0 = r.x, y0 = r.y;
+			int x1 = r.x + r.width - 1, y1 = r.y + r.height - 1;
+
+			if(r.width <= MIN_SIDE || r.height <= MIN_SIDE)
+			{
+				for (int py = y0 + 1; py < y1; py++)
+					for (int px = x0 + 1; px < x1; px++)
+						sample(px, py);
+				return;
+			}
+
+			// Check the border. INTERIOR and maxIter are the same here, since both are colored as not escaped.
+			int iter = Math.min(out.iterations[x0 + y0*width], maxIter);
+			boolean interior = true;
+			boolean uniform = true;
+			for (int px = x0; px <= x1 && uniform; px++)
+			{
+				uniform = sameIterations(px + y0*width, iter, maxIter) && sameIterations(px + y1*width, iter, maxIter);
+				interior &= out.iterations[px + y0*width] == MandelbrotKernel.INTERIOR && out.iterations[px + y1*width] == MandelbrotKernel.INTERIOR;
+			}
+			for (int py = y0 + 1; py < y1 && uniform; py++)
+			{
+				uniform = sameIterations(x0 + py*width, iter, maxIter) && sameIterations(x1 + py*width, iter, maxIter);
+				interior &= out.iterations[x0 + py*width] == MandelbrotKernel.INTERIOR && out.iterations[x1 + py*width] == MandelbrotKernel.INTERIOR;
+			}
+
+			// A border that only ran out of iterations can hide thin escaping filaments, so it's only filled when every pixel is known to be inside the set.
+			if(uniform && (iter < maxIter || interior))
+			{
+				// The orbits of the filled escaped pixels are unknown (NaN), so they are started again if they have to be continued.
+				if(interior)
+					iter = MandelbrotKernel.INTERIOR;
+				for (int py = y0 + 1; py < y1; py++)
+					for (int px = x0 + 1; px < x1; px++)
+						out.set(px + py*width, iter, iter, Double.NaN, Double.NaN);
+				return;
+			}
+
+			int mx = x0 + r.width/2;
+			int my = y0 + r.height/2;
+			for (int px = x0 + 1; px < x1; px++)
+				sample(px, my);
+			for (int py = y0 + 1; py < y1; py++)
+				if(py != my)
+					sample(mx, py);
+
+			subdivide(new Rectangle(x0, y0, mx - x0 + 1, my - y0 + 1));
+			subdivide(new Rectangle(mx, y0, x1 - mx + 1, my - y0 + 1));
+			subdivide(new Rectangle(x0, my, mx - x0 + 1, y1 - my + 1));
+			subdivide(new Rectangle(mx, my, x1 - mx + 1, y1 - my + 1));
+		}
+
+		/**
+		 * 	Returns whether the pixel index has iter iterations, counting every pixel that didn't escape as maxIter.
+		 */
+		private boolean sameIterations(int index, int iter, int maxIter)
+		{
+			return Math.min(out.iterations[index], maxIter) == iter;
+		}
+
+		/**
+		 * 	Calculates the pixel (px, py), unless it was already calculated by the pass of block 2.
+		 */
+		private void sample(int px, int py)
+		{
+			if(!refine || (px & 1) != 0 || (py & 1) != 0)
+				iterate(px, py);
+		}
+
+		/**
+		 * 	Calculates the pixel (px, py) in the precision of the kernel.
+		 */
+		private void iterate(int px, int py)
+		{
+			int index = px + py*view.width;
+			if(single)
+				FloatKernel.iterate(view.re(px), view.im(py), view.maxIter, out, index);
+			else
+				MandelbrotKernel.iterate(view.re(px), view.im(py), view.maxIter, out, index);
+		}
+	}
+
+	/**
+	 * 	Calculates the samples of a range of pixels at the same offsets inside each one. It's split in two until it's not bigger than {@value #SAMPLE_GROUP} pixels.
+	 */
+	private static class SampleTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+		private static final int SAMPLE_GROUP = 256;
+
+		private final View view;
+		private final int[] pixels;
+		private final double[] offsetX, offsetY;
+		private final boolean single;
+		private final IterationBuffer out;
+		private final CancelToken token;
+		private final int from, to;
+
+		/**
+		 * 	Creates a task for the pixels from to to (excluded). The sample s of the pixel k is stored at k * offsetX.length + s in out.
+		 */
+		SampleTask(View view, int[] pixels, double[] offsetX, double[] offsetY, boolean single, IterationBuffer out, CancelToken token, int from, int to)
+		{
+			this.view = view;
+			this.pixels = pixels;
+			this.offsetX = offsetX;
+			this.offsetY = offsetY;
+			this.single = single;
+			this.out = out;
+			this.token = token;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if(token.isCancelled())
+				return;
+			if(to - from > SAMPLE_GROUP)
+			{
+				int half = (from + to) >>> 1;
+				invokeAll(new SampleTask(view, pixels, offsetX, offsetY, single, out, token, from, half), new SampleTask(view, pixels, offsetX, offsetY, single, out, token, half, to));
+				return;
+			}
+
+			int n = offsetX.length;
+			for (int k = from; k < to; k++)
+			{
+				int px = pixels[k] % view.width, py = pixels[k] / view.width;
+				for (int s = 0; s < n; s++)
+				{
+					double cX = (px + offsetX[s] - view.centerX) / view.zoom, cY = (py + offsetY[s] - view.centerY) / view.zoom;
+					if(single)
+						FloatKernel.iterate(cX, cY, view.maxIter, out, k * n + s);
+					else
+						MandelbrotKernel.iterate(cX, cY, view.maxIter, out, k * n + s);
+				}
+			}
+		}
+	}
+}
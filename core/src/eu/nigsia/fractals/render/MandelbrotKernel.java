@@ -0,0 +1,145 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	Escape-time kernel of the Mandelbrot set (Wikipedia's formula {@link https://en.wikipedia.org/wiki/Mandelbrot_set}).
+ * 	It has no state at all: every value is a local variable, so it can be called from any number of threads at the same time.
+ * 	Points inside the set are detected early, since they would otherwise use all of maxIter:
+ * 	the main cardioid and the period-2 bulb are tested analytically, and periodic orbits are found with Brent's cycle detection.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class MandelbrotKernel
+{
+	/**
+	 * 	Natural logarithm of 2. Used to calculate the smooth iteration count.
+	 */
+	private static final double LN2 = Math.log(2);
+	/**
+	 * 	Number of iterations stored for the points that are known to be inside the set. It's bigger than any maxIter, so they are never iterated again.
+	 */
+	public static final int INTERIOR = Integer.MAX_VALUE;
+
+	private MandelbrotKernel(){}
+
+	/**
+	 * 	Iterates <i>z_n+1 = z_n^2 + c</i> starting from <i>z_0 = 0</i> until <i>|z_n| >= 2</i> or maxIter iterations are done, and stores the result.
+	 *
+	 * @param cX: Constant <i>c</i> (in the Real axis).
+	 * @param cY: Constant <i>c</i> (in the Complex axis).
+	 * @param maxIter: Maximum number of iterations.
+	 * @param out: {@link IterationBuffer} where the result is stored.
+	 * @param index: Index of the pixel in out.
+	 * @return The number of iterations done. It's maxIter when the point didn't escape, or {@link #INTERIOR} when it's known to be inside the set.
+	 */
+	public static int iterate(double cX, double cY, int maxIter, IterationBuffer out, int index)
+	{
+		if(isInCardioidOrBulb(cX, cY))
+		{
+			out.set(index, INTERIOR, INTERIOR, 0, 0);
+			return INTERIOR;
+		}
+		return iterate(cX, cY, 0, 0, 0, maxIter, out, index);
+	}
+
+	/**
+	 * 	Continues the orbit stored in out (its last <i>z_n</i> and number of iterations) until <i>|z_n| >= 2</i> or maxIter iterations are done, and stores the result.
+	 * 	The result is exactly the same as calling {@link #iterate(double, double, int, IterationBuffer, int)} with the new maxIter, but only the new iterations are done.
+	 * 	If the stored orbit is unknown (NaN), the point is iterated again from <i>z_0 = 0</i>.
+	 *
+	 * @param cX: Constant <i>c</i> (in the Real axis).
+	 * @param cY: Constant <i>c</i> (in the Complex axis).
+	 * @param maxIter: Maximum number of iterations.
+	 * @param out: {@link IterationBuffer} that keeps the orbits, where the result is stored.
+	 * @param index: Index of the pixel in out.
+	 * @return The number of iterations done.
+	 */
+	public static int resume(double cX, double cY, int maxIter, IterationBuffer out, int index)
+	{
+		if(Double.isNaN(out.zx[index]))
+			return iterate(cX, cY, maxIter, out, index);
+		return iterate(cX, cY, out.zx[index], out.zy[index], out.iterations[index], maxIter, out, index);
+	}
+
+	/**
+	 * 	Iterates <i>z_n+1 = z_n^2 + c</i> starting from <i>z_0 = (zX, zY)</i> instead of 0, which is the escape-time kernel of the Julia set of c, and stores the result.
+	 * 	There is no cardioid test (it's only valid from <i>z_0 = 0</i>), but periodic orbits are still detected.
+	 *
+	 * @param zX: First <i>z</i> (in the Real axis).
+	 * @param zY: First <i>z</i> (in the Complex axis).
+	 * @param cX: Constant <i>c</i> (in the Real axis).
+	 * @param cY: Constant <i>c</i> (in the Complex axis).
+	 * @param maxIter: Maximum number of iterations.
+	 * @param out: {@link IterationBuffer} where the result is stored.
+	 * @param index: Index of the pixel in out.
+	 * @return The number of iterations done.
+	 */
+	public static int julia(double zX, double zY, double cX, double cY, int maxIter, IterationBuffer out, int index)
+	{
+		return iterate(cX, cY, zX, zY, 0, maxIter, out, index);
+	}
+
+	/**
+	 * 	Returns whether c is inside the main cardioid or the period-2 bulb. Those points never escape.
+	 * @param cX: Constant <i>c</i> (in the Real axis).
+	 * @param cY: Constant <i>c</i> (in the Complex axis).
+	 */
+	public static boolean isInCardioidOrBulb(double cX, double cY)
+	{
+		double y2 = cY * cY;
+		double x = cX - 0.25;
+		double q = x * x + y2;
+		if(q * (q + x) < 0.25 * y2)
+			return true;
+		x = cX + 1;
+		return x * x + y2 < 0.0625;
+	}
+
+	/**
+	 * 	Iterates from <i>z_iter = (zx, zy)</i>.
+	 * 	It also looks for cycles with Brent's algorithm: <i>z</i> is saved every time the number of steps reaches a power of two and compared with every new <i>z</i>.
+	 * 	The comparison is exact, so an orbit is only stopped when it really repeats itself, and then it would repeat forever without escaping. That keeps the result exactly the same as iterating up to maxIter.
+	 */
+	private static int iterate(double cX, double cY, double zx, double zy, int iter, int maxIter, IterationBuffer out, int index)
+	{
+		double tmp;
+		double savedX = zx, savedY = zy;
+		int power = 1, steps = 0;
+		while (zx * zx + zy * zy < 4.0 && iter < maxIter)
+		{
+			tmp = zx * zx - zy * zy + cX;
+			zy = 2.0 * zx * zy + cY;
+			zx = tmp;
+			iter++;
+
+			if(zx == savedX && zy == savedY)
+			{
+				out.set(index, INTERIOR, INTERIOR, zx, zy);
+				return INTERIOR;
+			}
+			if(++steps == power)
+			{
+				savedX = zx;
+				savedY = zy;
+				power <<= 1;
+				steps = 0;
+			}
+		}
+		out.set(index, iter, smooth(iter, maxIter, zx * zx + zy * zy), zx, zy);
+		return iter;
+	}
+
+	/**
+	 * 	Calculates the smooth iteration count <i>n + 1 - log2(ln|z_n|)</i>, which removes the bands of the integer count.
+	 *
+	 * @param iter: Number of iterations done.
+	 * @param maxIter: Maximum number of iterations.
+	 * @param norm: <i>|z_n|^2</i> when the iteration stopped.
+	 */
+	public static float smooth(int iter, int maxIter, double norm)
+	{
+		if(iter >= maxIter || norm < 4.0)
+			return iter;
+		double nu = iter + 1 - Math.log(0.5 * Math.log(norm)) / LN2;
+		return (float)Math.max(nu, 0);
+	}
+}
@@ -0,0 +1,196 @@
+package eu.nigsia.fractals.render;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 	{@link TileCache} kept in the heap, for the views seen a moment ago: zooming in with the wheel and back out, or going back to a place.
+ * 	It's bounded by the bytes of its tiles and, when it's full, the least recently used tiles are evicted.
+ * 	It can be put in front of a slower cache (like {@link DiskTileCache}): the tiles it doesn't have are looked for there and kept, and every stored tile is stored there too.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class MemoryTileCache extends TileCache
+{
+	/**
+	 * 	Estimated bytes of the objects of a tile besides its arrays.
+	 */
+	private static final int OVERHEAD = 128;
+
+	/**
+	 * 	Maximum bytes of the stored tiles.
+	 */
+	private final long maxBytes;
+	/**
+	 * 	Cache looked up when a tile isn't here, or null.
+	 */
+	private final TileCache next;
+	/**
+	 * 	Stored tiles, from the least to the most recently used. Guarded by this.
+	 */
+	private final LinkedHashMap<TileKey, Tile> tiles = new LinkedHashMap<TileKey, Tile>(16, 0.75f, true);
+	/**
+	 * 	Bytes of the stored tiles. Guarded by this.
+	 */
+	private long bytes;
+
+	/**
+	 * 	Creates an empty cache.
+	 *
+	 * @param maxBytes: Maximum bytes of the stored tiles. A tile of 32x32 pixels takes 24KB with its orbits and 8KB without them.
+	 * @param next: Cache looked up when a tile isn't here, or null.
+	 */
+	public MemoryTileCache(long maxBytes, TileCache next)
+	{
+		if(maxBytes <= 0)
+			throw new IllegalArgumentException("Cache of " + maxBytes + " bytes");
+		this.maxBytes = maxBytes;
+		this.next = next;
+	}
+
+	@Override
+	protected boolean read(TileKey key, IterationBuffer out)
+	{
+		Tile tile;
+		synchronized(this)
+		{
+			tile = tiles.get(key);
+		}
+		if(tile != null)
+		{
+			tile.copyTo(key, out);
+			return true;
+		}
+		if(next == null || !next.load(key, out))
+			return false;
+		// Kept, so next time it doesn't have to go to the slower cache
+		put(key, new Tile(key, out));
+		return true;
+	}
+
+	@Override
+	public void store(TileKey key, IterationBuffer src)
+	{
+		put(key, new Tile(key, src));
+		if(next != null)
+			next.store(key, src);
+	}
+
+	/**
+	 * 	Adds a tile, replacing the one of the same key, and evicts the least recently used ones until it fits.
+	 */
+	private synchronized void put(TileKey key, Tile tile)
+	{
+		if(tile.bytes > maxBytes)
+			return;
+		Tile old = tiles.put(key, tile);
+		if(old != null)
+			bytes -= old.bytes;
+		bytes += tile.bytes;
+		Iterator<Tile> eldest = tiles.values().iterator();
+		while(bytes > maxBytes)
+		{
+			bytes -= eldest.next().bytes;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * 	Removes every tile. The statistics are kept.
+	 */
+	public synchronized void clear()
+	{
+		tiles.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * 	Gets the number of tiles stored.
+	 */
+	public synchronized int size(){	return tiles.size();	}
+	/**
+	 * 	Gets the bytes of the stored tiles.
+	 */
+	public synchronized long getBytes(){	return bytes;	}
+	/**
+	 * 	Gets the maximum bytes of the stored tiles.
+	 */
+	public long getMaxBytes(){	return maxBytes;	}
+	/**
+	 * 	Gets the cache looked up when a tile isn't here, or null.
+	 */
+	public TileCache getNext(){	return next;	}
+
+	@Override
+	public String toString()
+	{
+		return super.toString() + ", " + size() + " tiles, " + (getBytes() >> 10) + "/" + (maxBytes >> 10) + " KB" + (next != null ? " -> " + next : "");
+	}
+
+	/**
+	 * 	Copy of the pixels of a tile, row after row. It's never changed once created.
+	 */
+	private static final class Tile
+	{
+		private final int[] iterations;
+		private final float[] smooth;
+		/**
+		 * 	Last <i>z_n</i> of every pixel, or null if the buffer it was copied from didn't keep the orbits.
+		 */
+		private final double[] zx, zy;
+		/**
+		 * 	Estimated bytes of the tile.
+		 */
+		private final long bytes;
+
+		/**
+		 * 	Copies the pixels of key from src.
+		 */
+		Tile(TileKey key, IterationBuffer src)
+		{
+			int n = key.size();
+			iterations = new int[n];
+			smooth = new float[n];
+			zx = src.hasOrbits() ? new double[n] : null;
+			zy = src.hasOrbits() ? new double[n] : null;
+			for (int py = 0; py < key.height; py++)
+			{
+				int index = key.x + (key.y + py) * src.width, i = py * key.width;
+				System.arraycopy(src.iterations, index, iterations, i, key.width);
+				System.arraycopy(src.smooth, index, smooth, i, key.width);
+				if(zx != null)
+				{
+					System.arraycopy(src.zx, index, zx, i, key.width);
+					System.arraycopy(src.zy, index, zy, i, key.width);
+				}
+			}
+			bytes = OVERHEAD + 8L * n + (zx != null ? 16L * n : 0);
+		}
+
+		/**
+		 * 	Copies the pixels into the tile of key in out. If they have no orbits, the orbits of out are set as unknown (NaN).
+		 */
+		void copyTo(TileKey key, IterationBuffer out)
+		{
+			for (int py = 0; py < key.height; py++)
+			{
+				int index = key.x + (key.y + py) * out.width, i = py * key.width;
+				System.arraycopy(iterations, i, out.iterations, index, key.width);
+				System.arraycopy(smooth, i, out.smooth, index, key.width);
+				if(!out.hasOrbits())
+					continue;
+				if(zx != null)
+				{
+					System.arraycopy(zx, i, out.zx, index, key.width);
+					System.arraycopy(zy, i, out.zy, index, key.width);
+				}
+				else
+				{
+					Arrays.fill(out.zx, index, index + key.width, Double.NaN);
+					Arrays.fill(out.zy, index, index + key.width, Double.NaN);
+				}
+			}
+		}
+	}
+}
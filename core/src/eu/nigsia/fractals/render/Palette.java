@@ -0,0 +1,145 @@
+package eu.nigsia.fractals.render;
+
+import eu.nigsia.fractals.util.PixelSink;
+
+/**
+ * 	This class turns an {@link IterationBuffer} into RGBA8888 colors through precomputed lookup tables.
+ * 	Coloring is only a memory pass over the buffer, so the palette can be changed without calculating the fractal again.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class Palette
+{
+	/**
+	 * 	How the iterations are turned into colors.
+	 */
+	public static enum Mode
+	{
+		/**
+		 * 	The original coloring: <i>iter | iter << bitshift</i>, where iter are the iterations left. It shows bands.
+		 */
+		CLASSIC,
+		/**
+		 * 	A cyclic gradient indexed by the smooth iteration count. It has no bands.
+		 */
+		SMOOTH
+	}
+
+	/**
+	 * 	Number of colors of the gradient used by {@link Mode#SMOOTH}.
+	 */
+	private static final int GRADIENT_SIZE = 1024;
+	/**
+	 * 	Number of gradient colors per iteration.
+	 */
+	private static final float GRADIENT_STEPS = 16f;
+	/**
+	 * 	Color of the points that didn't escape in {@link Mode#SMOOTH}.
+	 */
+	private static final int INTERIOR = 0x000000ff;
+
+	/**
+	 * 	Current mode.
+	 */
+	private Mode mode = Mode.CLASSIC;
+	/**
+	 * 	Current color bitshift of {@link Mode#CLASSIC}.
+	 */
+	private int bitshift;
+
+	/**
+	 * 	Lookup table of {@link Mode#CLASSIC}, indexed by the number of iterations done. It's built again when maxIter or the bitshift change.
+	 */
+	private int[] classic;
+	/**
+	 * 	maxIter and bitshift used to build {@link #classic}.
+	 */
+	private int classicIter = -1, classicShift = -1;
+	/**
+	 * 	Lookup table of {@link Mode#SMOOTH}.
+	 */
+	private final int[] gradient = new int[GRADIENT_SIZE];
+
+	/**
+	 * 	Creates a palette in {@link Mode#CLASSIC}.
+	 * @param bitshift: Color bitshift.
+	 */
+	public Palette(int bitshift)
+	{
+		this.bitshift = bitshift;
+		for(int i = 0; i < GRADIENT_SIZE; i++)
+		{
+			double t = 2 * Math.PI * i / GRADIENT_SIZE;
+			int r = (int)(127.5 + 127.5 * Math.cos(t));
+			int g = (int)(127.5 + 127.5 * Math.cos(t + 2.1));
+			int b = (int)(127.5 + 127.5 * Math.cos(t + 4.2));
+			gradient[i] = r << 24 | g << 16 | b << 8 | 0xff;
+		}
+	}
+
+	/**
+	 * 	Colors every pixel of buffer.
+	 * @param buffer: The {@link IterationBuffer} to color.
+	 * @param maxIter: Maximum number of iterations it was calculated with.
+	 * @param colors: Output RGBA8888 colors, one per pixel of buffer.
+	 */
+	public void color(IterationBuffer buffer, int maxIter, int[] colors)
+	{
+		int size = buffer.size();
+		int[] iterations = buffer.iterations;
+		if(mode == Mode.CLASSIC)
+		{
+			int[] lut = getClassic(maxIter);
+			for(int i = 0; i < size; i++)
+				colors[i] = lut[Math.min(iterations[i], maxIter)];
+		}
+		else
+		{
+			float[] smooth = buffer.smooth;
+			for(int i = 0; i < size; i++)
+			{
+				if(iterations[i] >= maxIter)
+					colors[i] = INTERIOR;
+				else
+					colors[i] = gradient[(int)(smooth[i] * GRADIENT_STEPS) & (GRADIENT_SIZE - 1)];
+			}
+		}
+	}
+
+	/**
+	 * 	Gets the lookup table of {@link Mode#CLASSIC}. The colors are blended over a transparent pixel, like the original {@link com.badlogic.gdx.graphics.Pixmap#drawPixel(int, int)} did.
+	 * 	Their alpha is the low byte of the color, so the interior is transparent. The images of {@link eu.nigsia.fractals.util.ImageWriter} drop it, which leaves the interior black.
+	 */
+	private int[] getClassic(int maxIter)
+	{
+		if(classicIter != maxIter || classicShift != bitshift)
+		{
+			classic = new int[maxIter + 1];
+			for(int i = 0; i <= maxIter; i++)
+			{
+				int iter = maxIter - i;
+				classic[i] = PixelSink.overTransparent(iter | iter << bitshift);
+			}
+			classicIter = maxIter;
+			classicShift = bitshift;
+		}
+		return classic;
+	}
+
+	/**
+	 * 	Gets the current mode.
+	 */
+	public Mode getMode(){	return mode;	}
+	/**
+	 * 	Sets the mode.
+	 */
+	public void setMode(Mode mode){	this.mode = mode;	}
+	/**
+	 * 	Gets the color bitshift of {@link Mode#CLASSIC}.
+	 */
+	public int getBitshift(){	return bitshift;	}
+	/**
+	 * 	Sets the color bitshift of {@link Mode#CLASSIC}.
+	 */
+	public void setBitshift(int bitshift){	this.bitshift = bitshift;	}
+}
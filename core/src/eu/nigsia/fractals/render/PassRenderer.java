@@ -0,0 +1,267 @@
+package eu.nigsia.fractals.render;
+
+import eu.nigsia.fractals.math.geom.Rectangle;
+
+/**
+ * 	This class calculates every pass of the views requested to a {@link RenderPipeline}, on whatever thread the pipeline calls it from.
+ * 	It keeps the last finished view, so a translation of it or a change of maxIter only calculates what changed (see {@link RenderPipeline}).
+ * 	It has no thread of its own, so it's shared by the threaded pipeline and by the single-threaded one of the html version.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+final class PassRenderer
+{
+	/**
+	 * 	Engine that calculates every pass.
+	 */
+	private final MandelbrotEngine engine;
+	/**
+	 * 	Engine that calculates the deep views.
+	 */
+	private final DeepEngine deepEngine;
+
+	/**
+	 * 	Last finished pass that hasn't been polled yet. Guarded by this.
+	 */
+	private Frame latest;
+	/**
+	 * 	Last validation that hasn't been polled yet. Guarded by this.
+	 */
+	private KernelDiff validation;
+	/**
+	 * 	Whether the finished views calculated in single precision are validated or not.
+	 */
+	private volatile boolean validating = false;
+	/**
+	 * 	Maximum number of extra samples of every finished view. 0 turns the supersampling off.
+	 */
+	private volatile int sampleBudget = 0;
+	/**
+	 * 	Smallest difference of iterations between neighbours that is supersampled.
+	 */
+	private volatile float sampleThreshold = 1;
+
+	/**
+	 * 	Buffer where the passes are calculated. Only used by {@link #render(Object, CancelToken)}.
+	 */
+	private IterationBuffer buffer;
+	/**
+	 * 	Last view whose every pixel was calculated. Only used by {@link #render(Object, CancelToken)}.
+	 */
+	private View baseView;
+	/**
+	 * 	Result of {@link #baseView}, with its orbits. It's swapped with {@link #buffer} when a view is finished, so it's never copied. Only used by {@link #render(Object, CancelToken)}.
+	 */
+	private IterationBuffer baseBuffer;
+	/**
+	 * 	{@link Kernel} {@link #baseView} was calculated with. Its pixels are only reused by views of the same precision. Only used by {@link #render(Object, CancelToken)}.
+	 */
+	private Kernel baseKernel;
+
+	/**
+	 * 	Creates the passes of a pipeline.
+	 * @param engine: The {@link MandelbrotEngine} that calculates every pass.
+	 * @param deepEngine: The {@link DeepEngine} that calculates the deep views.
+	 */
+	PassRenderer(MandelbrotEngine engine, DeepEngine deepEngine)
+	{
+		this.engine = engine;
+		this.deepEngine = deepEngine;
+	}
+
+	/**
+	 * 	Gets the last finished pass.
+	 * @return The last finished {@link Frame}, or null if there is no new one since the last call.
+	 */
+	synchronized Frame poll()
+	{
+		Frame frame = latest;
+		latest = null;
+		return frame;
+	}
+
+	/**
+	 * 	Gets the last validation.
+	 * @return The {@link KernelDiff} of the last validated view, or null if there is no new one since the last call.
+	 */
+	synchronized KernelDiff pollValidation()
+	{
+		KernelDiff diff = validation;
+		validation = null;
+		return diff;
+	}
+
+	/**
+	 * 	Sets the frame returned by the next {@link #poll()}.
+	 */
+	private synchronized void set(Frame frame){	latest = frame;	}
+	/**
+	 * 	Sets the validation returned by the next {@link #pollValidation()}.
+	 */
+	private synchronized void set(KernelDiff diff){	validation = diff;	}
+
+	/**
+	 * 	Returns whether the views calculated in single precision are validated.
+	 */
+	boolean isValidating(){	return validating;	}
+	/**
+	 * 	Sets whether every finished view calculated in single precision is calculated again with {@link Kernel#DOUBLE} and compared.
+	 */
+	void setValidating(boolean validating){	this.validating = validating;	}
+
+	/**
+	 * 	Gets the maximum number of extra samples of every finished view. 0 means that supersampling is off.
+	 */
+	int getSampleBudget(){	return sampleBudget;	}
+	/**
+	 * 	Sets the supersampling of the finished views. It's used from the next view on.
+	 * @param budget: Maximum number of extra samples of every view, or 0 to turn it off.
+	 * @param threshold: Smallest difference of iterations between neighbours that is supersampled.
+	 */
+	void setSupersampling(int budget, float threshold)
+	{
+		this.sampleThreshold = threshold;
+		this.sampleBudget = budget;
+	}
+
+	/**
+	 * 	Calculates every pass of a requested view and publishes them. It returns when the view is finished or token is cancelled.
+	 * @param next: The {@link View} or {@link DeepView} to calculate.
+	 * @param token: {@link CancelToken} of next.
+	 */
+	void render(Object next, CancelToken token)
+	{
+		if(next instanceof DeepView)
+		{
+			DeepView deep = (DeepView)next;
+			allocate(deep.width, deep.height);
+			if(deepEngine.render(deep, buffer, token))
+				set(new Frame(deep, buffer.copyCounts(), deepEngine.getKernel()));
+			return;
+		}
+
+		View view = (View)next;
+		allocate(view.width, view.height);
+		boolean reuse = baseView != null && engine.getKernel(view).isSinglePrecision() == baseKernel.isSinglePrecision();
+
+		if(reuse && view.isSameRegion(baseView))
+		{
+			if(deepen(view, token))
+				publish(view, 1, token);
+			return;
+		}
+
+		if(reuse && view.isTranslationOf(baseView)
+				&& Math.abs(view.centerX - baseView.centerX) < view.width
+				&& Math.abs(view.centerY - baseView.centerY) < view.height)
+		{
+			if(shift(view, token))
+				publish(view, 1, token);
+			return;
+		}
+
+		// A view that was already calculated is copied from the engine's cache at once
+		if(engine.load(view, buffer))
+		{
+			publish(view, 1, token);
+			return;
+		}
+
+		for(int block = RenderPipeline.COARSEST_BLOCK; block >= 1; block /= 2)
+		{
+			// Don't publish a pass of a view that is no longer wanted.
+			if(!engine.render(view, buffer, block, block != RenderPipeline.COARSEST_BLOCK, token))
+				break;
+			publish(view, block, token);
+		}
+	}
+
+	/**
+	 * 	Publishes the pass in {@link #buffer}. The buffer is reused by the next pass, so the GL thread gets its own copy (without the orbits).
+	 * 	When the pass is final, {@link #buffer} becomes the base for the next views, it's supersampled and published again if supersampling is on, and it's validated in validation mode.
+	 * @param view: The {@link View} that was calculated.
+	 * @param block: The block side of the pass.
+	 * @param token: {@link CancelToken} of view.
+	 */
+	private void publish(View view, int block, CancelToken token)
+	{
+		Kernel kernel = engine.getKernel(view);
+		Frame frame = new Frame(view, buffer.copyCounts(), block, kernel);
+		if(frame.isFinal())
+		{
+			IterationBuffer old = baseBuffer;
+			baseBuffer = buffer;
+			baseView = view;
+			baseKernel = kernel;
+			buffer = old;
+		}
+		set(frame);
+
+		int budget = sampleBudget;
+		if(budget > 0 && frame.isFinal())
+		{
+			Supersamples samples = engine.supersample(view, frame.buffer, sampleThreshold, budget, token);
+			if(samples != null)
+				set(new Frame(frame, samples));
+		}
+
+		if(validating && frame.isFinal() && kernel.isSinglePrecision())
+		{
+			KernelDiff diff = engine.compare(view, frame.buffer, Kernel.DOUBLE, token);
+			if(diff != null)
+				set(diff);
+		}
+	}
+
+	/**
+	 * 	Moves the pixels of {@link #baseBuffer} to where they are on view and calculates the two strips that weren't visible on {@link #baseView}.
+	 * @param view: A translation of {@link #baseView}.
+	 * @param token: {@link CancelToken} of view.
+	 * @return True if it was finished, false if it was cancelled.
+	 */
+	private boolean shift(View view, CancelToken token)
+	{
+		int w = view.width;
+		int h = view.height;
+		int dx = view.centerX - baseView.centerX;
+		int dy = view.centerY - baseView.centerY;
+
+		// Rows of the new view that were on the old one
+		int fromY = Math.max(0, dy);
+		int toY = Math.min(h, h + dy);
+		int fromX = Math.max(0, dx);
+		int toX = Math.min(w, w + dx);
+		for(int y = fromY; y < toY; y++)
+			buffer.copy(baseBuffer, (fromX - dx) + (y - dy)*w, fromX + y*w, toX - fromX);
+
+		// Exposed columns (full height) and exposed rows (the rest of the width)
+		Rectangle columns = new Rectangle(dx > 0 ? 0 : toX, 0, w - (toX - fromX), h);
+		Rectangle rows = new Rectangle(fromX, dy > 0 ? 0 : toY, toX - fromX, h - (toY - fromY));
+		return engine.render(view, buffer, columns, token) && engine.render(view, buffer, rows, token);
+	}
+
+	/**
+	 * 	Calculates view from {@link #baseView}, which is the same region with a different maxIter.
+	 * 	A smaller maxIter needs no calculation: the palette treats every pixel with more iterations as not escaped.
+	 * 	A bigger one only continues the orbits that didn't escape.
+	 * @param view: {@link #baseView} with another maxIter.
+	 * @param token: {@link CancelToken} of view.
+	 * @return True if it was finished, false if it was cancelled.
+	 */
+	private boolean deepen(View view, CancelToken token)
+	{
+		buffer.copy(baseBuffer, 0, 0, view.size());
+		if(view.maxIter <= baseView.maxIter)
+			return true;
+		return engine.resume(view, buffer, token);
+	}
+
+	/**
+	 * 	Makes sure {@link #buffer} has the given size.
+	 */
+	private void allocate(int width, int height)
+	{
+		if(buffer == null || buffer.width != width || buffer.height != height)
+			buffer = new IterationBuffer(width, height);
+	}
+}
@@ -0,0 +1,88 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	Escape-time kernel of the Mandelbrot set for deep zooms, based on perturbation theory.
+ * 	A pixel <i>c = C + dc</i> is iterated as its difference to a {@link ReferenceOrbit} <i>Z_n</i> of <i>C</i>: <i>z_n = Z_n + d_n</i>, where
+ * 	<i>d_n+1 = 2*Z_n*d_n + d_n^2 + dc</i>. Both <i>d_n</i> and <i>dc</i> are tiny, so they fit in a double even when <i>c</i> needs hundreds of digits.
+ * 	When <i>|z_n|</i> gets much smaller than <i>|Z_n|</i>, <i>d_n</i> loses its precision and the pixel is a glitch: it has to be calculated again with another reference.
+ * 	It has no state at all, so it can be called from any number of threads at the same time.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class PerturbationKernel
+{
+	/**
+	 * 	Number of iterations stored for the pixels that are glitches.
+	 */
+	public static final int GLITCH = -1;
+	/**
+	 * 	A pixel is a glitch when <i>|z_n|^2 < GLITCH_TOLERANCE * |Z_n|^2</i> (Pauldelbrot's criterion).
+	 */
+	private static final double GLITCH_TOLERANCE = 1e-6;
+
+	private PerturbationKernel(){}
+
+	/**
+	 * 	Iterates the pixel <i>C + dc</i> relative to ref until <i>|z_n| >= 2</i> or maxIter iterations are done, and stores the result.
+	 *
+	 * @param ref: {@link ReferenceOrbit} of <i>C</i>.
+	 * @param dcX: <i>dc</i> (in the Real axis).
+	 * @param dcY: <i>dc</i> (in the Complex axis).
+	 * @param maxIter: Maximum number of iterations.
+	 * @param detect: Whether glitches are detected. If not, they are stored as if they were correct and the pixels that outlive the reference are finished with doubles.
+	 * @param out: {@link IterationBuffer} where the result is stored.
+	 * @param index: Index of the pixel in out.
+	 * @return The number of iterations done, or {@link #GLITCH}.
+	 */
+	public static int iterate(ReferenceOrbit ref, double dcX, double dcY, int maxIter, boolean detect, IterationBuffer out, int index)
+	{
+		double[] refRe = ref.re, refIm = ref.im;
+		int last = ref.length - 1;
+		double dx = 0, dy = 0, x, y, tmp;
+		int iter = 0;
+		while(true)
+		{
+			double rx = refRe[iter], ry = refIm[iter];
+			x = rx + dx;
+			y = ry + dy;
+			double norm = x * x + y * y;
+			if(norm >= 4.0 || iter >= maxIter)
+			{
+				out.set(index, iter, MandelbrotKernel.smooth(iter, maxIter, norm), x, y);
+				return iter;
+			}
+			if(detect && norm < GLITCH_TOLERANCE * (rx * rx + ry * ry))
+				break;
+			if(iter == last)
+			{
+				// The reference escaped before this pixel
+				if(detect)
+					break;
+				return finish(ref.cRe + dcX, ref.cIm + dcY, x, y, iter, maxIter, out, index);
+			}
+			tmp = 2 * (rx * dx - ry * dy) + dx * dx - dy * dy + dcX;
+			dy = 2 * (rx * dy + ry * dx) + 2 * dx * dy + dcY;
+			dx = tmp;
+			iter++;
+		}
+		out.set(index, GLITCH, GLITCH, x, y);
+		return GLITCH;
+	}
+
+	/**
+	 * 	Continues an orbit with plain doubles. It's only used as a last resort, when no reference is left.
+	 */
+	private static int finish(double cX, double cY, double zx, double zy, int iter, int maxIter, IterationBuffer out, int index)
+	{
+		double tmp;
+		while (zx * zx + zy * zy < 4.0 && iter < maxIter)
+		{
+			tmp = zx * zx - zy * zy + cX;
+			zy = 2.0 * zx * zy + cY;
+			zx = tmp;
+			iter++;
+		}
+		out.set(index, iter, MandelbrotKernel.smooth(iter, maxIter, zx * zx + zy * zy), zx, zy);
+		return iter;
+	}
+}
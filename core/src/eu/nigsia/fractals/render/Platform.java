@@ -0,0 +1,37 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	This class has what the render package needs from the JVM and isn't in the html version: loading the vectorized kernels by name and counting the cores.
+ * 	The html module replaces it with one that has no vectorized kernels and a single core.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+final class Platform
+{
+	private Platform(){}
+
+	/**
+	 * 	Loads a vectorized {@link RowKernel}. It fails when the class isn't in the classpath or the JVM wasn't started with the <i>jdk.incubator.vector</i> module.
+	 * @param name: Name of its class.
+	 * @return The kernel, or null if it can't be used.
+	 */
+	static RowKernel loadRowKernel(String name)
+	{
+		try
+		{
+			return (RowKernel)Class.forName(name).getDeclaredConstructor().newInstance();
+		}
+		catch(Throwable e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * 	Gets the number of cores available, which is the number of threads of the shared pool.
+	 */
+	static int getProcessors()
+	{
+		return Runtime.getRuntime().availableProcessors();
+	}
+}
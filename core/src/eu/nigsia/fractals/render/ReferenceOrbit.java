@@ -0,0 +1,76 @@
+package eu.nigsia.fractals.render;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+
+/**
+ * 	This class calculates the orbit <i>Z_n</i> of a reference point with arbitrary precision ({@link BigDecimal}) and keeps it as doubles.
+ * 	Every other pixel only needs its (small) difference to this orbit, which fits in a double, see {@link PerturbationKernel}.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class ReferenceOrbit
+{
+	/**
+	 * 	Number of iterations between two checks of the {@link CancelToken}.
+	 */
+	private static final int CHECK_EVERY = 256;
+
+	/**
+	 * 	<i>Z_n</i> (in the Real axis), from <i>Z_0 = 0</i>.
+	 */
+	public final double[] re;
+	/**
+	 * 	<i>Z_n</i> (in the Complex axis), from <i>Z_0 = 0</i>.
+	 */
+	public final double[] im;
+	/**
+	 * 	Number of <i>Z_n</i> stored. It's maxIter + 1 when the reference doesn't escape, otherwise the last one is the first with <i>|Z_n| >= 2</i>.
+	 */
+	public final int length;
+	/**
+	 * 	Constant <i>c</i> (in the Real axis) of the reference, rounded to a double.
+	 */
+	public final double cRe;
+	/**
+	 * 	Constant <i>c</i> (in the Complex axis) of the reference, rounded to a double.
+	 */
+	public final double cIm;
+
+	/**
+	 * 	Calculates the orbit of c.
+	 *
+	 * @param cRe: Constant <i>c</i> (in the Real axis).
+	 * @param cIm: Constant <i>c</i> (in the Complex axis).
+	 * @param maxIter: Maximum number of iterations.
+	 * @param mc: Precision of every operation.
+	 * @param token: {@link CancelToken} checked every {@value #CHECK_EVERY} iterations. When it's cancelled the orbit is cut short.
+	 */
+	public ReferenceOrbit(BigDecimal cRe, BigDecimal cIm, int maxIter, MathContext mc, CancelToken token)
+	{
+		this.cRe = cRe.doubleValue();
+		this.cIm = cIm.doubleValue();
+		double[] re = new double[maxIter + 1];
+		double[] im = new double[maxIter + 1];
+
+		BigDecimal zx = BigDecimal.ZERO, zy = BigDecimal.ZERO, tmp;
+		int n = 0;
+		while(true)
+		{
+			double x = zx.doubleValue(), y = zy.doubleValue();
+			re[n] = x;
+			im[n] = y;
+			n++;
+			if(x * x + y * y >= 4.0 || n > maxIter)
+				break;
+			if(n % CHECK_EVERY == 0 && token.isCancelled())
+				break;
+			tmp = zx.multiply(zx, mc).subtract(zy.multiply(zy, mc), mc).add(cRe, mc);
+			zy = zx.multiply(zy, mc).multiply(BigDecimal.valueOf(2), mc).add(cIm, mc);
+			zx = tmp;
+		}
+		this.re = re;
+		this.im = im;
+		this.length = n;
+	}
+}
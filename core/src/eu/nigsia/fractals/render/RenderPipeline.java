@@ -0,0 +1,285 @@
+package eu.nigsia.fractals.render;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * 	This class calculates views on a background thread so the frame loop is never blocked.
+ * 	Every view is calculated progressively: first one pixel out of every {@value #COARSEST_BLOCK}x{@value #COARSEST_BLOCK} block, then the blocks are halved until every pixel is calculated.
+ * 	Every finished pass is published as a {@link Frame} that the GL thread picks up with {@link #poll()}.
+ * 	When a view is only a translation of the last finished one (panning), the known pixels are moved and only the newly exposed strips are calculated.
+ * 	When only maxIter changes, the orbits that didn't escape are continued (bigger maxIter) or nothing is calculated at all (smaller maxIter).
+ * 	A view whose every tile is in the {@link TileCache} of the engine is published at once, without the coarse passes.
+ * 	The pipeline can own the caches of the engine: they are opened on its thread (mapping and indexing the disk cache takes a while) and closed when it stops.
+ * 	A {@link DeepView} is calculated by a {@link DeepEngine} in a single pass.
+ * 	With supersampling on, every finished view is published again with extra samples of its edge pixels ({@link Supersamples}), within a budget of samples per view.
+ * 	In validation mode, every finished view calculated in single precision is calculated again with {@link Kernel#DOUBLE} and the differences are published as a {@link KernelDiff}.
+ * 	Requests are latest-wins: a new request replaces the one that is waiting and cancels the one being calculated, so no time is spent on views nobody will see.
+ * 	The passes themselves are calculated by a {@link PassRenderer}. The html version has no threads, so it replaces this class with one that calculates them in {@link #poll()}.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class RenderPipeline implements Runnable
+{
+	/**
+	 * 	Side of the blocks of the first pass in pixels.
+	 */
+	public static final int COARSEST_BLOCK = 8;
+	/**
+	 * 	File of the {@link DiskTileCache} of {@link #RenderPipeline(MandelbrotEngine, long, long)}, in the home of the user.
+	 */
+	public static final File CACHE_FILE = new File(System.getProperty("user.home"), ".fractals" + File.separator + "tiles.cache");
+
+	/**
+	 * 	Engine that calculates every pass.
+	 */
+	private final MandelbrotEngine engine;
+	/**
+	 * 	Background thread that calculates the requested views.
+	 */
+	private final Thread thread;
+	/**
+	 * 	File of the {@link DiskTileCache} opened by {@link #thread}, or null for none.
+	 */
+	private final File cacheFile;
+	/**
+	 * 	Size of the {@link DiskTileCache} and of the {@link MemoryTileCache} in front of it. A memory cache of 0 bytes means that the engine's cache isn't touched.
+	 */
+	private final long cacheBytes, memoryCacheBytes;
+
+	/**
+	 * 	Last requested {@link View} or {@link DeepView} that hasn't been started yet. Guarded by this.
+	 */
+	private Object pending;
+	/**
+	 * 	Token of the view being calculated. Guarded by this.
+	 */
+	private CancelToken current;
+	/**
+	 * 	Passes of the requested views. Only {@link #thread} calculates them.
+	 */
+	private final PassRenderer passes;
+
+	/**
+	 * 	Creates a pipeline and starts its thread. Deep views are calculated by a new {@link DeepEngine}.
+	 * @param engine: The {@link MandelbrotEngine} that calculates every pass.
+	 */
+	public RenderPipeline(MandelbrotEngine engine)
+	{
+		this(engine, new DeepEngine());
+	}
+
+	/**
+	 * 	Creates a pipeline and starts its thread.
+	 * @param engine: The {@link MandelbrotEngine} that calculates every pass.
+	 * @param deepEngine: The {@link DeepEngine} that calculates the deep views.
+	 */
+	public RenderPipeline(MandelbrotEngine engine, DeepEngine deepEngine)
+	{
+		this(engine, deepEngine, null, 0, 0);
+	}
+
+	/**
+	 * 	Creates a pipeline that owns the caches of engine, with the {@link DiskTileCache} in {@link #CACHE_FILE}, and starts its thread. Deep views are calculated by a new {@link DeepEngine}.
+	 * @param engine: The {@link MandelbrotEngine} that calculates every pass.
+	 * @param cacheBytes: Size of the {@link DiskTileCache}.
+	 * @param memoryCacheBytes: Size of the {@link MemoryTileCache} in front of it.
+	 */
+	public RenderPipeline(MandelbrotEngine engine, long cacheBytes, long memoryCacheBytes)
+	{
+		this(engine, CACHE_FILE, cacheBytes, memoryCacheBytes);
+	}
+
+	/**
+	 * 	Creates a pipeline that owns the caches of engine, and starts its thread. Deep views are calculated by a new {@link DeepEngine}.
+	 * 	The caches are opened by the thread before the first view, and closed when it stops. Until then, the engine shouldn't be used by anyone else.
+	 * @param engine: The {@link MandelbrotEngine} that calculates every pass.
+	 * @param cacheFile: File of the {@link DiskTileCache}, or null to only cache in memory. If it can't be opened (another instance has it, for example), the tiles are only cached in memory.
+	 * @param cacheBytes: Size of the {@link DiskTileCache}.
+	 * @param memoryCacheBytes: Size of the {@link MemoryTileCache} in front of it.
+	 */
+	public RenderPipeline(MandelbrotEngine engine, File cacheFile, long cacheBytes, long memoryCacheBytes)
+	{
+		this(engine, new DeepEngine(), cacheFile, cacheBytes, memoryCacheBytes);
+	}
+
+	private RenderPipeline(MandelbrotEngine engine, DeepEngine deepEngine, File cacheFile, long cacheBytes, long memoryCacheBytes)
+	{
+		this.engine = engine;
+		this.passes = new PassRenderer(engine, deepEngine);
+		this.cacheFile = cacheFile;
+		this.cacheBytes = cacheBytes;
+		this.memoryCacheBytes = memoryCacheBytes;
+		thread = new Thread(this, "Fractal renderer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * 	Asks for view to be calculated. It returns immediately. If the pipeline is busy with an older view, it's cancelled and the pipeline moves to this one as soon as the current rows finish.
+	 * @param view: The {@link View} to calculate.
+	 */
+	public synchronized void request(View view)
+	{
+		pending = view;
+		if(current != null)
+			current.cancel();
+		notifyAll();
+	}
+
+	/**
+	 * 	Asks for a deep view to be calculated. It replaces any other request, like {@link #request(View)}.
+	 * @param view: The {@link DeepView} to calculate.
+	 */
+	public synchronized void request(DeepView view)
+	{
+		pending = view;
+		if(current != null)
+			current.cancel();
+		notifyAll();
+	}
+
+	/**
+	 * 	Gets the last finished pass. This is meant to be called from the GL thread every frame.
+	 * @return The last finished {@link Frame}, or null if there is no new one since the last call.
+	 */
+	public Frame poll()
+	{
+		return passes.poll();
+	}
+
+	/**
+	 * 	Gets the last validation. This is meant to be called from the GL thread every frame.
+	 * @return The {@link KernelDiff} of the last validated view, or null if there is no new one since the last call.
+	 */
+	public KernelDiff pollValidation()
+	{
+		return passes.pollValidation();
+	}
+
+	/**
+	 * 	Returns whether the views calculated in single precision are validated.
+	 */
+	public boolean isValidating(){	return passes.isValidating();	}
+	/**
+	 * 	Sets whether every finished view calculated in single precision is calculated again with {@link Kernel#DOUBLE} and compared. It doubles the cost of those views.
+	 */
+	public void setValidating(boolean validating){	passes.setValidating(validating);	}
+
+	/**
+	 * 	Gets the maximum number of extra samples of every finished view. 0 means that supersampling is off.
+	 */
+	public int getSampleBudget(){	return passes.getSampleBudget();	}
+	/**
+	 * 	Sets the supersampling of the finished views. It's used from the next view on.
+	 * @param budget: Maximum number of extra samples of every view, or 0 to turn it off. A budget equal to the pixels of the view costs at most as much as the view.
+	 * @param threshold: Smallest difference of iterations between neighbours that is supersampled.
+	 */
+	public void setSupersampling(int budget, float threshold)
+	{
+		passes.setSupersampling(budget, threshold);
+	}
+
+	/**
+	 * 	Stops the background thread: the view being calculated is cancelled, and the caches it owns are closed. The pipeline can't be used after this.
+	 * 	It waits for the thread to finish, so the {@link DiskTileCache} is already closed (and its lock released) when it returns, and a new pipeline can open it at once.
+	 */
+	public void shutdown()
+	{
+		synchronized(this)
+		{
+			if(current != null)
+				current.cancel();
+		}
+		thread.interrupt();
+		try
+		{
+			thread.join();
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 	Opens the {@link DiskTileCache} of {@link #cacheFile}, if any.
+	 * @return The cache, or null if there is none or it can't be opened.
+	 */
+	private DiskTileCache openCache()
+	{
+		if(cacheFile == null)
+			return null;
+		try
+		{
+			return new DiskTileCache(cacheFile, cacheBytes);
+		}
+		catch(IOException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * 	Waits for the next requested view and creates a new {@link #current} token for it.
+	 */
+	private synchronized Object take() throws InterruptedException
+	{
+		while(pending == null)
+			wait();
+		Object view = pending;
+		pending = null;
+		current = new CancelToken();
+		return view;
+	}
+
+	/**
+	 * 	Gets the token of the view being calculated.
+	 */
+	private synchronized CancelToken getCurrent()
+	{
+		return current;
+	}
+
+	/**
+	 * 	Background loop. Calculates every pass of the requested views and publishes them.
+	 */
+	@Override
+	public void run()
+	{
+		DiskTileCache disk = null;
+		TileCache cache = null;
+		if(memoryCacheBytes > 0)
+		{
+			disk = openCache();
+			cache = new MemoryTileCache(memoryCacheBytes, disk);
+			engine.setCache(cache);
+		}
+		try
+		{
+			while(!Thread.currentThread().isInterrupted())
+			{
+				Object next = take();
+				passes.render(next, getCurrent());
+			}
+		}
+		catch(InterruptedException e)
+		{
+			// Shutdown
+		}
+		finally
+		{
+			if(cache != null && engine.getCache() == cache)
+				engine.setCache(null);
+			if(disk != null)
+				try
+				{
+					disk.close();
+				}
+				catch(IOException e)
+				{
+					// The tiles that weren't written are lost
+				}
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	Calculates a run of consecutive pixels of one row of a {@link View}.
+ * 	{@link MandelbrotEngine} calculates every full row through one of these, so a vectorized kernel can take a whole batch of pixels at once.
+ * 	Every implementation must store exactly what {@link MandelbrotKernel#iterate(double, double, int, IterationBuffer, int)} stores for each pixel.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public interface RowKernel
+{
+	/**
+	 * 	Calculates the pixels (x, y) to (x + count - 1, y) of view and stores them.
+	 *
+	 * @param view: The {@link View} to calculate.
+	 * @param y: Pixel row.
+	 * @param x: First pixel column.
+	 * @param count: Number of pixels.
+	 * @param out: {@link IterationBuffer} of the same size as the view, where the result is stored.
+	 */
+	public void iterate(View view, int y, int x, int count, IterationBuffer out);
+}
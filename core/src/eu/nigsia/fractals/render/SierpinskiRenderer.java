@@ -0,0 +1,143 @@
+package eu.nigsia.fractals.render;
+
+import java.util.Arrays;
+
+import eu.nigsia.fractals.math.geom.Point;
+import eu.nigsia.fractals.math.geom.Rectangle;
+import eu.nigsia.fractals.math.geom.Triangle;
+
+/**
+ * 	This class draws Sierpinski's triangle without random numbers: the {@link Triangle} is divided recursively in its 3 corner triangles until they are smaller than a pixel,
+ * 	and the pixels of their vertices (which are points of the fractal) are drawn. The same view always gives the same image, at any zoom.
+ * 	Every sub-triangle outside the visible {@link Rectangle} is culled with all its children, so the work only depends on the visible pixels:
+ * 	at most a few sub-triangles per drawn pixel, plus one per level between the whole triangle and the zoom.
+ * 	The triangle is given in world coordinates (the pixels of the image without zoom, like the ones of {@link ChaosGame}); a view is its center in world coordinates and a zoom.
+ * 	It isn't thread safe.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class SierpinskiRenderer
+{
+	/**
+	 * 	Biggest zoom. Past it, the pixel coordinates of the whole triangle lose the precision of a pixel in a double.
+	 */
+	public static final double MAX_ZOOM = 1L << 40;
+	/**
+	 * 	Smallest zoom. The triangle of the window is a few pixels wide at it (4 pixels in a 500 pixel window), and zooming out further would only take it to 0.
+	 */
+	public static final double MIN_ZOOM = 1.0 / 128;
+	/**
+	 * 	Sub-triangles whose bounding box is not bigger than this (in pixels) aren't divided again.
+	 */
+	private static final double LEAF = 1;
+
+	/**
+	 * 	Vertices of the triangle in world coordinates.
+	 */
+	private final double px, py, qx, qy, rx, ry;
+
+	/**
+	 * 	Visible pixels of the current {@link #render(double, double, double, Rectangle, int[], int, int, int)}: from (minX, minY) to (maxX, maxY) excluded.
+	 */
+	private int minX, minY, maxX, maxY;
+	/**
+	 * 	Colors and width of the image of the current render.
+	 */
+	private int[] colors;
+	private int width;
+	/**
+	 * 	Color of the fractal in the current render.
+	 */
+	private int color;
+
+	/**
+	 * 	Creates a renderer of the following triangle:
+	 *
+	 * @param triangle: {@link Triangle} in world coordinates.
+	 */
+	public SierpinskiRenderer(Triangle triangle)
+	{
+		px = triangle.getP().x;
+		py = triangle.getP().y;
+		qx = triangle.getQ().x;
+		qy = triangle.getQ().y;
+		rx = triangle.getR().x;
+		ry = triangle.getR().y;
+	}
+
+	/**
+	 * 	Creates the renderer of the triangle of {@link ChaosGame#sierpinski(int, int)}: top vertex in the middle of the first row and the other two at the bottom corners.
+	 * @param width: Width of the image without zoom.
+	 * @param height: Height of the image without zoom.
+	 */
+	public static SierpinskiRenderer sierpinski(int width, int height)
+	{
+		return new SierpinskiRenderer(new Triangle(new Point(width/2, 0), new Point(width, height), new Point(0, height)));
+	}
+
+	/**
+	 * 	Draws a view of the triangle. The visible pixels are cleared (transparent) and the ones of the fractal are set to color.
+	 *
+	 * @param centerX: World coordinate (horizontal) shown at the center of the image.
+	 * @param centerY: World coordinate (vertical) shown at the center of the image.
+	 * @param zoom: Pixels per world unit. It's clamped between {@link #MIN_ZOOM} and {@link #MAX_ZOOM}.
+	 * @param visible: {@link Rectangle} of the pixels to draw. The rest of colors isn't changed.
+	 * @param colors: RGBA8888 colors of the image. The pixel (x, y) is at x + y*width.
+	 * @param width: Width of the image.
+	 * @param height: Height of the image.
+	 * @param color: RGBA8888 color of the fractal.
+	 * @return The number of sub-triangles visited.
+	 */
+	public int render(double centerX, double centerY, double zoom, Rectangle visible, int[] colors, int width, int height, int color)
+	{
+		zoom = Math.max(MIN_ZOOM, Math.min(zoom, MAX_ZOOM));
+		minX = Math.max(visible.x, 0);
+		minY = Math.max(visible.y, 0);
+		maxX = Math.min(visible.x + visible.width, width);
+		maxY = Math.min(visible.y + visible.height, height);
+		this.colors = colors;
+		this.width = width;
+		this.color = color;
+		for (int y = minY; y < maxY; y++)
+			Arrays.fill(colors, minX + y * width, maxX + y * width, 0);
+
+		// Pixel coordinates of the vertices
+		double ox = width / 2 - centerX * zoom, oy = height / 2 - centerY * zoom;
+		int visited = divide(ox + px * zoom, oy + py * zoom, ox + qx * zoom, oy + qy * zoom, ox + rx * zoom, oy + ry * zoom);
+		this.colors = null;
+		return visited;
+	}
+
+	/**
+	 * 	Draws the sub-triangle with vertices a, b and c (in pixels), or divides it in the 3 corner triangles if it's bigger than {@link #LEAF}.
+	 * @return The number of sub-triangles visited.
+	 */
+	private int divide(double ax, double ay, double bx, double by, double cx, double cy)
+	{
+		double left = Math.min(ax, Math.min(bx, cx)), right = Math.max(ax, Math.max(bx, cx));
+		double top = Math.min(ay, Math.min(by, cy)), bottom = Math.max(ay, Math.max(by, cy));
+		if(right < minX || left >= maxX || bottom < minY || top >= maxY)
+			return 1;
+		if(right - left <= LEAF && bottom - top <= LEAF)
+		{
+			draw(ax, ay);
+			draw(bx, by);
+			draw(cx, cy);
+			return 1;
+		}
+		double abx = (ax + bx) / 2, aby = (ay + by) / 2;
+		double bcx = (bx + cx) / 2, bcy = (by + cy) / 2;
+		double cax = (cx + ax) / 2, cay = (cy + ay) / 2;
+		return 1 + divide(ax, ay, abx, aby, cax, cay) + divide(abx, aby, bx, by, bcx, bcy) + divide(cax, cay, bcx, bcy, cx, cy);
+	}
+
+	/**
+	 * 	Draws the pixel that contains the point (x, y), if it's visible.
+	 */
+	private void draw(double x, double y)
+	{
+		int ix = (int)Math.floor(x), iy = (int)Math.floor(y);
+		if(ix >= minX && ix < maxX && iy >= minY && iy < maxY)
+			colors[ix + iy * width] = color;
+	}
+}
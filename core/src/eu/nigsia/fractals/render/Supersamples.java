@@ -0,0 +1,226 @@
+package eu.nigsia.fractals.render;
+
+import java.util.Arrays;
+
+/**
+ * 	This class holds the extra samples of the edge pixels of a view, calculated by {@link MandelbrotEngine#supersample(View, IterationBuffer, float, int, CancelToken)}.
+ * 	Only the pixels whose smooth iteration count differs from a neighbour's by more than a threshold (or that touch the set) are refined, so flat regions and the interior keep one sample.
+ * 	It's adaptive: every edge pixel first gets {@value #FIRST} samples in a rotated grid, and the ones whose samples still differ get the rest of a 4x4 grid.
+ * 	A pixel is the average of the colors of its center and its samples, so the palette can still change without calculating anything.
+ * 	It's never modified after being created, so it can be read from the GL thread.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class Supersamples
+{
+	/**
+	 * 	Samples of the first level and of the second one, per pixel.
+	 */
+	static final int FIRST = 4, SECOND = 12;
+	/**
+	 * 	Offsets of the samples of the first level from the center of the pixel, in pixels: a rotated grid, 4 cells of a 4x4 grid.
+	 */
+	static final double[] FIRST_X = { -0.375, 0.125, 0.375, -0.125 }, FIRST_Y = { -0.125, -0.375, 0.125, 0.375 };
+	/**
+	 * 	Offsets of the samples of the second level: the other 12 cells of the 4x4 grid.
+	 */
+	static final double[] SECOND_X = { -0.125, 0.125, 0.375, -0.375, -0.125, 0.125, -0.375, 0.125, 0.375, -0.375, -0.125, 0.375 };
+	static final double[] SECOND_Y = { -0.375, -0.375, -0.375, -0.125, -0.125, -0.125, 0.125, 0.125, 0.125, 0.375, 0.375, 0.375 };
+
+	/**
+	 * 	Index of every refined pixel in the view.
+	 */
+	public final int[] pixels;
+	/**
+	 * 	The samples of pixel k are the ones from offsets[k] to offsets[k + 1] in {@link #samples}.
+	 */
+	private final int[] offsets;
+	/**
+	 * 	Result of every sample, one after the other, as a single row without orbits.
+	 */
+	public final IterationBuffer samples;
+
+	/**
+	 * 	Joins both levels of samples.
+	 *
+	 * @param edges: Pixels of the first level.
+	 * @param first: {@value #FIRST} samples of every pixel of edges.
+	 * @param uneven: Positions in edges of the pixels of the second level, in increasing order.
+	 * @param second: {@value #SECOND} samples of every pixel of uneven.
+	 */
+	Supersamples(int[] edges, IterationBuffer first, int[] uneven, IterationBuffer second)
+	{
+		pixels = edges;
+		offsets = new int[edges.length + 1];
+		samples = new IterationBuffer(first.size() + second.size(), 1, false);
+		for (int k = 0, u = 0, n = 0; k < edges.length; k++)
+		{
+			offsets[k] = n;
+			samples.copy(first, k * FIRST, n, FIRST);
+			n += FIRST;
+			if(u < uneven.length && uneven[u] == k)
+			{
+				samples.copy(second, u * SECOND, n, SECOND);
+				n += SECOND;
+				u++;
+			}
+			offsets[k + 1] = n;
+		}
+	}
+
+	/**
+	 * 	Gets the number of extra samples.
+	 */
+	public int size(){	return samples.size();	}
+
+	/**
+	 * 	Replaces the color of every refined pixel by the average of its samples.
+	 *
+	 * @param palette: {@link Palette} colors was made with.
+	 * @param maxIter: Maximum number of iterations of the view.
+	 * @param colors: RGBA8888 colors of every pixel of the view, colored by palette.
+	 */
+	public void resolve(Palette palette, int maxIter, int[] colors)
+	{
+		int[] sampleColors = new int[samples.size()];
+		palette.color(samples, maxIter, sampleColors);
+		for (int k = 0; k < pixels.length; k++)
+		{
+			int c = colors[pixels[k]];
+			int r = c >>> 24, g = c >>> 16 & 0xff, b = c >>> 8 & 0xff, a = c & 0xff;
+			for (int s = offsets[k]; s < offsets[k + 1]; s++)
+			{
+				c = sampleColors[s];
+				r += c >>> 24;
+				g += c >>> 16 & 0xff;
+				b += c >>> 8 & 0xff;
+				a += c & 0xff;
+			}
+			int n = offsets[k + 1] - offsets[k] + 1;
+			colors[pixels[k]] = (r + n / 2) / n << 24 | (g + n / 2) / n << 16 | (b + n / 2) / n << 8 | (a + n / 2) / n;
+		}
+	}
+
+	/**
+	 * 	Finds the edge pixels of a view: the ones whose smooth iteration count differs from one of their 4 neighbours by more than threshold,
+	 * 	or that didn't escape next to one that did. Pixels that didn't escape are only edges next to an escaped one.
+	 *
+	 * @param buffer: Every pixel of the view.
+	 * @param maxIter: Maximum number of iterations of the view.
+	 * @param threshold: Smallest difference of iterations that is an edge.
+	 * @param limit: Maximum number of pixels. When there are more, the ones with the biggest differences are kept.
+	 * @return The index of every edge pixel, in increasing order.
+	 */
+	static int[] findEdges(IterationBuffer buffer, int maxIter, float threshold, int limit)
+	{
+		if(limit <= 0)
+			return new int[0];
+		int w = buffer.width, h = buffer.height;
+		// Difference in the high half (positive floats sort like their bits) and index in the low one
+		long[] edges = new long[64];
+		int count = 0;
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++)
+			{
+				int i = x + y * w;
+				float d = 0;
+				if(x > 0)
+					d = Math.max(d, difference(buffer, i, i - 1, maxIter));
+				if(x < w - 1)
+					d = Math.max(d, difference(buffer, i, i + 1, maxIter));
+				if(y > 0)
+					d = Math.max(d, difference(buffer, i, i - w, maxIter));
+				if(y < h - 1)
+					d = Math.max(d, difference(buffer, i, i + w, maxIter));
+				if(d <= threshold)
+					continue;
+				if(count == edges.length)
+					edges = grow(edges);
+				edges[count++] = (long)Float.floatToIntBits(d) << 32 | i;
+			}
+		return strongest(edges, count, limit);
+	}
+
+	/**
+	 * 	Finds the edge pixels whose first level of samples (and center) still differ by more than threshold.
+	 *
+	 * @param buffer: Every pixel of the view.
+	 * @param edges: Pixels of the first level.
+	 * @param first: {@value #FIRST} samples of every pixel of edges.
+	 * @param maxIter: Maximum number of iterations of the view.
+	 * @param threshold: Smallest difference of iterations that is an edge.
+	 * @param limit: Maximum number of pixels. When there are more, the ones with the biggest differences are kept.
+	 * @return Positions in edges of the pixels, in increasing order.
+	 */
+	static int[] findUneven(IterationBuffer buffer, int[] edges, IterationBuffer first, int maxIter, float threshold, int limit)
+	{
+		if(limit <= 0)
+			return new int[0];
+		long[] uneven = new long[64];
+		int count = 0;
+		for (int k = 0; k < edges.length; k++)
+		{
+			float min = value(buffer, edges[k], maxIter), max = min;
+			for (int s = k * FIRST; s < (k + 1) * FIRST; s++)
+			{
+				float v = value(first, s, maxIter);
+				min = Math.min(min, v);
+				max = Math.max(max, v);
+			}
+			float d = max - min;
+			if(d <= threshold)
+				continue;
+			if(count == uneven.length)
+				uneven = grow(uneven);
+			uneven[count++] = (long)Float.floatToIntBits(d) << 32 | k;
+		}
+		return strongest(uneven, count, limit);
+	}
+
+	/**
+	 * 	Copies keys into an array twice as long. It's Arrays.copyOf, which the html version doesn't have.
+	 */
+	private static long[] grow(long[] keys)
+	{
+		long[] grown = new long[keys.length * 2];
+		System.arraycopy(keys, 0, grown, 0, keys.length);
+		return grown;
+	}
+
+	/**
+	 * 	Gets the indices (low half) of the limit keys with the biggest differences (high half), in increasing order of index.
+	 */
+	private static int[] strongest(long[] keys, int count, int limit)
+	{
+		int from = 0;
+		if(count > limit)
+		{
+			Arrays.sort(keys, 0, count);
+			from = count - limit;
+		}
+		int[] indices = new int[count - from];
+		for (int k = from; k < count; k++)
+			indices[k - from] = (int)keys[k];
+		Arrays.sort(indices);
+		return indices;
+	}
+
+	/**
+	 * 	Gets the difference between two pixels: the difference of their smooth iteration counts, or infinity if only one of them escaped.
+	 */
+	private static float difference(IterationBuffer buffer, int i, int j, int maxIter)
+	{
+		boolean inI = buffer.iterations[i] >= maxIter, inJ = buffer.iterations[j] >= maxIter;
+		if(inI || inJ)
+			return inI == inJ ? 0 : Float.POSITIVE_INFINITY;
+		return Math.abs(buffer.smooth[i] - buffer.smooth[j]);
+	}
+
+	/**
+	 * 	Gets the smooth iteration count of a pixel, or a huge value if it didn't escape, so it's always far from every escaped pixel.
+	 */
+	private static float value(IterationBuffer buffer, int i, int maxIter)
+	{
+		return buffer.iterations[i] >= maxIter ? Float.MAX_VALUE : buffer.smooth[i];
+	}
+}
@@ -0,0 +1,70 @@
+package eu.nigsia.fractals.render;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 	Cache of calculated tiles, so a view that was already seen is copied instead of calculated again.
+ * 	A tile holds the result of every one of its pixels (iterations, smooth iteration count and orbit), exactly as the engine stored it in the {@link IterationBuffer}.
+ * 	Implementations must be thread safe: the tiles of a view are loaded and stored from every thread of the engine at once.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public abstract class TileCache
+{
+	/**
+	 * 	Number of tiles found and not found.
+	 */
+	private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong();
+
+	/**
+	 * 	Copies a tile into out, if it's in the cache.
+	 *
+	 * @param key: {@link TileKey} of the tile. Its pixels are the ones written in out.
+	 * @param out: {@link IterationBuffer} of the whole view.
+	 * @return True if it was found, false if out wasn't touched.
+	 */
+	public boolean load(TileKey key, IterationBuffer out)
+	{
+		boolean found = read(key, out);
+		(found ? hits : misses).incrementAndGet();
+		return found;
+	}
+
+	/**
+	 * 	Stores a tile. It may evict other tiles to make room for it.
+	 *
+	 * @param key: {@link TileKey} of the tile. Its pixels are the ones read from src.
+	 * @param src: {@link IterationBuffer} of the whole view. If it doesn't keep the orbits, they are stored as unknown (NaN).
+	 */
+	public abstract void store(TileKey key, IterationBuffer src);
+
+	/**
+	 * 	Copies a tile into out, without counting it in the statistics.
+	 * @return True if it was found.
+	 */
+	protected abstract boolean read(TileKey key, IterationBuffer out);
+
+	/**
+	 * 	Gets the number of tiles found since the cache was created.
+	 */
+	public long getHits(){	return hits.get();	}
+	/**
+	 * 	Gets the number of tiles not found since the cache was created.
+	 */
+	public long getMisses(){	return misses.get();	}
+	/**
+	 * 	Gets the fraction of the loads that were found, from 0 to 1.
+	 */
+	public double getHitRatio()
+	{
+		long h = hits.get(), total = h + misses.get();
+		return total == 0 ? 0 : (double)h / total;
+	}
+
+	@Override
+	public String toString()
+	{
+		// No String.format: the html version doesn't have it
+		return getClass().getSimpleName() + "[hits=" + getHits() + ", misses=" + getMisses() + ", ratio=" + Math.round(1000 * getHitRatio()) / 10.0 + "%]";
+	}
+}
@@ -0,0 +1,113 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	This class identifies a tile of a {@link View} in a {@link TileCache}: everything its result depends on, and nothing else.
+ * 	The size of the window is not part of it, so the same tile is found from any view with the same center, zoom and maxIter.
+ * 	The {@link #VERSION} of the results is part of it too, so the tiles calculated before a kernel changed its results are never found again.
+ * 	It's immutable.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class TileKey
+{
+	/**
+	 * 	Version of the results of the kernels. It's increased every time a kernel changes its results, and the older tiles are then left to be evicted.
+	 * 	Version 2 is the single precision kernel that falls back to doubles when it can't be exact.
+	 */
+	public static final int VERSION = 2;
+
+	/**
+	 * 	Fractal of the tile.
+	 */
+	public final String fractal;
+	/**
+	 * 	Center of the view, as in {@link View}.
+	 */
+	public final int centerX, centerY;
+	/**
+	 * 	Pixels per unit of the view. The distance between pixels is its inverse.
+	 */
+	public final double zoom;
+	/**
+	 * 	Maximum number of iterations.
+	 */
+	public final int maxIter;
+	/**
+	 * 	{@link Kernel} it was calculated with. The vectorized kernels are meant to give the same results as the plain ones, but they don't share their tiles, so a bug in one can't leak into the other.
+	 */
+	public final Kernel kernel;
+	/**
+	 * 	Whether it was calculated with Mariani-Silver subdivision, which changes the smooth iteration count of the filled pixels.
+	 */
+	public final boolean subdivided;
+	/**
+	 * 	Pixels of the tile in the view. (x, y) is its first pixel.
+	 */
+	public final int x, y, width, height;
+
+	/**
+	 * 	Creates the key of a tile of view.
+	 *
+	 * @param fractal: Name of the fractal.
+	 * @param view: The {@link View} the tile belongs to.
+	 * @param kernel: {@link Kernel} it's calculated with.
+	 * @param subdivided: Whether it's calculated with Mariani-Silver subdivision.
+	 * @param x: First pixel column.
+	 * @param y: First pixel row.
+	 * @param width: Width in pixels.
+	 * @param height: Height in pixels.
+	 */
+	public TileKey(String fractal, View view, Kernel kernel, boolean subdivided, int x, int y, int width, int height)
+	{
+		this.fractal = fractal;
+		this.centerX = view.centerX;
+		this.centerY = view.centerY;
+		this.zoom = view.zoom;
+		this.maxIter = view.maxIter;
+		this.kernel = kernel;
+		this.subdivided = subdivided;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * 	Gets the number of pixels of the tile.
+	 */
+	public int size(){	return width * height;	}
+
+	@Override
+	public boolean equals(Object o)
+	{
+		if(!(o instanceof TileKey))
+			return false;
+		TileKey k = (TileKey)o;
+		return fractal.equals(k.fractal) && centerX == k.centerX && centerY == k.centerY && Double.compare(zoom, k.zoom) == 0 && maxIter == k.maxIter
+				&& kernel == k.kernel && subdivided == k.subdivided && x == k.x && y == k.y && width == k.width && height == k.height;
+	}
+
+	@Override
+	public int hashCode()
+	{
+		long bits = Double.doubleToLongBits(zoom);
+		int h = fractal.hashCode();
+		h = 31 * h + centerX;
+		h = 31 * h + centerY;
+		h = 31 * h + (int)(bits ^ bits >>> 32);
+		h = 31 * h + maxIter;
+		h = 31 * h + kernel.ordinal() * 2 + (subdivided ? 1 : 0);
+		h = 31 * h + x;
+		h = 31 * h + y;
+		h = 31 * h + width;
+		return 31 * h + height;
+	}
+
+	@Override
+	public String toString()
+	{
+		// Zoom as its exact bits, so two keys are the same text only if they are equal
+		return "v" + VERSION + "/" + fractal + "/" + centerX + "," + centerY + "/" + Long.toHexString(Double.doubleToLongBits(zoom)) + "/" + maxIter + "/" + kernel.name()
+				+ (subdivided ? "/subdivided" : "") + "/" + x + "," + y + "," + width + "x" + height;
+	}
+}
@@ -0,0 +1,96 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	This class represents the region of the Mandelbrot set that has to be calculated and the size of the image where it's drawn.
+ * 	It's immutable, so the same instance can be shared between every thread that calculates a part of it.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class View
+{
+	/**
+	 * 	Indicates the center X value of the fractal. Note: this is not a "world" coordinate but a custom coordinate on the fractal.
+	 */
+	public final int centerX;
+	/**
+	 * 	Indicates the center Y value of the fractal. Note: this is not a "world" coordinate but a custom coordinate on the fractal.
+	 */
+	public final int centerY;
+	/**
+	 * 	Number of pixels per unit of the complex plane.
+	 */
+	public final double zoom;
+	/**
+	 * 	Number of iterations per pixel.
+	 */
+	public final int maxIter;
+	/**
+	 * 	Width of the image in pixels.
+	 */
+	public final int width;
+	/**
+	 * 	Height of the image in pixels.
+	 */
+	public final int height;
+
+	/**
+	 * 	Creates a new view with the following parameters:
+	 *
+	 * @param centerX: Center X value of the fractal.
+	 * @param centerY: Center Y value of the fractal.
+	 * @param zoom: Number of pixels per unit of the complex plane.
+	 * @param maxIter: Number of iterations per pixel.
+	 * @param width: Width of the image in pixels.
+	 * @param height: Height of the image in pixels.
+	 */
+	public View(int centerX, int centerY, double zoom, int maxIter, int width, int height)
+	{
+		this.centerX = centerX;
+		this.centerY = centerY;
+		this.zoom = zoom;
+		this.maxIter = maxIter;
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * 	Gets the constant <i>c</i> (in the Real axis) for the pixel column x.
+	 * @param x: Pixel column.
+	 */
+	public double re(int x){	return (x - centerX) / zoom;	}
+	/**
+	 * 	Gets the constant <i>c</i> (in the Complex axis) for the pixel row y.
+	 * @param y: Pixel row.
+	 */
+	public double im(int y){	return (y - centerY) / zoom;	}
+
+	/**
+	 * 	Returns whether v shows the same pixels as this view, only moved. That happens when both have the same zoom, iterations and size.
+	 * 	Then the pixel (x, y) of this view is the pixel (x - dx, y - dy) of v, where dx = centerX - v.centerX and dy = centerY - v.centerY.
+	 * @param v: The {@link View} to compare with.
+	 */
+	public boolean isTranslationOf(View v)
+	{
+		return v.zoom == zoom && v.maxIter == maxIter && v.width == width && v.height == height;
+	}
+
+	/**
+	 * 	Returns whether v shows exactly the same region as this view, maybe with a different number of iterations.
+	 * @param v: The {@link View} to compare with.
+	 */
+	public boolean isSameRegion(View v)
+	{
+		return v.centerX == centerX && v.centerY == centerY && v.zoom == zoom && v.width == width && v.height == height;
+	}
+
+	/**
+	 * 	Gets the number of pixels of the image.
+	 */
+	public int size(){	return width * height;	}
+
+	@Override
+	public String toString()
+	{
+		return "View[center=(" + centerX + ", " + centerY + "), zoom=" + zoom + ", maxIter=" + maxIter + ", " + width + "x" + height + "]";
+	}
+}
@@ -7,6 +7,8 @@ import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
 
 import eu.nigsia.fractals.Main;
+import eu.nigsia.fractals.util.PixelSink;
+import eu.nigsia.fractals.util.SurfacePool;
 
 /**
  * 	This abstract class should be implemented by every fractal.
@@ -16,23 +18,70 @@ import eu.nigsia.fractals.Main;
 public abstract class FractalState extends State
 {
 	/**
-	 * 	This {@link Pixmap} is used to draw pixels while the fractal is being calculated. When the fractal is complete, we should create a new {@code #fractal} from this pixmap.
+	 * 	Pixmaps and textures where the fractal is drawn. They are created the first time they are needed and disposed by {@link #dispose()}.
 	 */
-	protected Pixmap pixmap;
+	private SurfacePool surfaces;
 	/**
-	 * 	This {@link TextureRegion} is used to render the fractal once it's calculated.
+	 * 	Format of the pixmaps in {@link #surfaces}.
+	 */
+	private final Pixmap.Format format;
+	/**
+	 * 	This {@link TextureRegion} is used to render the fractal once it's calculated. It's the front buffer of {@link #surfaces}.
 	 */
 	protected TextureRegion fractal;
 	
 	/**
-	 * 	Default constructor for every fractal. It initializes the {@link #pixmap} with format {@value Pixmap.Format.RGBA4444}.
+	 * 	Default constructor for every fractal. Its pixmaps have format {@value Pixmap.Format.RGBA4444}.
 	 * 
 	 * @param sm: The {@link StateManager} instance created in the {@link Main} class.
  	 */
 	public FractalState(StateManager sm)
+	{
+		this(sm, Pixmap.Format.RGBA4444);
+	}
+	
+	/**
+	 * 	Constructor for fractals that need a different pixel format.
+	 * 
+	 * @param sm: The {@link StateManager} instance created in the {@link Main} class.
+	 * @param format: {@link Pixmap.Format#RGBA4444} or {@link Pixmap.Format#RGBA8888}.
+ 	 */
+	public FractalState(StateManager sm, Pixmap.Format format)
 	{
 		super(sm);
-		pixmap = new Pixmap(getWidth(), getHeight(), Pixmap.Format.RGBA4444);
+		this.format = format;
+	}
+	
+	/**
+	 * 	Gets the {@link PixelSink} of the back {@link Pixmap}. Everything written to it is shown after the next {@link #present()}.
+	 * 	Note that the back pixmap still holds the image of two presents ago.
+	 */
+	protected PixelSink getSink()
+	{
+		if(surfaces == null)
+			surfaces = new SurfacePool(getWidth(), getHeight(), format);
+		return surfaces.getSink();
+	}
+	
+	/**
+	 * 	Uploads the back {@link Pixmap} in place and sets it as the {@link #fractal} to render. It must be called from the GL thread.
+	 */
+	protected void present()
+	{
+		getSink();
+		fractal = surfaces.swap();
+	}
+	
+	/**
+	 * 	Disposes the pixmaps and textures of this fractal. They are created again if it's calculated again.
+	 */
+	@Override
+	public void dispose()
+	{
+		if(surfaces != null)
+			surfaces.dispose();
+		surfaces = null;
+		fractal = null;
 	}
 	
 	/**
@@ -49,13 +98,16 @@ public abstract class FractalState extends State
 	}
 	
 	/**
-	 * 	Sets backspace as a "return to menu" key.
+	 * 	Sets backspace as a "return to menu" key. This state is removed (and disposed) and the menu under it gets the input again.
+	 * 	Nothing else is done with the key, since this state is already disposed.
 	 */
 	@Override
 	public boolean keyDown(int keycode) {
 		if(keycode == Keys.BACKSPACE)
 		{
-			sm.push(new MenuState(sm));
+			sm.pop();
+			Gdx.input.setInputProcessor(sm.peek());
+			return true;
 		}
 		return super.keyDown(keycode);
 	}
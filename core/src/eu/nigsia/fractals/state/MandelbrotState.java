@@ -1,12 +1,24 @@
 package eu.nigsia.fractals.state;
 
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.TimeUtils;
 
 import eu.nigsia.fractals.Main;
+import eu.nigsia.fractals.render.DeepView;
+import eu.nigsia.fractals.render.Frame;
+import eu.nigsia.fractals.render.JuliaPreview;
+import eu.nigsia.fractals.render.Kernel;
+import eu.nigsia.fractals.render.KernelDiff;
+import eu.nigsia.fractals.render.MandelbrotEngine;
+import eu.nigsia.fractals.render.Palette;
+import eu.nigsia.fractals.render.RenderPipeline;
+import eu.nigsia.fractals.render.View;
+import eu.nigsia.fractals.util.NativeMemory;
+import eu.nigsia.fractals.util.SurfacePool;
 import static com.badlogic.gdx.Input.Keys.*;
 /**
  * 	This class calculates and renders a fractal based on Mandelbrot's Set.
@@ -20,8 +32,17 @@ import static com.badlogic.gdx.Input.Keys.*;
 	 *	R: Reset position and zoom to the default values.
 	 *  I: Increase by one the bitshift of the color.
 	 *  U: Decrease by one the bitshift of the color.
+	 *  G: Toggle between the classic coloring and a smooth gradient.
+	 *  M: Toggle between calculating pixel by pixel and Mariani-Silver subdivision.
+	 *  V: Toggle the vectorized (SIMD) kernel, when the JVM supports it (on by default).
+	 *  F: Toggle single precision on shallow views, with the vectorized kernel (on by default).
+	 *  A: Toggle anti-aliasing: the edge pixels of every finished view get extra samples, up to about one extra sample per pixel.
+	 *  K: Toggle the validation mode: every view calculated in single precision is compared with the double kernel and the result shown on the window's title.
+	 *  J: Toggle the preview of the Julia set of the point under the mouse, on the top-right corner (on by default).
+	 *  D: Toggle the deep zoom mode. The mouse wheel zooms by a constant factor, down to about 1e-300.
+	 *  	The kernel (float, double, double-double or perturbation) is picked from the zoom and shown on the window's title.
 	 *  P: Increase MAX_ITER by 500.
- *  Arrow Keys to move the fractal.
+ *  Arrow Keys or dragging the mouse to move the fractal.
  *  Mouse wheel up to increase/decrease zoom.
  *  
  * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
@@ -57,11 +78,43 @@ public class MandelbrotState extends FractalState
 	 * 	Number of pixels that are moved when moving with Arrow Keys or Zooming.
 	 */
 	private static final int STEP = 30;
+	/**
+	 * 	Factor applied to the distance between pixels by every step of the mouse wheel in deep zoom mode.
+	 */
+	private static final double DEEP_ZOOM = 1.25;
+	/**
+	 * 	Size of the disk cache of tiles (256MB, about 10000 tiles), shared by every run (see {@link RenderPipeline#CACHE_FILE}).
+	 */
+	private static final long CACHE_BYTES = 256L << 20;
+	/**
+	 * 	Size of the memory cache of tiles (64MB, about 2700 tiles or 7 windows).
+	 */
+	private static final long MEMORY_CACHE_BYTES = 64L << 20;
+	/**
+	 * 	Smallest difference of iterations between neighbours that is anti-aliased.
+	 */
+	private static final float SAMPLE_THRESHOLD = 1;
+	/**
+	 * 	Side of the Julia set preview in pixels.
+	 */
+	private static final int JULIA_SIZE = 160;
+	/**
+	 * 	Distance between the Julia set preview and the corner of the window in pixels.
+	 */
+	private static final int JULIA_MARGIN = 10;
+	/**
+	 * 	Number of iterations per pixel of the Julia set preview.
+	 */
+	private static final int JULIA_ITER = 250;
+	/**
+	 * 	Time the Julia set preview can take every frame, in nanoseconds (3ms).
+	 */
+	private static final long JULIA_BUDGET = 3000000;
 	
 	/**
 	 * 	Number of iterarions per pixel. Default value is {@link MandelbrotState#DEFAULT_ITER}
 	 */
-	private static int MAX_ITER = DEFAULT_ITER; 
+	private int maxIter = DEFAULT_ITER; 
 	
 	/**
 	 * 	Indicates the center X value of the fractal. Note: this is not a "world" coordinate but a custom coordinate on the fractal.
@@ -78,33 +131,91 @@ public class MandelbrotState extends FractalState
 	private int zoomAdded = 0;
 	
 	/**
-	 * 	Indicates the <i>z_n</i> (in the Real axis) as shown in Wikipedia's formula {@link https://en.wikipedia.org/wiki/Mandelbrot_set}
+	 * 	Region shown in deep zoom mode, or null when it's off. Its maxIter is replaced by {@link #maxIter} on every {@link #calculate()}.
 	 */
-	private double zx = 0;
+	private DeepView deep;
+	
 	/**
-	 * 	Indicates the <i>z_n</i> (in the Complex axis) as shown in Wikipedia's formula {@link https://en.wikipedia.org/wiki/Mandelbrot_set}
+	 * 	Engine that calculates the fractal using every core.
 	 */
-	private double zy = 0;
+	private final MandelbrotEngine engine = new MandelbrotEngine();
 	/**
-	 * 	Indicates the constant <i>c</i> (in the Real axis) as shown in Wikipedia's formula {@link https://en.wikipedia.org/wiki/Mandelbrot_set}
+	 * 	Calculates the requested views on a background thread. It's created by the first {@link #calculate()}.
+	 * 	It owns the caches of the engine: a disk cache, so the views seen before (even in another run) are only read, and a memory cache in front of it, so zooming back out or returning to a view copies the tiles seen a moment ago.
 	 */
-	private double cX = 0;
+	private RenderPipeline pipeline;
+	
 	/**
-	 * 	Indicates the constant <i>c</i> (in the Complex axis) as shown in Wikipedia's formula {@link https://en.wikipedia.org/wiki/Mandelbrot_set}
+	 * 	Colors of the last drawn pass. They are written to the {@link Pixmap} at once by {@link FractalState#getSink()}.
 	 */
-	private double cY = 0;
+	private int[] colors = new int[getWidth()*getHeight()];
+	/**
+	 * 	Last drawn pass. It's colored again when only the palette changes.
+	 */
+	private Frame lastFrame;
+	/**
+	 * 	Kernel shown on the window's title.
+	 */
+	private Kernel shownKernel;
+	/**
+	 * 	Turns the iterations into colors.
+	 */
+	private final Palette palette = new Palette(4);
+	
+	/**
+	 * 	Julia set of the point under the mouse. It's refined a little every frame no pass of the fractal is drawn.
+	 */
+	private final JuliaPreview julia = new JuliaPreview(JULIA_SIZE, JULIA_ITER);
+	/**
+	 * 	Palette of {@link #julia}. It has the mode and bitshift of {@link #palette}, but its own lookup table, since its maxIter is different.
+	 */
+	private final Palette juliaPalette = new Palette(4);
+	/**
+	 * 	Colors of {@link #julia}.
+	 */
+	private final int[] juliaColors = new int[JULIA_SIZE*JULIA_SIZE];
+	/**
+	 * 	Pixmaps and textures of {@link #julia}. They are created the first time it's drawn.
+	 */
+	private SurfacePool juliaSurfaces;
+	/**
+	 * 	Last uploaded image of {@link #julia}, or null if there is none.
+	 */
+	private TextureRegion juliaRegion;
+	/**
+	 * 	Whether the Julia set preview is shown or not.
+	 */
+	private boolean showJulia = true;
+	/**
+	 * 	Set when the palette changes, so {@link #julia} is colored again even if it's finished.
+	 */
+	private boolean juliaRecolor = false;
+	
+	/**
+	 * 	Set by the input events when the view changes. All the changes of one frame are merged into a single {@link #calculate()} on the next {@link #update(float)}.
+	 */
+	private boolean dirty = false;
+	/**
+	 * 	Set when only the palette changes. {@link #lastFrame} is colored again on the next {@link #update(float)}, without calculating anything.
+	 */
+	private boolean recolor = false;
+	
+	/**
+	 * 	Last mouse position while dragging. Used to move the fractal with the mouse.
+	 */
+	private int dragX, dragY;
 	
 	/**
 	 * 	Used to make the Iteration State. Iteration State will increase the iteration number each second.
 	 */
-	private long lastTime = System.nanoTime();
+	private long lastTime = TimeUtils.nanoTime();
 	/**
 	 * 	Used to toggle the Iteration State.
 	 */
 	private boolean doIterationLoop = false;
 	
 	/**
-	 * 	Current color bitshift {@link MandelbrotState#calculate()}
+	 * 	Current color bitshift {@link Palette.Mode#CLASSIC}
 	 */
 	private byte bitshift = 4;
 
@@ -121,57 +232,85 @@ public class MandelbrotState extends FractalState
 
 	/**
 	 * 	Method that calculates the fractal using Wikipedia's formula {@link https://en.wikipedia.org/wiki/Mandelbrot_set}.
-	 * 	Every pixel of the window is drawn to a {@link Pixmap}. When the loop finishes, it stores creates a new {@link FractalState#fractal} from the {@link Pixmap}. 
+	 * 	It only asks {@link #pipeline} to calculate the current view and returns immediately. The passes are drawn by {@link #update(float)} when they are finished.
 	 */
 	@Override
 	protected final void calculate()
+	{
+		if(pipeline == null)
+		{
+			pipeline = new RenderPipeline(engine, CACHE_BYTES, MEMORY_CACHE_BYTES);
+		}
+		
+		if(deep != null)
+		{
+			deep = deep.withMaxIter(maxIter);
+			pipeline.request(deep);
+			if(DBG)
+				System.out.println("\n--------------------" + "Current:\n" + deep + "\n--------------------\n");
+			return;
+		}
+		
+		View view = getView();
+		pipeline.request(view);
+		
+		if(DBG)
+			System.out.println("\n--------------------" + "Current:" + "\ndx: " + centerX + "\ndy: " + centerY + "\nzoom: " + view.zoom + "\n--------------------\n" + bitshift + "\nnative bytes: " + NativeMemory.getLiveBytes() + "\ncache: " + engine.getCache());
+	}
+	
+	/**
+	 * 	Gets the {@link View} of the current position, zoom and iterations.
+	 */
+	private View getView()
 	{
 		// Zoom
 		double zoom = defZOOM + zoomAdded;
 		if(zoom <= 0)
 			zoom = defZOOM;
-		
-		
-		double tmp;
-		if(DBG)
-			System.out.println("Calculating...");
-		
-		// Calculate
-		for (int x = 0; x < getWidth(); x++)
+		return new View(centerX, centerY, zoom, maxIter, getWidth(), getHeight());
+	}
+	
+	/**
+	 * 	Moves the fractal (dx, dy) pixels, in deep zoom mode too.
+	 */
+	private void move(int dx, int dy)
+	{
+		if(deep != null)
+			deep = deep.translate(dx, dy);
+		else
 		{
-			for (int y = 0; y < getHeight(); y++)
-			{
-                zx = zy = 0;
-                cX = (x - centerX) / zoom;
-                cY = (y - centerY) / zoom;
-                int iter = MAX_ITER;
-                while (zx * zx + zy * zy < 4.0 && iter > 0)
-                {
-                    tmp = zx * zx - zy * zy + cX;
-                    zy = 2.0 * zx * zy + cY;
-                    zx = tmp;
-                    iter--;
-                }
-              
-                pixmap.setColor(iter | iter << bitshift);
-                pixmap.drawPixel(x, y);
-            
-			}
-        }
-		
-		if(DBG)
-			System.out.println("Finished!");
+			centerX += dx;
+			centerY += dy;
+		}
+		dirty = true;
+	}
+	
+	/**
+	 * 	Colors every pixel of a finished pass with {@link #palette}, writes them to the back {@link Pixmap} and presents it. It must be called from the GL thread.
+	 * @param frame: The {@link Frame} to draw.
+	 */
+	private void draw(Frame frame)
+	{
+		palette.setBitshift(bitshift);
+		palette.color(frame.buffer, frame.maxIter, colors);
+		if(frame.samples != null)
+			frame.samples.resolve(palette, frame.maxIter, colors);
+		getSink().write(colors);
+		present();
+		lastFrame = frame;
 		
-		fractal = new TextureRegion(new Texture(pixmap));
-		// We reset the Pixmap.
-		pixmap = new Pixmap(getWidth(), getHeight(), Pixmap.Format.RGBA4444);
+		if(frame.kernel != shownKernel)
+		{
+			shownKernel = frame.kernel;
+			Gdx.graphics.setTitle(Main.TITLE + " [" + shownKernel + "]");
+		}
 		
 		if(DBG)
-			System.out.println("\n--------------------" + "Current:" + "\ndx: " + centerX + "\ndy: " + centerY + "\nzoom: " + zoom + "\n--------------------\n" + bitshift);
+			System.out.println("Pass " + frame.block + " finished!");
 	}
 
 	/**
-	 * 	Method inherited from {@link State}. Used to update this state.
+	 * 	Method inherited from {@link State}. Used to update this state. It requests the view if it changed since the last frame and draws the last pass finished by {@link #pipeline}, if any.
 	 * @param dt: Delta time in case any update needs it.
 	 */
 	@Override
@@ -179,23 +318,91 @@ public class MandelbrotState extends FractalState
 	{	
 		if(doIterationLoop)
 		{
-			if((System.nanoTime() - lastTime)/1000000000 >= 1)
+			if((TimeUtils.nanoTime() - lastTime)/1000000000 >= 1)
 			{
-				MAX_ITER += 5; 
-				lastTime = System.nanoTime();
-				calculate();
+				maxIter += 5; 
+				lastTime = TimeUtils.nanoTime();
+				dirty = true;
 			}
 		}
+		
+		if(dirty)
+		{
+			dirty = false;
+			calculate();
+		}
+		
+		Frame frame = null;
+		if(pipeline != null)
+			frame = pipeline.poll();
+		if(frame == null && recolor)
+			frame = lastFrame;
+		if(frame != null)
+			draw(frame);
+		if(recolor)
+			juliaRecolor = true;
+		recolor = false;
+		
+		// Never in the same frame as a pass of the fractal, so the preview can't delay it
+		if(showJulia && frame == null)
+			refineJulia();
+		
+		KernelDiff diff = pipeline != null ? pipeline.pollValidation() : null;
+		if(diff != null)
+		{
+			Gdx.graphics.setTitle(Main.TITLE + " [" + shownKernel + "] " + diff);
+			if(DBG)
+				System.out.println("Validation: " + diff);
+		}
+	}
+
+	/**
+	 * 	Refines {@link #julia} for {@link #JULIA_BUDGET} and, if anything changed, colors it and uploads it. It must be called from the GL thread.
+	 */
+	private void refineJulia()
+	{
+		boolean changed = julia.refine(JULIA_BUDGET);
+		if(!changed && !(juliaRecolor && juliaRegion != null))
+			return;
+		juliaRecolor = false;
+		juliaPalette.setMode(palette.getMode());
+		juliaPalette.setBitshift(bitshift);
+		julia.color(juliaPalette, juliaColors);
+		if(juliaSurfaces == null)
+			juliaSurfaces = new SurfacePool(JULIA_SIZE, JULIA_SIZE, Pixmap.Format.RGBA8888);
+		juliaSurfaces.getSink().write(juliaColors);
+		juliaRegion = juliaSurfaces.swap();
 	}
 
 	/**
-	 * 	Method inherited from {@link State}. Used to draw everything on this state.
+	 * 	Method inherited from {@link State}. Used to draw everything on this state. It draws the last finished pass.
 	 *  @param sb: {@link SpriteBatch}. Passed from {@link Main}. It's the only {@link SpriteBatch} being rendered.
 	 */
 	@Override
 	protected final void render(SpriteBatch sb) 
 	{
-		sb.draw(fractal, 0, 0);
+		if(fractal != null)
+			sb.draw(fractal, 0, 0);
+		if(showJulia && juliaRegion != null)
+			sb.draw(juliaRegion, getWidth() - JULIA_SIZE - JULIA_MARGIN, getHeight() - JULIA_SIZE - JULIA_MARGIN);
+	}
+	
+	/**
+	 * 	Stops {@link #pipeline} and disposes the pixmaps and textures.
+	 */
+	@Override
+	public void dispose()
+	{
+		if(pipeline != null)
+			pipeline.shutdown();
+		pipeline = null;
+		if(juliaSurfaces != null)
+			juliaSurfaces.dispose();
+		juliaSurfaces = null;
+		juliaRegion = null;
+		if(shownKernel != null)
+			Gdx.graphics.setTitle(Main.TITLE);
+		super.dispose();
 	}
 	
 	/**
@@ -208,60 +415,96 @@ public class MandelbrotState extends FractalState
 		switch(keycode)
 		{
 		case P:
-			MAX_ITER += 500;
-			calculate();
+			maxIter += 500;
+			dirty = true;
 			break;
 		case I:
 			bitshift++;
 			if(bitshift >= BITSHIFTMAX)
 				bitshift = BITSHIFTMAX;
-			calculate();
+			recolor = true;
 			break;
 		case U:
 			bitshift--;
 			if(bitshift <= BITSHIFTMIN)
 				bitshift = BITSHIFTMIN;
-			calculate();
+			recolor = true;
+			break;
+		case G:
+			palette.setMode(palette.getMode() == Palette.Mode.CLASSIC ? Palette.Mode.SMOOTH : Palette.Mode.CLASSIC);
+			recolor = true;
+			break;
+		case M:
+			engine.setSubdividing(!engine.isSubdividing());
+			if(DBG)
+				System.out.println("Subdivision: " + engine.isSubdividing());
+			break;
+		case V:
+			engine.setVectorized(!engine.isVectorized());
+			if(DBG)
+				System.out.println("Kernel: " + engine.getKernel(getView()));
+			break;
+		case F:
+			engine.setSinglePrecision(!engine.isSinglePrecision());
+			dirty = true;
+			break;
+		case A:
+			if(pipeline != null)
+				pipeline.setSupersampling(pipeline.getSampleBudget() > 0 ? 0 : getWidth()*getHeight(), SAMPLE_THRESHOLD);
+			dirty = true;
+			break;
+		case K:
+			if(pipeline != null)
+				pipeline.setValidating(!pipeline.isValidating());
+			shownKernel = null;
+			dirty = true;
+			break;
+		case J:
+			showJulia = !showJulia;
+			break;
+		case D:
+			deep = deep == null ? DeepView.of(getView()) : null;
+			dirty = true;
 			break;
 		case R:
 			centerX = 250;
 			centerY = 250;
 			zoomAdded = 0;
-			calculate();
+			if(deep != null)
+				deep = DeepView.of(getView());
+			dirty = true;
 			break;
 		case Z:
 			centerX = 1552;
 			centerY = 4840;
 			zoomAdded = 6230;
-			calculate();
+			if(deep != null)
+				deep = DeepView.of(getView());
+			dirty = true;
 			break;
 		case X:
-			MAX_ITER = 15;
+			maxIter = 15;
 			doIterationLoop = true;
-			lastTime = System.nanoTime();
+			lastTime = TimeUtils.nanoTime();
 			break;
 		case S:
-			MAX_ITER = DEFAULT_ITER;
+			maxIter = DEFAULT_ITER;
 			doIterationLoop = false;
 			break;
 		case C:
-			calculate();
+			dirty = true;
 			break;
 		case LEFT:
-			centerX += STEP;
-			calculate();
+			move(STEP, 0);
 			break;
 		case RIGHT:
-			centerX -= STEP;
-			calculate();
+			move(-STEP, 0);
 			break;
 		case UP:
-			centerY += STEP;
-			calculate();
+			move(0, STEP);
 			break;
 		case DOWN:
-			centerY -= STEP;
-			calculate();
+			move(0, -STEP);
 			break;
 		default:
 				break;
@@ -272,14 +515,67 @@ public class MandelbrotState extends FractalState
 	
 	/**
 	 * 	Method inherited from {@link State}. This method is called every time the mouse wheel is scrolled. It adds {@link #STEP}*-1 to the amount scrolled.
+	 * 	In deep zoom mode, the distance between pixels is multiplied by {@link #DEEP_ZOOM} to the amount scrolled instead.
 	 *  @param amount: This is the amount scrolled.
 	 */
 	@Override
 	public final boolean scrolled(int amount)
 	{
-		zoomAdded += amount*STEP*-1;
-		calculate();
+		if(deep != null)
+		{
+			DeepView zoomed = deep.zoom(Math.pow(DEEP_ZOOM, amount));
+			// Past the deepest zoom the view doesn't change, so nothing is calculated again
+			dirty |= zoomed != deep;
+			deep = zoomed;
+		}
+		else
+		{
+			zoomAdded += amount*STEP*-1;
+			dirty = true;
+		}
 		return super.scrolled(amount);
 	}
+	
+	/**
+	 * 	Method inherited from {@link State}. Shows the Julia set of the point under the mouse. It's only set here; it's calculated by {@link #update(float)}.
+	 */
+	@Override
+	public final boolean mouseMoved(int screenX, int screenY)
+	{
+		if(showJulia)
+		{
+			if(deep != null)
+				julia.setPoint(deep.centerRe.doubleValue() + deep.dx(screenX), deep.centerIm.doubleValue() + deep.dy(screenY));
+			else
+			{
+				View view = getView();
+				julia.setPoint(view.re(screenX), view.im(screenY));
+			}
+		}
+		return super.mouseMoved(screenX, screenY);
+	}
+	
+	/**
+	 * 	Method inherited from {@link State}. Stores where the drag starts.
+	 */
+	@Override
+	public final boolean touchDown(int screenX, int screenY, int pointer, int button)
+	{
+		dragX = screenX;
+		dragY = screenY;
+		return super.touchDown(screenX, screenY, pointer, button);
+	}
+	
+	/**
+	 * 	Method inherited from {@link State}. Moves the fractal with the mouse. Only the pixels that weren't visible are calculated.
+	 */
+	@Override
+	public final boolean touchDragged(int screenX, int screenY, int pointer)
+	{
+		move(screenX - dragX, screenY - dragY);
+		dragX = screenX;
+		dragY = screenY;
+		return super.touchDragged(screenX, screenY, pointer);
+	}
 
 }
@@ -2,7 +2,6 @@ package eu.nigsia.fractals.state;
 
 import com.badlogic.gdx.graphics.Color;
 import com.badlogic.gdx.graphics.Pixmap;
-import com.badlogic.gdx.graphics.Texture;
 import com.badlogic.gdx.graphics.g2d.BitmapFont;
 import com.badlogic.gdx.graphics.g2d.GlyphLayout;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
@@ -11,6 +10,8 @@ import com.badlogic.gdx.graphics.g2d.TextureRegion;
 import eu.nigsia.fractals.Main;
 import eu.nigsia.fractals.math.geom.Point;
 import eu.nigsia.fractals.math.geom.Rectangle;
+import eu.nigsia.fractals.util.NativeMemory;
+import eu.nigsia.fractals.util.PixelSink;
 import eu.nigsia.fractals.util.Res;
 
 /**
@@ -117,17 +118,23 @@ public class MenuItem
 	 */
 	private TextureRegion createButton(Color c)
 	{
-		Pixmap p = new Pixmap(WIDTH, HEIGHT, Pixmap.Format.RGBA4444);
+		Pixmap p = NativeMemory.newPixmap(WIDTH, HEIGHT, Pixmap.Format.RGBA4444);
 		
-		p.setColor(c);
-		for(int x = 0; x < WIDTH; x++)
-			for(int y = 0; y < WIDTH; y++)
-				p.drawPixel(x, y);
+		PixelSink.of(p).fill(Color.rgba8888(c));
 		
-		TextureRegion t = new TextureRegion(new Texture(p));
-		p.dispose();
+		TextureRegion t = new TextureRegion(NativeMemory.newTexture(p));
+		NativeMemory.dispose(p);
 		return t;
 	}
+	
+	/**
+	 * 	Disposes the button's textures. The {@link #state} isn't disposed here: while it's shown it belongs to the {@link StateManager}, which disposes it when it's removed.
+	 */
+	public void dispose()
+	{
+		NativeMemory.dispose(buttonHovered.getTexture());
+		NativeMemory.dispose(buttonUnhovered.getTexture());
+	}
 
 	/**
 	 * 	This method changes the state to {@link MenuItem#state}. It also sets it to be the input processor and finally it calls {@link FractalState#calculate()}.
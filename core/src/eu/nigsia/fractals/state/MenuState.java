@@ -104,6 +104,16 @@ public class MenuState extends State
 		
 	}
 
+	/**
+	 * 	Disposes every {@link MenuItem}.
+	 */
+	@Override
+	public void dispose()
+	{
+		for(MenuItem mi : menuItems)
+			mi.dispose();
+	}
+	
 	/**
 	 * 	Checks if a button is clicked and switches this state to the proper one.
 	 */
@@ -1,30 +1,113 @@
 package eu.nigsia.fractals.state;
 
+import java.util.Arrays;
+
 import eu.nigsia.fractals.Main;
-import eu.nigsia.fractals.math.geom.Point;
-import eu.nigsia.fractals.math.geom.Triangle;
+import eu.nigsia.fractals.math.geom.Rectangle;
+import eu.nigsia.fractals.render.ChaosGame;
+import eu.nigsia.fractals.render.DensityMap;
+import eu.nigsia.fractals.render.SierpinskiRenderer;
 
+import com.badlogic.gdx.Input.Keys;
 import com.badlogic.gdx.graphics.Color;
-import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.g2d.SpriteBatch;
-import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.TimeUtils;
+import static com.badlogic.gdx.Input.Keys.*;
 
 /**
  * 	This class calculates and renders Serpinski's triangle.
+ * 	By default it's drawn by subdividing the triangle ({@link SierpinskiRenderer}), which can be moved and zoomed at any depth.
+ * 	The original chaos game ({@link ChaosGame}) draws the whole triangle without zoom. It's played a little every frame, within {@link #FRAME_BUDGET},
+ * 	and its hits are accumulated in a {@link DensityMap}, so the image keeps converging for as long as it's shown without slowing the frames down.
+ * 
+ *  This are the keys that this class can use:
+ * 
+	 * 	M: Toggle between the subdivision and the chaos game.
+	 *	R: Reset position and zoom to the default values. It restarts the chaos game.
+ *  Arrow Keys or dragging the mouse to move the fractal.
+ *  Mouse wheel up to increase/decrease zoom.
+ *  
  * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
  *  @year  2015
  */
 public class SierpinskiState extends FractalState 
 {
 	/**
-	 * 	Maximum number of iterations allowed.
+	 * 	Maximum number of iterations allowed (about a trillion, hours of frames). The chaos game stops when it reaches it.
+	 */
+	protected static final long MAX_ITER = 1L << 40;
+	/**
+	 * 	Time the chaos game can take every frame, in nanoseconds (6ms).
 	 */
-	protected static final long MAX_ITER = 200000;
+	private static final long FRAME_BUDGET = 6000000;
+	/**
+	 * 	Iterations of the first frame of the chaos game. The next ones are sized from the time it took.
+	 */
+	private static final long FIRST_BATCH = 1 << 16;
+	/**
+	 * 	The hits are tone mapped again when the points played grow by this fraction since the last tone mapping.
+	 * 	The image changes less and less with every point, so it's tone mapped (and uploaded) less and less often.
+	 */
+	private static final double TONE_MAP_GROWTH = 1.0 / 32;
 	
 	/**
 	 * 	The triangle's default color.
 	 */
 	private static final Color DEF_COL = new Color(1.0f, 0.0f, 1.0f, 1.0f);
+	/**
+	 * 	Number of pixels that are moved when moving with Arrow Keys.
+	 */
+	private static final int STEP = 30;
+	/**
+	 * 	Factor applied to the zoom by every step of the mouse wheel.
+	 */
+	private static final double ZOOM_STEP = 1.25;
+	
+	/**
+	 * 	Draws the triangle by subdivision.
+	 */
+	private final SierpinskiRenderer renderer = SierpinskiRenderer.sierpinski(getWidth(), getHeight());
+	/**
+	 * 	Whether the triangle is drawn by subdivision or by the chaos game.
+	 */
+	private boolean subdivide = true;
+	
+	/**
+	 * 	World coordinate (the pixels of the image without zoom) shown at the center of the window.
+	 */
+	private double centerX = getWidth()/2, centerY = getHeight()/2;
+	/**
+	 * 	Pixels per world unit. 1 shows the whole triangle.
+	 */
+	private double zoom = 1;
+	
+	/**
+	 * 	Chaos game being played, or null when the triangle is drawn by subdivision.
+	 */
+	private ChaosGame game;
+	/**
+	 * 	Hits of {@link #game}.
+	 */
+	private DensityMap density;
+	/**
+	 * 	Iterations of {@link #game} of the next frame.
+	 */
+	private long batch;
+	
+	/**
+	 * 	Colors of the last drawn image.
+	 */
+	private final int[] colors = new int[getWidth()*getHeight()];
+	/**
+	 * 	Set by the input events when the view changes. It's drawn again on the next {@link #update(float)}.
+	 */
+	private boolean dirty = false;
+	
+	/**
+	 * 	Last mouse position while dragging. Used to move the fractal with the mouse.
+	 */
+	private int dragX, dragY;
 
 	/** 
 	 * 	Default constructor inherited from {@link State}.
@@ -33,16 +116,51 @@ public class SierpinskiState extends FractalState
 	 */
 	public SierpinskiState(StateManager sm) 
 	{
-		super(sm);
+		super(sm, Pixmap.Format.RGBA8888);
 	}
 
 	/**
-	 * 	Method inherited from {@link State}. Used to update this state.
+	 * 	Method inherited from {@link State}. Used to update this state. It draws the view again if it changed since the last frame, and plays the chaos game for {@link #FRAME_BUDGET}.
 	 * @param dt: Delta time in case any update needs it.
 	 */
 	@Override
 	protected void update(float dt) 
-	{}
+	{
+		if(dirty)
+		{
+			dirty = false;
+			calculate();
+		}
+		if(game != null)
+			accumulate();
+	}
+	
+	/**
+	 * 	Plays one frame of the chaos game or, if enough points were played since the last tone mapping, tone maps them and uploads the pixels if any of them changed.
+	 * 	A frame never does both, so neither of them adds to the time of the other.
+	 */
+	private void accumulate()
+	{
+		long samples = density.getSamples(), mapped = density.getMappedSamples();
+		if(samples > mapped && (samples - mapped >= mapped * TONE_MAP_GROWTH || samples >= MAX_ITER))
+		{
+			if(density.toneMap(Color.rgba8888(DEF_COL), colors) > 0)
+			{
+				getSink().write(colors);
+				present();
+			}
+			return;
+		}
+		if(samples >= MAX_ITER)
+			return;
+		
+		long n = Math.min(batch, MAX_ITER - samples);
+		long start = TimeUtils.nanoTime();
+		density.play(n);
+		long time = Math.max(TimeUtils.nanoTime() - start, 1);
+		// Next frame takes about the budget. It grows at most twice per frame, in case this one was unusually fast.
+		batch = Math.max(FIRST_BATCH, Math.min((long)(n * (double)FRAME_BUDGET / time), 2 * n));
+	}
 	
 	/**
 	 * 	Method inherited from {@link State}. Used to draw everything on this state.
@@ -51,37 +169,112 @@ public class SierpinskiState extends FractalState
 	@Override
 	protected void render(SpriteBatch sb) 
 	{
-		sb.draw(fractal, 0, 0);
+		if(fractal != null)
+			sb.draw(fractal, 0, 0);
 	}
 	
 	/**
-	 * 	This method calculates Sierpinski's triangle. It follows the next algorithm:
-	 *  1. Generate 3 points creating an imaginary triangle. Let's call those points <i>p</i>, <i>q</i> and <i>r</i>.
-	 *  2. Let <i>mid</i> be the center of the triangle.
-	 *  3. <b>for</b> iteration <i>MAX_ITER</i> <b>do</b>
-	 *  4. 			Get a random vertex (<i>p</i>, <i>q</i> or <i>r</i>).
-	 *  5.			<i>mid</i> = Mid point of the segment created by the random vertex and the last mid point.
-	 *  6.			Draw the pixel represented by the mid point.
+	 * 	This method calculates Sierpinski's triangle: it draws the current view by subdivision, or starts the {@link ChaosGame} of the whole triangle, which is played by {@link #update(float)} up to <i>MAX_ITER</i> iterations.
 	 */
 	protected void calculate()
 	{
-		pixmap.setColor(DEF_COL);
-		int w = getWidth();
-		int h = getHeight();
-		
-		Point p = new Point(w/2, 0);
-		Point q = new Point(w, h);
-		Point r = new Point(0, h);
-		Triangle t = new Triangle(p, q, r);
-		Point mid = new Point(w/2, h/2);
-		
-		for(int i = 0; i < MAX_ITER; i++)
+		int w = getWidth(), h = getHeight();
+		if(!subdivide)
 		{
-			mid = mid.midPoint(t.getRandomVertex());
-			pixmap.drawPixel(mid.x, mid.y);
+			game = ChaosGame.sierpinski(w, h);
+			density = new DensityMap(game);
+			batch = FIRST_BATCH;
+			Arrays.fill(colors, 0);
 		}
-		
-		fractal = new TextureRegion(new Texture(pixmap), pixmap.getWidth(), pixmap.getHeight());
-		
+		else
+		{
+			game = null;
+			density = null;
+			renderer.render(centerX, centerY, zoom, new Rectangle(0, 0, w, h), colors, w, h, Color.rgba8888(DEF_COL));
+		}
+		getSink().write(colors);
+		present();
+	}
+	
+	/**
+	 * 	Moves the fractal (dx, dy) pixels. Only the subdivision can be moved.
+	 */
+	private void move(int dx, int dy)
+	{
+		centerX -= dx / zoom;
+		centerY -= dy / zoom;
+		dirty = subdivide;
+	}
+	
+	/**
+	 * 	Method inherited from {@link State}. This method is called every time a key is pressed. It also has all the code executed when the keys used by this class are pressed.
+	 * 	@param keycode: Every Keycode is imported staticly to this class from {@link Keys}
+	 */
+	@Override
+	public boolean keyDown(int keycode)
+	{
+		switch(keycode)
+		{
+		case M:
+			subdivide = !subdivide;
+			dirty = true;
+			break;
+		case R:
+			centerX = getWidth()/2;
+			centerY = getHeight()/2;
+			zoom = 1;
+			dirty = true;
+			break;
+		case LEFT:
+			move(STEP, 0);
+			break;
+		case RIGHT:
+			move(-STEP, 0);
+			break;
+		case UP:
+			move(0, STEP);
+			break;
+		case DOWN:
+			move(0, -STEP);
+			break;
+		default:
+			break;
+		}
+		return super.keyDown(keycode);
+	}
+	
+	/**
+	 * 	Method inherited from {@link State}. This method is called every time the mouse wheel is scrolled. The zoom is divided by {@link #ZOOM_STEP} to the amount scrolled, between {@link SierpinskiRenderer#MIN_ZOOM} and {@link SierpinskiRenderer#MAX_ZOOM}.
+	 *  @param amount: This is the amount scrolled.
+	 */
+	@Override
+	public boolean scrolled(int amount)
+	{
+		zoom = Math.max(SierpinskiRenderer.MIN_ZOOM, Math.min(zoom / Math.pow(ZOOM_STEP, amount), SierpinskiRenderer.MAX_ZOOM));
+		dirty = subdivide;
+		return super.scrolled(amount);
+	}
+	
+	/**
+	 * 	Method inherited from {@link State}. Stores where the drag starts.
+	 */
+	@Override
+	public boolean touchDown(int screenX, int screenY, int pointer, int button)
+	{
+		dragX = screenX;
+		dragY = screenY;
+		return super.touchDown(screenX, screenY, pointer, button);
+	}
+	
+	/**
+	 * 	Method inherited from {@link State}. Moves the fractal with the mouse.
+	 */
+	@Override
+	public boolean touchDragged(int screenX, int screenY, int pointer)
+	{
+		move(screenX - dragX, screenY - dragY);
+		dragX = screenX;
+		dragY = screenY;
+		return super.touchDragged(screenX, screenY, pointer);
 	}
 }
@@ -73,6 +73,11 @@ public abstract class State implements InputProcessor
 	 */
 	protected int getHeight(){return HEIGHT;}
 	
+	/**
+	 * 	Called when the state is removed from the {@link StateManager}. States that own pixmaps, textures or threads must release them here.
+	 */
+	public void dispose(){}
+	
 	/**
 	 * 	This are all the methods {@link InputProcessor} adds. We can then overwrite them if some state needs it.
 	 */
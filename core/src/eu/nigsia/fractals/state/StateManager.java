@@ -45,11 +45,20 @@ public class StateManager
 	}
 	
 	/**
-	 * {@link LinkedList#pop()}
+	 * {@link LinkedList#pop()}. The removed state is disposed.
 	 */
 	public void pop()
 	{
-		states.pop();
+		states.pop().dispose();
+	}
+	
+	/**
+	 * {@link LinkedList#peek()}
+	 * @return The current state, or null if there is none.
+	 */
+	public State peek()
+	{
+		return states.peek();
 	}
 	
 	/**
@@ -72,4 +81,13 @@ public class StateManager
 		push(s);
 	}
 	
+	/**
+	 * 	Pops and disposes every state. Called when the application is closed.
+	 */
+	public void dispose()
+	{
+		while(!states.isEmpty())
+			pop();
+	}
+	
 }
@@ -0,0 +1,279 @@
+package eu.nigsia.fractals.util;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * 	This class streams an image to a file row by row, so images far bigger than the memory can be written.
+ * 	Rows are packed RGBA8888 colors, the same ints written to a {@link PixelSink}, and they must be written from top to bottom.
+ * 	Two formats are supported: PNG (opaque, 8 bits per channel, compressed on the fly) and raw RGBA bytes without any header.
+ * 	The PNG drops the alpha: the colors of {@link eu.nigsia.fractals.render.Palette} are blended over a transparent pixel (RGB multiplied by alpha),
+ * 	so their RGB is the image over black, and a transparent interior is black like in the smooth palette. The raw bytes keep every channel as it is.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public abstract class ImageWriter implements Closeable
+{
+	/**
+	 * 	Width of the image.
+	 */
+	protected final int width;
+	/**
+	 * 	Height of the image.
+	 */
+	protected final int height;
+	/**
+	 * 	Number of rows written so far.
+	 */
+	private int rows;
+
+	/**
+	 * 	Creates a writer for an image of the given size.
+	 */
+	protected ImageWriter(int width, int height)
+	{
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Image of " + width + "x" + height);
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * 	Creates a writer for file. The format is picked from its extension: <i>.png</i> is PNG, anything else is raw RGBA.
+	 * @param file: The file to write. It's replaced if it exists.
+	 * @param width: Width of the image.
+	 * @param height: Height of the image.
+	 */
+	public static ImageWriter create(File file, int width, int height) throws IOException
+	{
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		if(file.getName().toLowerCase().endsWith(".png"))
+			return png(out, width, height);
+		return new Raw(out, width, height);
+	}
+
+	/**
+	 * 	Creates a PNG writer for out. The stream is closed with the writer.
+	 * @param out: Where the PNG is written.
+	 * @param width: Width of the image.
+	 * @param height: Height of the image.
+	 */
+	public static ImageWriter png(OutputStream out, int width, int height) throws IOException
+	{
+		return new Png(out, width, height);
+	}
+
+	/**
+	 * 	Writes the next rows of the image.
+	 * @param colors: RGBA8888 colors, count rows of {@link #width} pixels each.
+	 * @param count: Number of rows.
+	 */
+	public void write(int[] colors, int count) throws IOException
+	{
+		if(rows + count > height)
+			throw new IllegalStateException("The image only has " + height + " rows");
+		for (int y = 0; y < count; y++)
+			writeRow(colors, y * width);
+		rows += count;
+	}
+
+	/**
+	 * 	Gets the number of rows written so far.
+	 */
+	public int getRows(){	return rows;	}
+
+	/**
+	 * 	Writes one row.
+	 * @param colors: RGBA8888 colors.
+	 * @param offset: Index of the first pixel of the row in colors.
+	 */
+	protected abstract void writeRow(int[] colors, int offset) throws IOException;
+
+	/**
+	 * 	Checks that every row was written before closing.
+	 */
+	protected void checkComplete()
+	{
+		if(rows != height)
+			throw new IllegalStateException(rows + " of " + height + " rows were written");
+	}
+
+	/**
+	 * 	Raw RGBA bytes, row by row, without any header.
+	 */
+	private static class Raw extends ImageWriter
+	{
+		private final OutputStream out;
+		/**
+		 * 	Bytes of the current row.
+		 */
+		private final byte[] row;
+		/**
+		 * 	{@link #row} as big endian ints, which are R, G, B, A.
+		 */
+		private final ByteBuffer rowInts;
+
+		Raw(OutputStream out, int width, int height)
+		{
+			super(width, height);
+			if(width > Integer.MAX_VALUE / 4)
+				throw new IllegalArgumentException("Raw rows of " + width + " pixels are too long");
+			this.out = out;
+			this.row = new byte[width * 4];
+			this.rowInts = ByteBuffer.wrap(row);
+		}
+
+		@Override
+		protected void writeRow(int[] colors, int offset) throws IOException
+		{
+			// The whole row in one call, not one call per pixel
+			rowInts.asIntBuffer().put(colors, offset, width);
+			out.write(row);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			out.close();
+			checkComplete();
+		}
+	}
+
+	/**
+	 * 	Opaque PNG of 8 bits per channel (the alpha of the colors is dropped). Every row uses the <i>Sub</i> filter, which suits the smooth gradients of a fractal.
+	 * 	The compressed data is split in IDAT chunks of {@value #CHUNK} bytes, so only one chunk is kept in memory.
+	 */
+	private static class Png extends ImageWriter
+	{
+		private static final byte[] SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+		private static final int CHUNK = 1 << 16;
+		private static final int FILTER_SUB = 1;
+
+		private final DataOutputStream out;
+		private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+		private final DeflaterOutputStream data;
+		/**
+		 * 	Filter byte and filtered bytes of the current row.
+		 */
+		private final byte[] row;
+
+		Png(OutputStream out, int width, int height) throws IOException
+		{
+			super(width, height);
+			if(width > (Integer.MAX_VALUE - 1) / 3)
+				throw new IllegalArgumentException("PNG rows of " + width + " pixels are too long");
+			this.out = new DataOutputStream(out);
+			this.row = new byte[1 + width * 3];
+			this.out.write(SIGNATURE);
+
+			byte[] header = new byte[13];
+			putInt(header, 0, width);
+			putInt(header, 4, height);
+			header[8] = 8; // Bits per channel
+			header[9] = 2; // RGB
+			chunk("IHDR", header, header.length);
+
+			data = new DeflaterOutputStream(new OutputStream()
+			{
+				private final byte[] buffer = new byte[CHUNK];
+				private int size;
+
+				@Override
+				public void write(int b) throws IOException
+				{
+					buffer[size++] = (byte)b;
+					if(size == CHUNK)
+						flush();
+				}
+
+				@Override
+				public void write(byte[] b, int off, int len) throws IOException
+				{
+					while(len > 0)
+					{
+						int n = Math.min(len, CHUNK - size);
+						System.arraycopy(b, off, buffer, size, n);
+						size += n;
+						off += n;
+						len -= n;
+						if(size == CHUNK)
+							flush();
+					}
+				}
+
+				@Override
+				public void flush() throws IOException
+				{
+					if(size > 0)
+						chunk("IDAT", buffer, size);
+					size = 0;
+				}
+			}, deflater, CHUNK);
+		}
+
+		@Override
+		protected void writeRow(int[] colors, int offset) throws IOException
+		{
+			row[0] = FILTER_SUB;
+			int prev = 0;
+			for (int x = 0, i = 1; x < width; x++, i += 3)
+			{
+				int c = colors[offset + x];
+				row[i] = (byte)((c >>> 24) - (prev >>> 24));
+				row[i + 1] = (byte)((c >>> 16) - (prev >>> 16));
+				row[i + 2] = (byte)((c >>> 8) - (prev >>> 8));
+				prev = c;
+			}
+			data.write(row);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			try
+			{
+				data.finish();
+				data.flush();
+				chunk("IEND", new byte[0], 0);
+				out.close();
+			}
+			finally
+			{
+				deflater.end();
+			}
+			checkComplete();
+		}
+
+		/**
+		 * 	Writes a chunk: length, type, data and the CRC of type and data.
+		 */
+		private void chunk(String type, byte[] bytes, int length) throws IOException
+		{
+			byte[] name = type.getBytes("US-ASCII");
+			CRC32 crc = new CRC32();
+			crc.update(name);
+			crc.update(bytes, 0, length);
+			out.writeInt(length);
+			out.write(name);
+			out.write(bytes, 0, length);
+			out.writeInt((int)crc.getValue());
+		}
+
+		private static void putInt(byte[] bytes, int index, int value)
+		{
+			bytes[index] = (byte)(value >>> 24);
+			bytes[index + 1] = (byte)(value >>> 16);
+			bytes[index + 2] = (byte)(value >>> 8);
+			bytes[index + 3] = (byte)value;
+		}
+	}
+}
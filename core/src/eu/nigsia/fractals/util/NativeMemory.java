@@ -0,0 +1,120 @@
+package eu.nigsia.fractals.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+
+/**
+ * 	This class creates and disposes every {@link Pixmap} and {@link Texture} of the application, so it can count the native and GPU memory that is alive.
+ * 	Pixmaps live in native memory and textures in GPU memory; none of them is freed by the garbage collector, so a leak only shows up in these counters.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class NativeMemory
+{
+	/**
+	 * 	Bytes of every {@link Pixmap} created by {@link #newPixmap(int, int, Pixmap.Format)} and not disposed yet.
+	 */
+	private static final AtomicLong pixmapBytes = new AtomicLong();
+	/**
+	 * 	Bytes of every {@link Texture} created by {@link #newTexture(Pixmap)} and not disposed yet.
+	 */
+	private static final AtomicLong textureBytes = new AtomicLong();
+	/**
+	 * 	Number of pixmaps and textures alive.
+	 */
+	private static final AtomicLong liveObjects = new AtomicLong();
+
+	private NativeMemory(){}
+
+	/**
+	 * 	Creates a new {@link Pixmap} and counts its bytes.
+	 * @param width: Pixmap's width.
+	 * @param height: Pixmap's height.
+	 * @param format: Pixmap's format.
+	 */
+	public static Pixmap newPixmap(int width, int height, Pixmap.Format format)
+	{
+		Pixmap p = new Pixmap(width, height, format);
+		pixmapBytes.addAndGet(p.getPixels().capacity());
+		liveObjects.incrementAndGet();
+		return p;
+	}
+
+	/**
+	 * 	Disposes a {@link Pixmap} created by {@link #newPixmap(int, int, Pixmap.Format)}.
+	 * @param p: The pixmap to dispose.
+	 */
+	public static void dispose(Pixmap p)
+	{
+		pixmapBytes.addAndGet(-p.getPixels().capacity());
+		liveObjects.decrementAndGet();
+		p.dispose();
+	}
+
+	/**
+	 * 	Creates a new {@link Texture} from a {@link Pixmap} and counts its bytes (the same as the pixmap's). It must be called from the GL thread.
+	 * @param p: The pixmap uploaded to the texture.
+	 */
+	public static Texture newTexture(Pixmap p)
+	{
+		Texture t = new Texture(p);
+		textureBytes.addAndGet(bytes(t));
+		liveObjects.incrementAndGet();
+		return t;
+	}
+
+	/**
+	 * 	Disposes a {@link Texture} created by {@link #newTexture(Pixmap)}. It must be called from the GL thread.
+	 * @param t: The texture to dispose.
+	 */
+	public static void dispose(Texture t)
+	{
+		textureBytes.addAndGet(-bytes(t));
+		liveObjects.decrementAndGet();
+		t.dispose();
+	}
+
+	/**
+	 * 	Gets the bytes used by a texture. It's the size of the pixels uploaded to it.
+	 */
+	private static long bytes(Texture t)
+	{
+		int bpp;
+		switch(t.getTextureData().getFormat())
+		{
+		case Alpha:
+		case Intensity:
+			bpp = 1;
+			break;
+		case RGB888:
+			bpp = 3;
+			break;
+		case RGBA8888:
+			bpp = 4;
+			break;
+		default:
+			bpp = 2;
+			break;
+		}
+		return (long)t.getWidth() * t.getHeight() * bpp;
+	}
+
+	/**
+	 * 	Gets the bytes of native memory used by pixmaps.
+	 */
+	public static long getPixmapBytes(){	return pixmapBytes.get();	}
+	/**
+	 * 	Gets the bytes of GPU memory used by textures.
+	 */
+	public static long getTextureBytes(){	return textureBytes.get();	}
+	/**
+	 * 	Gets the bytes of native and GPU memory used by pixmaps and textures.
+	 */
+	public static long getLiveBytes(){	return pixmapBytes.get() + textureBytes.get();	}
+	/**
+	 * 	Gets the number of pixmaps and textures alive.
+	 */
+	public static long getLiveObjects(){	return liveObjects.get();	}
+}
@@ -0,0 +1,224 @@
+package eu.nigsia.fractals.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+import com.badlogic.gdx.graphics.Pixmap;
+
+/**
+ * 	This class writes packed RGBA8888 colors (the same ints used by {@link Pixmap#setColor(int)}) straight into the {@link ByteBuffer} behind a {@link Pixmap}.
+ * 	{@link Pixmap#setColor(int)} and {@link Pixmap#drawPixel(int, int)} are two native calls per pixel; this class writes whole rows with a single bulk put and needs no native call at all.
+ * 	Note: the colors replace the old pixels, they are not blended like {@link Pixmap#drawPixel(int, int)} does.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public abstract class PixelSink
+{
+	/**
+	 * 	Width of the pixmap.
+	 */
+	protected final int width;
+	/**
+	 * 	Height of the pixmap.
+	 */
+	protected final int height;
+
+	/**
+	 * 	Creates a sink for a pixmap of the given size.
+	 */
+	protected PixelSink(int width, int height)
+	{
+		this.width = width;
+		this.height = height;
+	}
+
+	/**
+	 * 	Creates the sink for the format of pixmap. Supported formats are {@link Pixmap.Format#RGBA8888} and {@link Pixmap.Format#RGBA4444}.
+	 * @param pixmap: The {@link Pixmap} to write to. The sink is only valid while it's not disposed.
+	 */
+	public static PixelSink of(Pixmap pixmap)
+	{
+		switch(pixmap.getFormat())
+		{
+		case RGBA8888:
+			return new Rgba8888(pixmap);
+		case RGBA4444:
+			return new Rgba4444(pixmap);
+		default:
+			throw new IllegalArgumentException("Unsupported pixmap format: " + pixmap.getFormat());
+		}
+	}
+
+	/**
+	 * 	Creates a sink that writes to an array instead of a {@link Pixmap}, for code that runs without a GL context (headless tools and benchmarks).
+	 * @param pixels: RGBA8888 colors of the image. The pixel (x, y) is at x + y*width.
+	 * @param width: Width of the image.
+	 * @param height: Height of the image.
+	 */
+	public static PixelSink of(int[] pixels, int width, int height)
+	{
+		if(pixels.length < width*height)
+			throw new IllegalArgumentException("Array of " + pixels.length + " pixels for " + width + "x" + height);
+		return new IntArray(pixels, width, height);
+	}
+
+	/**
+	 * 	Sets one pixel. Pixels outside the pixmap are ignored, like {@link Pixmap#drawPixel(int, int)} does.
+	 * @param x: Pixel column.
+	 * @param y: Pixel row.
+	 * @param color: RGBA8888 color.
+	 */
+	public void set(int x, int y, int color)
+	{
+		if(x >= 0 && y >= 0 && x < width && y < height)
+			put(x + y*width, color);
+	}
+
+	/**
+	 * 	Sets count consecutive pixels of the row y, starting at column x.
+	 * @param colors: RGBA8888 colors.
+	 * @param offset: Index of the first color in colors.
+	 * @param x: First pixel column.
+	 * @param y: Pixel row.
+	 * @param count: Number of pixels.
+	 */
+	public abstract void write(int[] colors, int offset, int x, int y, int count);
+
+	/**
+	 * 	Sets every pixel. The color of the pixel (x, y) is at colors[x + y*width].
+	 * @param colors: RGBA8888 colors.
+	 */
+	public void write(int[] colors)
+	{
+		write(colors, 0, 0, 0, width*height);
+	}
+
+	/**
+	 * 	Sets every pixel to color.
+	 * @param color: RGBA8888 color.
+	 */
+	public void fill(int color)
+	{
+		int[] row = new int[width];
+		Arrays.fill(row, color);
+		for(int y = 0; y < height; y++)
+			write(row, 0, 0, y, width);
+	}
+
+	/**
+	 * 	Sets the pixel at index to color.
+	 */
+	protected abstract void put(int index, int color);
+
+	/**
+	 * 	Gets the color that {@link Pixmap#drawPixel(int, int)} leaves when it blends color over a transparent pixel (RGB multiplied by alpha).
+	 * 	The alpha is calculated in float like the native blending does, so the result is exactly the same.
+	 * @param color: RGBA8888 color.
+	 */
+	public static int overTransparent(int color)
+	{
+		int srcA = color & 0xff;
+		int r = (color >>> 24) * srcA / 255;
+		int g = ((color >>> 16) & 0xff) * srcA / 255;
+		int b = ((color >>> 8) & 0xff) * srcA / 255;
+		int a = (int)((1.0f - (1.0f - srcA / 255.0f)) * 255);
+		return r << 24 | g << 16 | b << 8 | a;
+	}
+
+	/**
+	 * 	Sink for {@link Pixmap.Format#RGBA8888}. The bytes are stored R, G, B, A, so a big endian int is exactly the packed color.
+	 */
+	private static class Rgba8888 extends PixelSink
+	{
+		private final IntBuffer pixels;
+
+		Rgba8888(Pixmap pixmap)
+		{
+			super(pixmap.getWidth(), pixmap.getHeight());
+			ByteBuffer bytes = pixmap.getPixels().duplicate();
+			bytes.clear();
+			pixels = bytes.order(ByteOrder.BIG_ENDIAN).asIntBuffer();
+		}
+
+		@Override
+		public void write(int[] colors, int offset, int x, int y, int count)
+		{
+			pixels.position(x + y*width);
+			pixels.put(colors, offset, count);
+		}
+
+		@Override
+		protected void put(int index, int color)
+		{
+			pixels.put(index, color);
+		}
+	}
+
+	/**
+	 * 	Sink for a plain array of RGBA8888 colors.
+	 */
+	private static class IntArray extends PixelSink
+	{
+		private final int[] pixels;
+
+		IntArray(int[] pixels, int width, int height)
+		{
+			super(width, height);
+			this.pixels = pixels;
+		}
+
+		@Override
+		public void write(int[] colors, int offset, int x, int y, int count)
+		{
+			System.arraycopy(colors, offset, pixels, x + y*width, count);
+		}
+
+		@Override
+		protected void put(int index, int color)
+		{
+			pixels[index] = color;
+		}
+	}
+
+	/**
+	 * 	Sink for {@link Pixmap.Format#RGBA4444}. Pixels are native order shorts with 4 bits per channel.
+	 */
+	private static class Rgba4444 extends PixelSink
+	{
+		private final ShortBuffer pixels;
+		private short[] row = new short[0];
+
+		Rgba4444(Pixmap pixmap)
+		{
+			super(pixmap.getWidth(), pixmap.getHeight());
+			ByteBuffer bytes = pixmap.getPixels().duplicate();
+			bytes.clear();
+			pixels = bytes.order(ByteOrder.nativeOrder()).asShortBuffer();
+		}
+
+		private static short pack(int color)
+		{
+			return (short)(((color >>> 16) & 0xf000) | ((color >>> 12) & 0x0f00) | ((color >>> 8) & 0x00f0) | ((color >>> 4) & 0x000f));
+		}
+
+		@Override
+		public void write(int[] colors, int offset, int x, int y, int count)
+		{
+			if(row.length < count)
+				row = new short[count];
+			for(int i = 0; i < count; i++)
+				row[i] = pack(colors[offset + i]);
+			pixels.position(x + y*width);
+			pixels.put(row, 0, count);
+		}
+
+		@Override
+		protected void put(int index, int color)
+		{
+			pixels.put(index, pack(color));
+		}
+	}
+}
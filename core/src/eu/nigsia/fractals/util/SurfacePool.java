@@ -0,0 +1,111 @@
+package eu.nigsia.fractals.util;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.TextureRegion;
+import com.badlogic.gdx.utils.Disposable;
+
+/**
+ * 	This class owns the pixmaps and textures where a fractal is drawn. They are created once and updated in place, never allocated again.
+ * 	It's double buffered: the fractal is written to the back {@link Pixmap} and uploaded to the back {@link Texture} while the front one is still being drawn.
+ * 	{@link #swap()} uploads the back buffer and makes it the front one.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class SurfacePool implements Disposable
+{
+	/**
+	 * 	Number of buffers.
+	 */
+	private static final int BUFFERS = 2;
+
+	/**
+	 * 	CPU side of every buffer.
+	 */
+	private final Pixmap[] pixmaps = new Pixmap[BUFFERS];
+	/**
+	 * 	{@link PixelSink} of every pixmap.
+	 */
+	private final PixelSink[] sinks = new PixelSink[BUFFERS];
+	/**
+	 * 	GPU side of every buffer. They are created by the first upload.
+	 */
+	private final Texture[] textures = new Texture[BUFFERS];
+	/**
+	 * 	Region of every texture, returned by {@link #swap()}.
+	 */
+	private final TextureRegion[] regions = new TextureRegion[BUFFERS];
+
+	/**
+	 * 	Index of the back buffer.
+	 */
+	private int back = 0;
+	/**
+	 * 	Whether this pool was disposed or not.
+	 */
+	private boolean disposed = false;
+
+	/**
+	 * 	Creates the pixmaps of the pool. The textures are created on the first {@link #swap()}, since it must happen on the GL thread.
+	 * @param width: Width of the buffers.
+	 * @param height: Height of the buffers.
+	 * @param format: {@link Pixmap.Format#RGBA4444} or {@link Pixmap.Format#RGBA8888}.
+	 */
+	public SurfacePool(int width, int height, Pixmap.Format format)
+	{
+		for(int i = 0; i < BUFFERS; i++)
+		{
+			pixmaps[i] = NativeMemory.newPixmap(width, height, format);
+			sinks[i] = PixelSink.of(pixmaps[i]);
+		}
+	}
+
+	/**
+	 * 	Gets the back {@link Pixmap}. It holds what was drawn {@value #BUFFERS} swaps ago.
+	 */
+	public Pixmap getPixmap(){	return pixmaps[back];	}
+	/**
+	 * 	Gets the {@link PixelSink} of the back {@link Pixmap}.
+	 */
+	public PixelSink getSink(){	return sinks[back];	}
+
+	/**
+	 * 	Uploads the back {@link Pixmap} to its {@link Texture} and makes it the front buffer. It must be called from the GL thread.
+	 * @return The region of the texture that was just uploaded.
+	 */
+	public TextureRegion swap()
+	{
+		if(textures[back] == null)
+		{
+			textures[back] = NativeMemory.newTexture(pixmaps[back]);
+			regions[back] = new TextureRegion(textures[back]);
+		}
+		else
+			textures[back].draw(pixmaps[back], 0, 0);
+
+		TextureRegion front = regions[back];
+		back = (back + 1) % BUFFERS;
+		return front;
+	}
+
+	/**
+	 * 	Disposes every pixmap and texture. It must be called from the GL thread. It's safe to call it more than once.
+	 */
+	@Override
+	public void dispose()
+	{
+		if(disposed)
+			return;
+		disposed = true;
+		for(int i = 0; i < BUFFERS; i++)
+		{
+			NativeMemory.dispose(pixmaps[i]);
+			if(textures[i] != null)
+				NativeMemory.dispose(textures[i]);
+			pixmaps[i] = null;
+			sinks[i] = null;
+			textures[i] = null;
+			regions[i] = null;
+		}
+	}
+}
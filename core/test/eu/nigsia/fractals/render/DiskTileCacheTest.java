@@ -0,0 +1,300 @@
+package eu.nigsia.fractals.render;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * 	Checks the round trip of {@link DiskTileCache} through the file, its eviction, its lock and how it's rebuilt when the file is opened again.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class DiskTileCacheTest
+{
+	/**
+	 * 	Bytes of a slot of the file: a header of 32 bytes and 24 bytes per pixel of a 32x32 tile.
+	 */
+	private static final int SLOT = 32 + 24 * 32 * 32;
+	/**
+	 * 	Offset of the last use in the header of a slot.
+	 */
+	private static final int STAMP = 20;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTrip() throws IOException
+	{
+		DiskTileCache cache = new DiskTileCache(file(), 40L * SLOT);
+		try
+		{
+			assertEquals(40, cache.capacity());
+			IterationBuffer src = Tiles.buffer(64, 64, true, 1), out = new IterationBuffer(64, 64);
+			TileKey key = Tiles.key(1, 32, 32);
+			cache.store(key, src);
+			assertTrue(cache.load(key, out));
+			Tiles.assertTile(key, src, out);
+			assertFalse(cache.load(Tiles.key(2, 32, 32), out));
+			assertEquals(1, cache.size());
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	@Test
+	public void tilesWithoutOrbitsLoadNaN() throws IOException
+	{
+		DiskTileCache cache = new DiskTileCache(file(), 4L * SLOT);
+		try
+		{
+			IterationBuffer src = Tiles.buffer(32, 32, false, 1), out = Tiles.buffer(32, 32, true, 2);
+			TileKey key = Tiles.key(1, 0, 0);
+			cache.store(key, src);
+			assertTrue(cache.load(key, out));
+			Tiles.assertTile(key, src, out);
+			for (int i = 0; i < 32 * 32; i++)
+				assertTrue(Double.isNaN(out.zx[i]) && Double.isNaN(out.zy[i]));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsed() throws IOException
+	{
+		DiskTileCache cache = new DiskTileCache(file(), 32L * SLOT);
+		try
+		{
+			IterationBuffer src = Tiles.buffer(32, 32, true, 1), out = new IterationBuffer(32, 32);
+			TileKey used = Tiles.key(0, 0, 0);
+			cache.store(used, src);
+			for (int id = 1; id <= 500; id++)
+			{
+				cache.store(Tiles.key(id, 0, 0), src);
+				// Used after every store, so it's never the least recently used of its stripe
+				assertTrue("used after " + id + " stores", cache.load(used, out));
+				assertTrue(cache.size() <= cache.capacity());
+			}
+			assertEquals(cache.capacity(), cache.size());
+			assertFalse(cache.load(Tiles.key(1, 0, 0), out));
+			assertTrue(cache.load(Tiles.key(500, 0, 0), out));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	@Test
+	public void reopenKeepsTheTiles() throws IOException
+	{
+		File file = file();
+		DiskTileCache cache = new DiskTileCache(file, 32L * SLOT);
+		List<TileKey> stored = new ArrayList<TileKey>();
+		IterationBuffer out = new IterationBuffer(32, 32);
+		for (int id = 0; id < 100; id++)
+			cache.store(Tiles.key(id, 0, 0), Tiles.buffer(32, 32, true, id));
+		for (int id = 0; id < 100; id++)
+			if(cache.load(Tiles.key(id, 0, 0), out))
+				stored.add(Tiles.key(id, 0, 0));
+		assertEquals(cache.size(), stored.size());
+		cache.close();
+
+		cache = new DiskTileCache(file, 32L * SLOT);
+		try
+		{
+			assertEquals(stored.size(), cache.size());
+			for (TileKey key : stored)
+			{
+				assertTrue(cache.load(key, out));
+				Tiles.assertTile(key, Tiles.buffer(32, 32, true, key.centerX), out);
+			}
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	@Test
+	public void repeatedDigestsAreFreedOnReopen() throws IOException
+	{
+		File file = file();
+		DiskTileCache cache = new DiskTileCache(file, 40L * SLOT);
+		TileKey key = Tiles.key(0, 0, 0);
+		cache.store(key, Tiles.buffer(32, 32, true, 1));
+		cache.close();
+
+		// Copies the tile to the next slot of its stripe (16 slots later), as a newer tile with the same digest
+		RandomAccessFile raw = new RandomAccessFile(file, "rw");
+		try
+		{
+			int slot = usedSlot(raw, 40);
+			byte[] bytes = new byte[SLOT];
+			raw.seek((long)slot * SLOT);
+			raw.readFully(bytes);
+			raw.seek((long)(slot + 16) * SLOT);
+			raw.write(bytes);
+			raw.seek((long)(slot + 16) * SLOT + STAMP);
+			raw.writeLong(1000);
+		}
+		finally
+		{
+			raw.close();
+		}
+
+		cache = new DiskTileCache(file, 40L * SLOT);
+		try
+		{
+			assertEquals(1, cache.size());
+			IterationBuffer out = new IterationBuffer(32, 32);
+			assertTrue(cache.load(key, out));
+			Tiles.assertTile(key, Tiles.buffer(32, 32, true, 1), out);
+			// The slot of the older copy is free again: the file still holds as many tiles as it has slots
+			IterationBuffer src = Tiles.buffer(32, 32, true, 2);
+			for (int id = 1; id < 2000 && cache.size() < cache.capacity(); id++)
+				cache.store(Tiles.key(id, 0, 0), src);
+			assertEquals(cache.capacity(), cache.size());
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	@Test
+	public void resizingKeepsItUsable() throws IOException
+	{
+		File file = file();
+		DiskTileCache cache = new DiskTileCache(file, 40L * SLOT);
+		IterationBuffer src = Tiles.buffer(32, 32, true, 1), out = new IterationBuffer(32, 32);
+		for (int id = 0; id < 100; id++)
+			cache.store(Tiles.key(id, 0, 0), src);
+		cache.close();
+
+		cache = new DiskTileCache(file, 20L * SLOT);
+		try
+		{
+			assertEquals(20, cache.capacity());
+			assertTrue(cache.size() <= 20);
+			assertEquals(20L * SLOT, file.length());
+			cache.store(Tiles.key(1000, 0, 0), src);
+			assertTrue(cache.load(Tiles.key(1000, 0, 0), out));
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	@Test
+	public void theFileIsLocked() throws IOException
+	{
+		File file = file();
+		DiskTileCache cache = new DiskTileCache(file, 4L * SLOT);
+		try
+		{
+			new DiskTileCache(file, 4L * SLOT).close();
+			fail("A second cache opened the same file");
+		}
+		catch(IOException e)
+		{
+			// Expected: the caller goes on without a disk cache
+		}
+		finally
+		{
+			cache.close();
+		}
+		// Released when it's closed
+		new DiskTileCache(file, 4L * SLOT).close();
+	}
+
+	@Test
+	public void concurrentStoresAndLoads() throws Exception
+	{
+		final DiskTileCache cache = new DiskTileCache(file(), 64L * SLOT);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[4];
+		try
+		{
+			for (int t = 0; t < threads.length; t++)
+			{
+				final int thread = t;
+				threads[t] = new Thread()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							IterationBuffer out = new IterationBuffer(32, 32);
+							for (int i = 0; i < 200; i++)
+							{
+								int id = thread * 1000 + i % 50;
+								TileKey key = Tiles.key(id, 0, 0);
+								if(cache.load(key, out))
+									Tiles.assertTile(key, Tiles.buffer(32, 32, true, id), out);
+								else
+									cache.store(key, Tiles.buffer(32, 32, true, id));
+							}
+						}
+						catch(Throwable e)
+						{
+							error.compareAndSet(null, e);
+						}
+					}
+				};
+				threads[t].start();
+			}
+			for (Thread thread : threads)
+				thread.join();
+			assertNull(String.valueOf(error.get()), error.get());
+			assertTrue(cache.size() <= cache.capacity());
+		}
+		finally
+		{
+			cache.close();
+		}
+	}
+
+	/**
+	 * 	Gets a new file in the temporary folder. It doesn't exist yet.
+	 */
+	private File file()
+	{
+		return new File(folder.getRoot(), "tiles" + System.nanoTime() + ".cache");
+	}
+
+	/**
+	 * 	Finds the only slot of the file whose digest isn't empty.
+	 */
+	private static int usedSlot(RandomAccessFile raw, int slots) throws IOException
+	{
+		for (int slot = 0; slot < slots; slot++)
+		{
+			raw.seek((long)slot * SLOT);
+			for (int i = 0; i < 20; i++)
+				if(raw.read() != 0)
+					return slot;
+		}
+		throw new AssertionError("No tile in the file");
+	}
+}
@@ -0,0 +1,175 @@
+package eu.nigsia.fractals.render;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 	Checks the results of {@link MandelbrotEngine} against the plain double precision kernel, or a plain escape-time loop, on a few fixed views of the window.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class MandelbrotEngineTest
+{
+	/**
+	 * 	Default view of {@link eu.nigsia.fractals.state.MandelbrotState}, the whole set.
+	 */
+	private static final View DEFAULT = new View(250, 250, 150, 1000, 500, 500);
+	/**
+	 * 	View of the Z key of {@link eu.nigsia.fractals.state.MandelbrotState}.
+	 */
+	private static final View Z = new View(1552, 4840, 6380, 1000, 500, 500);
+	/**
+	 * 	The main cardioid and the period-2 bulb, mostly inside the set.
+	 */
+	private static final View INTERIOR = new View(400, 250, 300, 1000, 500, 500);
+	/**
+	 * 	The seahorse valley, mostly boundary.
+	 */
+	private static final View BOUNDARY = new View(1300, 500, 1000, 1000, 500, 500);
+	/**
+	 * 	Every reference view.
+	 */
+	private static final View[] VIEWS = { DEFAULT, Z, INTERIOR, BOUNDARY };
+
+	@Test
+	public void singlePrecisionIsOnByDefault()
+	{
+		assertTrue(new MandelbrotEngine().isSinglePrecision());
+	}
+
+	@Test
+	public void singlePrecisionMatchesDouble()
+	{
+		MandelbrotEngine engine = new MandelbrotEngine();
+		for (View view : VIEWS)
+		{
+			IterationBuffer out = new IterationBuffer(view.width, view.height);
+			assertTrue(engine.render(view, out, Kernel.FLOAT, CancelToken.NONE));
+			KernelDiff diff = engine.compare(view, out, Kernel.DOUBLE, CancelToken.NONE);
+			assertEquals(view + ": " + diff, 0, diff.mismatches);
+		}
+	}
+
+	@Test
+	public void interiorDetectionMatchesBaseline()
+	{
+		MandelbrotEngine engine = new MandelbrotEngine();
+		for (View view : VIEWS)
+		{
+			IterationBuffer out = new IterationBuffer(view.width, view.height);
+			assertTrue(engine.render(view, out, Kernel.DOUBLE, CancelToken.NONE));
+			assertSamePixels(view, baseline(view), out, true);
+		}
+
+		// The cardioid, the bulb and the cycles are really found, not just iterated up to maxIter
+		IterationBuffer out = new IterationBuffer(INTERIOR.width, INTERIOR.height);
+		engine.render(INTERIOR, out, Kernel.DOUBLE, CancelToken.NONE);
+		int interior = 0;
+		for (int i = 0; i < out.size(); i++)
+			if(out.iterations[i] == MandelbrotKernel.INTERIOR)
+				interior++;
+		assertTrue(interior > out.size() / 4);
+	}
+
+	@Test
+	public void subdivisionMatchesBaseline()
+	{
+		MandelbrotEngine engine = new MandelbrotEngine();
+		engine.setSubdividing(true);
+		for (View view : VIEWS)
+		{
+			IterationBuffer out = new IterationBuffer(view.width, view.height);
+			engine.render(view, out);
+			// The filled pixels have the count of their border, not their own smooth count
+			assertSamePixels(view, baseline(view), out, false);
+
+			// Some rectangles were really filled: their orbits are unknown
+			int filled = 0;
+			for (int i = 0; i < out.size(); i++)
+				if(Double.isNaN(out.zx[i]))
+					filled++;
+			assertTrue(view.toString(), filled > 0);
+		}
+	}
+
+	@Test
+	public void panMatchesFreshRender()
+	{
+		MandelbrotEngine engine = new MandelbrotEngine();
+		int[][] pans = { {37, -21}, {-50, 80}, {120, 0}, {0, -5} };
+		for (View view : VIEWS)
+			for (int[] pan : pans)
+			{
+				// The passes of the pipeline keep the first view, so the second one only calculates the exposed strips
+				PassRenderer passes = new PassRenderer(engine, new DeepEngine());
+				passes.render(view, CancelToken.NONE);
+				assertTrue(passes.poll().isFinal());
+				View panned = new View(view.centerX + pan[0], view.centerY + pan[1], view.zoom, view.maxIter, view.width, view.height);
+				passes.render(panned, CancelToken.NONE);
+				Frame frame = passes.poll();
+				assertTrue(frame.isFinal());
+
+				IterationBuffer fresh = new IterationBuffer(view.width, view.height);
+				engine.render(panned, fresh);
+				assertSamePixels(panned, fresh, frame.buffer, true);
+			}
+	}
+
+	@Test
+	public void resumeMatchesFullRender()
+	{
+		MandelbrotEngine engine = new MandelbrotEngine();
+		for (View view : VIEWS)
+		{
+			View shallow = new View(view.centerX, view.centerY, view.zoom, view.maxIter / 4, view.width, view.height);
+			IterationBuffer out = new IterationBuffer(view.width, view.height);
+			engine.render(shallow, out);
+			assertTrue(engine.resume(view, out, CancelToken.NONE));
+
+			IterationBuffer full = new IterationBuffer(view.width, view.height);
+			engine.render(view, full);
+			assertSamePixels(view, full, out, true);
+		}
+	}
+
+	/**
+	 * 	Calculates view with a plain escape-time loop: no cardioid test, no cycle detection, no tiles.
+	 */
+	private static IterationBuffer baseline(View view)
+	{
+		IterationBuffer out = new IterationBuffer(view.width, view.height);
+		for (int py = 0; py < view.height; py++)
+			for (int px = 0; px < view.width; px++)
+			{
+				double cX = view.re(px), cY = view.im(py);
+				double zx = 0, zy = 0, tmp;
+				int iter = 0;
+				while (zx * zx + zy * zy < 4.0 && iter < view.maxIter)
+				{
+					tmp = zx * zx - zy * zy + cX;
+					zy = 2.0 * zx * zy + cY;
+					zx = tmp;
+					iter++;
+				}
+				out.set(px + py*view.width, iter, MandelbrotKernel.smooth(iter, view.maxIter, zx * zx + zy * zy), zx, zy);
+			}
+		return out;
+	}
+
+	/**
+	 * 	Asserts that every pixel of actual has the iterations of expected, counting every pixel that didn't escape as maxIter, and optionally its smooth count.
+	 * @param smooth: Whether the smooth counts of the escaped pixels must be the same too.
+	 */
+	private static void assertSamePixels(View view, IterationBuffer expected, IterationBuffer actual, boolean smooth)
+	{
+		for (int i = 0; i < view.size(); i++)
+		{
+			int iter = Math.min(expected.iterations[i], view.maxIter);
+			assertEquals(view + ", pixel " + i, iter, Math.min(actual.iterations[i], view.maxIter));
+			if(smooth && iter < view.maxIter)
+				assertEquals(view + ", pixel " + i, expected.smooth[i], actual.smooth[i], 0);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package eu.nigsia.fractals.render;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 	Checks the round trip, the eviction by bytes and the chaining of {@link MemoryTileCache}.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class MemoryTileCacheTest
+{
+	/**
+	 * 	Bytes of a tile of 32x32 pixels with its orbits.
+	 */
+	private static final long TILE_BYTES = 128 + 24 * 32 * 32;
+
+	@Test
+	public void roundTrip()
+	{
+		MemoryTileCache cache = new MemoryTileCache(1 << 20, null);
+		IterationBuffer src = Tiles.buffer(64, 64, true, 1);
+		TileKey key = Tiles.key(1, 32, 32);
+		cache.store(key, src);
+		IterationBuffer out = new IterationBuffer(64, 64);
+		assertTrue(cache.load(key, out));
+		Tiles.assertTile(key, src, out);
+		assertFalse(cache.load(Tiles.key(2, 32, 32), out));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void tilesWithoutOrbitsLoadNaN()
+	{
+		MemoryTileCache cache = new MemoryTileCache(1 << 20, null);
+		IterationBuffer src = Tiles.buffer(32, 32, false, 1);
+		TileKey key = Tiles.key(1, 0, 0);
+		cache.store(key, src);
+		IterationBuffer out = Tiles.buffer(32, 32, true, 2);
+		assertTrue(cache.load(key, out));
+		assertArrayEquals(src.iterations, out.iterations);
+		for (int i = 0; i < 32 * 32; i++)
+		{
+			assertTrue(Double.isNaN(out.zx[i]));
+			assertTrue(Double.isNaN(out.zy[i]));
+		}
+		assertEquals(128 + 8 * 32 * 32, cache.getBytes());
+	}
+
+	@Test
+	public void evictsTheLeastRecentlyUsed()
+	{
+		MemoryTileCache cache = new MemoryTileCache(3 * TILE_BYTES, null);
+		IterationBuffer src = Tiles.buffer(32, 32, true, 1), out = new IterationBuffer(32, 32);
+		cache.store(Tiles.key(0, 0, 0), src);
+		cache.store(Tiles.key(1, 0, 0), src);
+		cache.store(Tiles.key(2, 0, 0), src);
+		assertTrue(cache.load(Tiles.key(0, 0, 0), out));
+		cache.store(Tiles.key(3, 0, 0), src);
+		assertEquals(3, cache.size());
+		assertEquals(3 * TILE_BYTES, cache.getBytes());
+		assertTrue(cache.load(Tiles.key(0, 0, 0), out));
+		assertFalse(cache.load(Tiles.key(1, 0, 0), out));
+		assertTrue(cache.load(Tiles.key(2, 0, 0), out));
+		assertTrue(cache.load(Tiles.key(3, 0, 0), out));
+	}
+
+	@Test
+	public void replacingATileKeepsTheBytes()
+	{
+		MemoryTileCache cache = new MemoryTileCache(1 << 20, null);
+		cache.store(Tiles.key(0, 0, 0), Tiles.buffer(32, 32, true, 1));
+		IterationBuffer second = Tiles.buffer(32, 32, true, 2), out = new IterationBuffer(32, 32);
+		cache.store(Tiles.key(0, 0, 0), second);
+		assertEquals(1, cache.size());
+		assertEquals(TILE_BYTES, cache.getBytes());
+		assertTrue(cache.load(Tiles.key(0, 0, 0), out));
+		Tiles.assertTile(Tiles.key(0, 0, 0), second, out);
+	}
+
+	@Test
+	public void tilesBiggerThanTheCacheAreNotStored()
+	{
+		MemoryTileCache cache = new MemoryTileCache(TILE_BYTES - 1, null);
+		cache.store(Tiles.key(0, 0, 0), Tiles.buffer(32, 32, true, 1));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getBytes());
+	}
+
+	@Test
+	public void chainsToTheNextCache()
+	{
+		MemoryTileCache next = new MemoryTileCache(1 << 20, null);
+		MemoryTileCache cache = new MemoryTileCache(1 << 20, next);
+		assertEquals(next, cache.getNext());
+		IterationBuffer src = Tiles.buffer(32, 32, true, 1), out = new IterationBuffer(32, 32);
+		TileKey key = Tiles.key(0, 0, 0);
+
+		// Stored in both
+		cache.store(key, src);
+		assertEquals(1, next.size());
+
+		// Found in the next one and kept
+		cache.clear();
+		assertTrue(cache.load(key, out));
+		Tiles.assertTile(key, src, out);
+		assertEquals(1, next.getHits());
+		assertEquals(1, cache.size());
+		assertTrue(cache.load(key, out));
+		assertEquals(1, next.getHits());
+
+		assertFalse(cache.load(Tiles.key(1, 0, 0), out));
+		assertEquals(1, next.getMisses());
+		assertNull(next.getNext());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsEmptyCaches()
+	{
+		new MemoryTileCache(0, null);
+	}
+}
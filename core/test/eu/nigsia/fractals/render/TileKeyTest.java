@@ -0,0 +1,87 @@
+package eu.nigsia.fractals.render;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 	Checks that {@link TileKey} tells apart every tile that can have different pixels, and that its digest is stable.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class TileKeyTest
+{
+	private static final View VIEW = new View(-150, 20, 200, 500, 96, 64);
+
+	@Test
+	public void equalKeys()
+	{
+		TileKey a = key(VIEW, Kernel.DOUBLE, false, 32, 0), b = key(new View(-150, 20, 200, 500, 96, 64), Kernel.DOUBLE, false, 32, 0);
+		assertEquals(a, b);
+		assertEquals(a.hashCode(), b.hashCode());
+		assertEquals(a.toString(), b.toString());
+		assertArrayEquals(DiskTileCache.digest(a), DiskTileCache.digest(b));
+		assertEquals(20, DiskTileCache.digest(a).length);
+	}
+
+	@Test
+	public void vectorKernelsDontShareTheirTiles()
+	{
+		assertNotEquals(key(VIEW, Kernel.DOUBLE, false, 0, 0), key(VIEW, Kernel.DOUBLE_VECTOR, false, 0, 0));
+		assertNotEquals(key(VIEW, Kernel.FLOAT, false, 0, 0), key(VIEW, Kernel.FLOAT_VECTOR, false, 0, 0));
+		assertFalse(Arrays.equals(DiskTileCache.digest(key(VIEW, Kernel.DOUBLE, false, 0, 0)), DiskTileCache.digest(key(VIEW, Kernel.DOUBLE_VECTOR, false, 0, 0))));
+	}
+
+	@Test
+	public void versionIsPartOfTheDigest()
+	{
+		assertTrue(key(VIEW, Kernel.DOUBLE, false, 0, 0).toString().startsWith("v" + TileKey.VERSION + "/"));
+	}
+
+	@Test
+	public void everyFieldCounts()
+	{
+		TileKey key = key(VIEW, Kernel.DOUBLE, false, 32, 0);
+		TileKey[] others = {
+			new TileKey("julia", VIEW, Kernel.DOUBLE, false, 32, 0, 32, 32),
+			key(new View(-149, 20, 200, 500, 96, 64), Kernel.DOUBLE, false, 32, 0),
+			key(new View(-150, 21, 200, 500, 96, 64), Kernel.DOUBLE, false, 32, 0),
+			key(new View(-150, 20, Math.nextUp(200.0), 500, 96, 64), Kernel.DOUBLE, false, 32, 0),
+			key(new View(-150, 20, 200, 501, 96, 64), Kernel.DOUBLE, false, 32, 0),
+			key(VIEW, Kernel.FLOAT, false, 32, 0),
+			key(VIEW, Kernel.DOUBLE_VECTOR, false, 32, 0),
+			key(VIEW, Kernel.DOUBLE, true, 32, 0),
+			key(VIEW, Kernel.DOUBLE, false, 0, 0),
+			key(VIEW, Kernel.DOUBLE, false, 32, 32),
+			new TileKey("mandelbrot", VIEW, Kernel.DOUBLE, false, 32, 0, 31, 32),
+			new TileKey("mandelbrot", VIEW, Kernel.DOUBLE, false, 32, 0, 32, 31),
+		};
+		for (TileKey other : others)
+		{
+			assertNotEquals(other.toString(), key, other);
+			assertNotEquals(other.toString(), key.toString(), other.toString());
+			assertFalse(other.toString(), Arrays.equals(DiskTileCache.digest(key), DiskTileCache.digest(other)));
+		}
+	}
+
+	@Test
+	public void signedZeroZoomsAreDifferent()
+	{
+		TileKey positive = key(new View(0, 0, 0.0, 100, 32, 32), Kernel.DOUBLE, false, 0, 0);
+		TileKey negative = key(new View(0, 0, -0.0, 100, 32, 32), Kernel.DOUBLE, false, 0, 0);
+		// equals() and the digest must agree, or the memory and disk caches would disagree
+		assertNotEquals(positive, negative);
+		assertFalse(Arrays.equals(DiskTileCache.digest(positive), DiskTileCache.digest(negative)));
+	}
+
+	private static TileKey key(View view, Kernel kernel, boolean subdivided, int x, int y)
+	{
+		return new TileKey("mandelbrot", view, kernel, subdivided, x, y, 32, 32);
+	}
+}
@@ -0,0 +1,59 @@
+package eu.nigsia.fractals.render;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 	Tiles and buffers shared by the tests of the caches.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+final class Tiles
+{
+	private Tiles(){}
+
+	/**
+	 * 	Gets the key of the tile of 32x32 pixels at (x, y) of a view that is different for every id.
+	 */
+	static TileKey key(int id, int x, int y)
+	{
+		return new TileKey("mandelbrot", new View(id, 0, 200, 500, 64, 64), Kernel.DOUBLE, false, x, y, 32, 32);
+	}
+
+	/**
+	 * 	Gets a buffer whose every pixel is different and depends on seed.
+	 */
+	static IterationBuffer buffer(int width, int height, boolean orbits, int seed)
+	{
+		IterationBuffer buffer = new IterationBuffer(width, height, orbits);
+		for (int i = 0; i < width * height; i++)
+		{
+			buffer.iterations[i] = seed * 100000 + i;
+			buffer.smooth[i] = seed + i / 7f;
+			if(orbits)
+			{
+				buffer.zx[i] = seed - i / 3.0;
+				buffer.zy[i] = seed * Math.PI + i;
+			}
+		}
+		return buffer;
+	}
+
+	/**
+	 * 	Checks that the pixels of the tile of key in out are the ones of src, bit by bit.
+	 */
+	static void assertTile(TileKey key, IterationBuffer src, IterationBuffer out)
+	{
+		for (int py = key.y; py < key.y + key.height; py++)
+			for (int px = key.x; px < key.x + key.width; px++)
+			{
+				int s = px + py * src.width, o = px + py * out.width;
+				assertEquals(src.iterations[s], out.iterations[o]);
+				assertEquals(Float.floatToIntBits(src.smooth[s]), Float.floatToIntBits(out.smooth[o]));
+				if(src.hasOrbits() && out.hasOrbits())
+				{
+					assertEquals(Double.doubleToLongBits(src.zx[s]), Double.doubleToLongBits(out.zx[o]));
+					assertEquals(Double.doubleToLongBits(src.zy[s]), Double.doubleToLongBits(out.zy[o]));
+				}
+			}
+	}
+}
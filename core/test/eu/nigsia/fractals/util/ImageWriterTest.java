@@ -0,0 +1,219 @@
+package eu.nigsia.fractals.util;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.InflaterInputStream;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 	Checks the opaque PNG written by {@link ImageWriter} byte by byte (chunks, CRCs and the <i>Sub</i> filter) and decoded by {@link ImageIO}, and the raw RGBA format.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class ImageWriterTest
+{
+	private static final byte[] SIGNATURE = { (byte)0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n' };
+
+	@Test
+	public void pngDecodesToTheSamePixels() throws IOException
+	{
+		int w = 37, h = 23;
+		int[] colors = noise(w, h, 1);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(png(colors, w, h, 5)));
+		assertEquals(w, image.getWidth());
+		assertEquals(h, image.getHeight());
+		for (int y = 0; y < h; y++)
+			for (int x = 0; x < w; x++)
+			{
+				int c = colors[x + y * w];
+				// RGBA to opaque ARGB
+				assertEquals("pixel " + x + ", " + y, (c >>> 8) | 0xff000000, image.getRGB(x, y));
+			}
+	}
+
+	@Test
+	public void pngChunksAndCrcs() throws IOException
+	{
+		// Noise doesn't compress, so the data takes several IDAT chunks. chunks() checks the CRC of every one.
+		int w = 300, h = 200;
+		List<Chunk> chunks = chunks(png(noise(w, h, 2), w, h, h));
+		assertEquals("IHDR", chunks.get(0).type);
+		ByteBuffer header = ByteBuffer.wrap(chunks.get(0).data);
+		assertEquals(13, header.capacity());
+		assertEquals(w, header.getInt(0));
+		assertEquals(h, header.getInt(4));
+		assertEquals(8, header.get(8)); // Bits per channel
+		assertEquals(2, header.get(9)); // RGB
+		assertEquals("IEND", chunks.get(chunks.size() - 1).type);
+		assertEquals(0, chunks.get(chunks.size() - 1).data.length);
+
+		int idat = 0;
+		for (Chunk chunk : chunks.subList(1, chunks.size() - 1))
+		{
+			assertEquals("IDAT", chunk.type);
+			assertTrue(chunk.data.length <= 1 << 16);
+			idat++;
+		}
+		assertTrue(idat + " IDAT chunks", idat > 1);
+	}
+
+	@Test
+	public void pngRowsUseTheSubFilter() throws IOException
+	{
+		int w = 16, h = 9;
+		int[] colors = noise(w, h, 3);
+		ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+		for (Chunk chunk : chunks(png(colors, w, h, 2)))
+			if(chunk.type.equals("IDAT"))
+				compressed.write(chunk.data);
+		DataInputStream data = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(compressed.toByteArray())));
+		byte[] row = new byte[1 + 3 * w];
+		for (int y = 0; y < h; y++)
+		{
+			data.readFully(row);
+			assertEquals("filter of row " + y, 1, row[0]);
+			// Sub: every byte is the difference with the same channel of the pixel on its left
+			for (int i = 4; i < row.length; i++)
+				row[i] += row[i - 3];
+			for (int x = 0; x < w; x++)
+			{
+				int rgb = (row[1 + 3*x] & 0xff) << 16 | (row[2 + 3*x] & 0xff) << 8 | (row[3 + 3*x] & 0xff);
+				assertEquals("pixel " + x + ", " + y, colors[x + y * w] >>> 8, rgb);
+			}
+		}
+		assertEquals(-1, data.read());
+	}
+
+	@Test
+	public void rawIsBigEndianRgba() throws IOException
+	{
+		int w = 5, h = 4;
+		int[] colors = noise(w, h, 4);
+		File file = File.createTempFile("image", ".rgba");
+		try
+		{
+			ImageWriter writer = ImageWriter.create(file, w, h);
+			writer.write(colors, h);
+			writer.close();
+			ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+			int[] read = new int[w * h];
+			bytes.asIntBuffer().get(read);
+			assertEquals(4 * w * h, bytes.capacity());
+			assertArrayEquals(colors, read);
+		}
+		finally
+		{
+			file.delete();
+		}
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void tooManyRows() throws IOException
+	{
+		ImageWriter writer = ImageWriter.png(new ByteArrayOutputStream(), 2, 2);
+		writer.write(new int[6], 3);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void closingAnIncompleteImage() throws IOException
+	{
+		ImageWriter writer = ImageWriter.png(new ByteArrayOutputStream(), 2, 2);
+		writer.write(new int[2], 1);
+		writer.close();
+	}
+
+	/**
+	 * 	Gets random RGBA8888 colors.
+	 */
+	private static int[] noise(int width, int height, long seed)
+	{
+		Random random = new Random(seed);
+		int[] colors = new int[width * height];
+		for (int i = 0; i < colors.length; i++)
+			colors[i] = random.nextInt();
+		return colors;
+	}
+
+	/**
+	 * 	Writes a PNG, rows at a time.
+	 */
+	private static byte[] png(int[] colors, int width, int height, int rows) throws IOException
+	{
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageWriter writer = ImageWriter.png(out, width, height);
+		int[] block = new int[rows * width];
+		for (int y = 0; y < height; y += rows)
+		{
+			int n = Math.min(rows, height - y);
+			System.arraycopy(colors, y * width, block, 0, n * width);
+			writer.write(block, n);
+		}
+		writer.close();
+		assertEquals(height, writer.getRows());
+		return out.toByteArray();
+	}
+
+	/**
+	 * 	Reads the chunks of a PNG, checking its signature and the CRC of every chunk.
+	 */
+	private static List<Chunk> chunks(byte[] png) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(png));
+		byte[] signature = new byte[SIGNATURE.length];
+		in.readFully(signature);
+		assertArrayEquals(SIGNATURE, signature);
+		List<Chunk> chunks = new ArrayList<Chunk>();
+		while(true)
+		{
+			int length;
+			try
+			{
+				length = in.readInt();
+			}
+			catch(EOFException e)
+			{
+				return chunks;
+			}
+			byte[] type = new byte[4];
+			byte[] data = new byte[length];
+			in.readFully(type);
+			in.readFully(data);
+			CRC32 crc = new CRC32();
+			crc.update(type);
+			crc.update(data);
+			Chunk chunk = new Chunk(new String(type, "US-ASCII"), data);
+			assertEquals("CRC of " + chunk.type, (int)crc.getValue(), in.readInt());
+			chunks.add(chunk);
+		}
+	}
+
+	private static final class Chunk
+	{
+		private final String type;
+		private final byte[] data;
+
+		Chunk(String type, byte[] data)
+		{
+			this.type = type;
+			this.data = data;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+package eu.nigsia.fractals.util;
+
+import java.nio.ByteBuffer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.badlogic.gdx.graphics.Pixmap;
+import com.badlogic.gdx.utils.GdxNativesLoader;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 	Checks that {@link PixelSink} packs the colors exactly like the native {@link Pixmap} calls it replaces.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class PixelSinkTest
+{
+	/**
+	 * 	Colors with every channel different, including the extremes of every channel.
+	 */
+	private static final int[] COLORS = { 0x00000000, 0xffffffff, 0x12345678, 0x87654321, 0xff000080, 0x00ff00ff, 0x0000ff01, 0xfedcba98, 0x0f0f0f0f, 0xf0f0f0f0 };
+
+	@BeforeClass
+	public static void loadNatives()
+	{
+		GdxNativesLoader.load();
+	}
+
+	@Test
+	public void rgba8888IsTheSameAsGetPixel()
+	{
+		Pixmap pixmap = new Pixmap(COLORS.length, 3, Pixmap.Format.RGBA8888);
+		try
+		{
+			PixelSink sink = PixelSink.of(pixmap);
+			sink.write(COLORS, 0, 0, 1, COLORS.length);
+			for (int x = 0; x < COLORS.length; x++)
+				assertEquals("pixel " + x, COLORS[x], pixmap.getPixel(x, 1));
+		}
+		finally
+		{
+			pixmap.dispose();
+		}
+	}
+
+	@Test
+	public void rgba4444KeepsTheHighNibbles()
+	{
+		Pixmap pixmap = new Pixmap(COLORS.length, 3, Pixmap.Format.RGBA4444);
+		try
+		{
+			PixelSink sink = PixelSink.of(pixmap);
+			sink.write(COLORS, 0, 0, 2, COLORS.length);
+			for (int x = 0; x < COLORS.length; x++)
+			{
+				// getPixel expands every 4 bit channel n to n * 17
+				int expected = (COLORS[x] & 0xf0f0f0f0) | ((COLORS[x] >>> 4) & 0x0f0f0f0f);
+				assertEquals("pixel " + x, expected, pixmap.getPixel(x, 2));
+			}
+		}
+		finally
+		{
+			pixmap.dispose();
+		}
+	}
+
+	@Test
+	public void rgba4444IsTheSameAsDrawPixel()
+	{
+		Pixmap drawn = new Pixmap(COLORS.length, 1, Pixmap.Format.RGBA4444);
+		Pixmap sunk = new Pixmap(COLORS.length, 1, Pixmap.Format.RGBA4444);
+		Pixmap.Blending blending = Pixmap.getBlending();
+		try
+		{
+			Pixmap.setBlending(Pixmap.Blending.None);
+			PixelSink sink = PixelSink.of(sunk);
+			for (int x = 0; x < COLORS.length; x++)
+			{
+				drawn.setColor(COLORS[x]);
+				drawn.drawPixel(x, 0);
+				sink.set(x, 0, COLORS[x]);
+			}
+			assertArrayEquals(bytes(drawn), bytes(sunk));
+		}
+		finally
+		{
+			Pixmap.setBlending(blending);
+			drawn.dispose();
+			sunk.dispose();
+		}
+	}
+
+	@Test
+	public void overTransparentIsTheSameAsBlending()
+	{
+		Pixmap pixmap = new Pixmap(1, 1, Pixmap.Format.RGBA8888);
+		Pixmap.Blending blending = Pixmap.getBlending();
+		try
+		{
+			Pixmap.setBlending(Pixmap.Blending.SourceOver);
+			for (int color : COLORS)
+			{
+				PixelSink.of(pixmap).set(0, 0, 0);
+				pixmap.setColor(color);
+				pixmap.drawPixel(0, 0);
+				assertEquals(Integer.toHexString(color), pixmap.getPixel(0, 0), PixelSink.overTransparent(color));
+			}
+		}
+		finally
+		{
+			Pixmap.setBlending(blending);
+			pixmap.dispose();
+		}
+	}
+
+	@Test
+	public void setIgnoresPixelsOutside()
+	{
+		int[] pixels = new int[4 * 3];
+		PixelSink sink = PixelSink.of(pixels, 4, 3);
+		sink.set(-1, 0, 1);
+		sink.set(4, 0, 1);
+		sink.set(0, -1, 1);
+		sink.set(0, 3, 1);
+		sink.set(3, 2, 7);
+		int[] expected = new int[4 * 3];
+		expected[3 + 2 * 4] = 7;
+		assertArrayEquals(expected, pixels);
+	}
+
+	@Test
+	public void writeCopiesFromTheOffset()
+	{
+		int[] pixels = new int[4 * 2];
+		PixelSink sink = PixelSink.of(pixels, 4, 2);
+		sink.fill(9);
+		sink.write(new int[]{ 1, 2, 3, 4 }, 1, 1, 1, 2);
+		assertArrayEquals(new int[]{ 9, 9, 9, 9, 9, 2, 3, 9 }, pixels);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsShortArrays()
+	{
+		PixelSink.of(new int[11], 4, 3);
+	}
+
+	/**
+	 * 	Gets a copy of the pixels of pixmap.
+	 */
+	private static byte[] bytes(Pixmap pixmap)
+	{
+		ByteBuffer pixels = pixmap.getPixels().duplicate();
+		pixels.clear();
+		byte[] bytes = new byte[pixels.remaining()];
+		pixels.get(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,258 @@
+package eu.nigsia.fractals.desktop;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import eu.nigsia.fractals.Main;
+import eu.nigsia.fractals.render.CancelToken;
+import eu.nigsia.fractals.render.IterationBuffer;
+import eu.nigsia.fractals.render.MandelbrotEngine;
+import eu.nigsia.fractals.render.Palette;
+import eu.nigsia.fractals.render.View;
+import eu.nigsia.fractals.util.ImageWriter;
+
+/**
+ * 	Headless renderer of the Mandelbrot set for images far bigger than the window, like 32768x32768 posters. It needs no window nor OpenGL.
+ * 	The image is calculated in bands of full rows with every core ({@link MandelbrotEngine}) and each band is colored and streamed to the file
+ * 	by another thread while the next one is calculated. Only two bands are in memory at once, so the memory doesn't depend on the height of the image.
+ *
+ *  Usage: PosterRenderer [options] output.png|output.raw
+ *
+ * 	A <i>.png</i> is opaque: the interior of the classic palette, which is transparent, comes out black. A <i>.raw</i> file keeps the RGBA8888 colors of the palette as they are, 4 bytes per pixel.
+ *
+ * 	--width, --height: Size of the image in pixels (4096x4096 by default).
+ * 	--re, --im: Point of the complex plane at the center of the image (0, 0 by default).
+ * 	--zoom: Zoom as in the window ({@value #DEFAULT_ZOOM} by default). The image shows what the window would show across its width, with more pixels.
+ * 	--iter: MAX_ITER ({@value #DEFAULT_ITER} by default).
+ * 	--palette: classic or smooth (classic by default).
+ * 	--bitshift: Color bitshift of the classic palette ({@value #DEFAULT_BITSHIFT} by default).
+ * 	--band: Rows per band ({@value #DEFAULT_BAND} by default). Memory is about 24 bytes per pixel of a band.
+ * 	--subdivide: Use Mariani-Silver subdivision.
+ * 	--float: Let shallow views be calculated in single precision. Posters are calculated in double precision by default.
+ *
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class PosterRenderer
+{
+	private static final int DEFAULT_SIZE = 4096;
+	private static final double DEFAULT_ZOOM = 150;
+	private static final int DEFAULT_ITER = 1000;
+	private static final int DEFAULT_BITSHIFT = 4;
+	private static final int DEFAULT_BAND = MandelbrotEngine.TILE_SIZE;
+
+	/**
+	 * 	Size of the image.
+	 */
+	private int width = DEFAULT_SIZE, height = DEFAULT_SIZE;
+	/**
+	 * 	Center of the image in the complex plane.
+	 */
+	private double re = 0, im = 0;
+	/**
+	 * 	Zoom as in the window.
+	 */
+	private double zoom = DEFAULT_ZOOM;
+	/**
+	 * 	Maximum number of iterations.
+	 */
+	private int maxIter = DEFAULT_ITER;
+	/**
+	 * 	Rows per band.
+	 */
+	private int band = DEFAULT_BAND;
+	/**
+	 * 	Colors of the image.
+	 */
+	private final Palette palette = new Palette(DEFAULT_BITSHIFT);
+	/**
+	 * 	Engine that calculates every band.
+	 */
+	private final MandelbrotEngine engine = new MandelbrotEngine();
+	/**
+	 * 	File to write.
+	 */
+	private File output;
+
+	public static void main(String[] args) throws Exception
+	{
+		PosterRenderer poster = new PosterRenderer();
+		try
+		{
+			poster.parse(args);
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: PosterRenderer [--width w] [--height h] [--re x] [--im y] [--zoom z] [--iter n] [--palette classic|smooth] [--bitshift b] [--band rows] [--subdivide] [--float] output.png|output.raw");
+			System.exit(1);
+		}
+		poster.render();
+	}
+
+	/**
+	 * 	Reads the options of the command line.
+	 */
+	private void parse(String[] args)
+	{
+		engine.setSinglePrecision(false);
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if(!arg.startsWith("--"))
+			{
+				if(output != null)
+					throw new IllegalArgumentException("More than one output file");
+				output = new File(arg);
+				continue;
+			}
+			if(arg.equals("--subdivide"))
+			{
+				engine.setSubdividing(true);
+				continue;
+			}
+			if(arg.equals("--float"))
+			{
+				engine.setSinglePrecision(true);
+				continue;
+			}
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value of " + arg);
+			String value = args[++i];
+			try
+			{
+				if(arg.equals("--width"))
+					width = Integer.parseInt(value);
+				else if(arg.equals("--height"))
+					height = Integer.parseInt(value);
+				else if(arg.equals("--re"))
+					re = Double.parseDouble(value);
+				else if(arg.equals("--im"))
+					im = Double.parseDouble(value);
+				else if(arg.equals("--zoom"))
+					zoom = Double.parseDouble(value);
+				else if(arg.equals("--iter"))
+					maxIter = Integer.parseInt(value);
+				else if(arg.equals("--palette"))
+					palette.setMode(Palette.Mode.valueOf(value.toUpperCase()));
+				else if(arg.equals("--bitshift"))
+					palette.setBitshift(Integer.parseInt(value));
+				else if(arg.equals("--band"))
+					band = Integer.parseInt(value);
+				else
+					throw new IllegalArgumentException("Unknown option " + arg);
+			}
+			catch(NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Wrong value of " + arg + ": " + value);
+			}
+		}
+		if(output == null)
+			throw new IllegalArgumentException("Missing output file");
+		if(width <= 0 || height <= 0 || band <= 0 || maxIter <= 0 || zoom <= 0)
+			throw new IllegalArgumentException("Sizes, zoom and iterations must be positive");
+	}
+
+	/**
+	 * 	Calculates every band and streams it to {@link #output}.
+	 */
+	private void render() throws IOException, InterruptedException
+	{
+		// Pixels per unit of the image, and the pixel where the origin is (View's center)
+		double pixelZoom = zoom * width / Main.WIDTH;
+		long centerX = Math.round(width / 2.0 - re * pixelZoom);
+		long centerY = Math.round(height / 2.0 - im * pixelZoom);
+		if(Math.abs(centerX) > Integer.MAX_VALUE / 2 || Math.abs(centerY) > Integer.MAX_VALUE / 2)
+			throw new IllegalArgumentException("The center is too far away for this zoom");
+
+		System.out.println("Rendering " + width + "x" + height + " at " + re + (im < 0 ? " - " : " + ") + Math.abs(im) + "i, zoom " + zoom + ", " + maxIter + " iterations");
+		final ImageWriter writer = ImageWriter.create(output, width, height);
+		ExecutorService encoder = Executors.newSingleThreadExecutor();
+		IterationBuffer[] buffers = new IterationBuffer[2];
+		int[][] colors = new int[2][];
+		Future<?> writing = null;
+		long start = System.nanoTime();
+		boolean finished = false;
+		try
+		{
+			for (int y = 0, n = 0; y < height; y += band, n++)
+			{
+				final int rows = Math.min(band, height - y);
+				final View view = new View((int)centerX, (int)(centerY - y), pixelZoom, maxIter, width, rows);
+				if(buffers[n & 1] == null || buffers[n & 1].height != rows)
+				{
+					buffers[n & 1] = new IterationBuffer(width, rows, false);
+					colors[n & 1] = new int[width * rows];
+				}
+				final IterationBuffer buffer = buffers[n & 1];
+				final int[] bandColors = colors[n & 1];
+				engine.render(view, buffer, 1, false, CancelToken.NONE);
+
+				// The previous band used the other buffer. It must be written before this one is queued.
+				waitFor(writing);
+				final int done = y + rows;
+				writing = encoder.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws IOException
+					{
+						palette.color(buffer, maxIter, bandColors);
+						writer.write(bandColors, rows);
+						System.out.printf("\r%d of %d rows (%.1f%%)", done, height, 100.0 * done / height);
+						return null;
+					}
+				});
+			}
+			waitFor(writing);
+			finished = true;
+		}
+		finally
+		{
+			encoder.shutdown();
+			if(finished)
+				writer.close();
+			else
+				closeQuietly(writer);
+		}
+		System.out.printf("%nWrote %s in %.1f s%n", output, (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * 	Closes an unfinished image without hiding the exception that stopped it.
+	 */
+	private static void closeQuietly(ImageWriter writer)
+	{
+		try
+		{
+			writer.close();
+		}
+		catch(Exception e)
+		{
+			// The image is incomplete anyway
+		}
+	}
+
+	/**
+	 * 	Waits until a band is written and rethrows its exception, if any.
+	 */
+	private static void waitFor(Future<?> writing) throws IOException, InterruptedException
+	{
+		if(writing == null)
+			return;
+		try
+		{
+			writing.get();
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+}
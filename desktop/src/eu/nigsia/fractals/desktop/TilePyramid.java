@@ -0,0 +1,518 @@
+package eu.nigsia.fractals.desktop;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import eu.nigsia.fractals.render.CancelToken;
+import eu.nigsia.fractals.render.IterationBuffer;
+import eu.nigsia.fractals.render.MandelbrotEngine;
+import eu.nigsia.fractals.render.MandelbrotKernel;
+import eu.nigsia.fractals.render.Palette;
+import eu.nigsia.fractals.render.View;
+import eu.nigsia.fractals.util.ImageWriter;
+
+/**
+ * 	Headless generator of an XYZ tile pyramid of the Mandelbrot set for slippy map viewers: <i>out/z/x/y.png</i>, {@value #TILE}x{@value #TILE} pixels,
+ * 	for the levels 0 to N. Level z has 2^z x 2^z tiles covering the square from {@value #MIN_RE} - {@value #HALF_SIDE}i to {@value #MIN_RE} + 4 + {@value #HALF_SIDE}i,
+ * 	with the same orientation as the window (the imaginary part grows downwards).
+ *
+ * 	The work is done level by level, with every core: a thread per core calculates and encodes whole tiles, and each tile is calculated by {@link MandelbrotEngine}.
+ * 	Tiles of a single color are not written: they are listed in <i>manifest.json</i> with their color.
+ * 	The PNG tiles are opaque, while the manifest has the RGBA of the palette, so a viewer should draw those colors over black to match them.
+ * 	A tile whose every pixel is known to be inside the set (like the tiles of a Mariani-Silver rectangle) has only interior tiles below it, so its descendants are not even calculated.
+ * 	Tiles with the same content are stored once: the copies are hard links to the first one.
+ * 	Every finished tile is appended to <i>tiles.log</i>, so an interrupted run continues where it stopped when it's started again with the same options.
+ *
+ *  Usage: TilePyramid [options] output-directory
+ *
+ * 	--levels: Last level N ({@value #DEFAULT_LEVELS} by default, at most {@value #MAX_LEVEL}).
+ * 	--iter: MAX_ITER ({@value #DEFAULT_ITER} by default).
+ * 	--palette: classic or smooth (classic by default).
+ * 	--bitshift: Color bitshift of the classic palette ({@value #DEFAULT_BITSHIFT} by default).
+ * 	--subdivide: Use Mariani-Silver subdivision.
+ * 	--float: Let shallow levels be calculated in single precision.
+ *
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class TilePyramid
+{
+	/**
+	 * 	Side of the tiles in pixels.
+	 */
+	private static final int TILE = 256;
+	/**
+	 * 	Real part of the left side of level 0.
+	 */
+	private static final double MIN_RE = -2.5;
+	/**
+	 * 	Half of the side of level 0. Its tile spans -HALF_SIDE to HALF_SIDE in the imaginary axis.
+	 */
+	private static final double HALF_SIDE = 2;
+	/**
+	 * 	Deepest level. The tiles of a level are tracked in a {@link BitSet} and the pixels of a {@link View} are ints.
+	 */
+	private static final int MAX_LEVEL = 15;
+	private static final int DEFAULT_LEVELS = 6;
+	private static final int DEFAULT_ITER = 1000;
+	private static final int DEFAULT_BITSHIFT = 4;
+
+	/**
+	 * 	Last level.
+	 */
+	private int levels = DEFAULT_LEVELS;
+	/**
+	 * 	Maximum number of iterations.
+	 */
+	private int maxIter = DEFAULT_ITER;
+	/**
+	 * 	Mode and bitshift of the palette. Every thread has its own {@link Palette}.
+	 */
+	private Palette.Mode mode = Palette.Mode.CLASSIC;
+	private int bitshift = DEFAULT_BITSHIFT;
+	/**
+	 * 	Engine that calculates every tile.
+	 */
+	private final MandelbrotEngine engine = new MandelbrotEngine();
+	/**
+	 * 	Output directory.
+	 */
+	private File output;
+
+	/**
+	 * 	Tiles finished by this or a previous run, one {@link BitSet} per level indexed by <i>x * 2^z + y</i>.
+	 */
+	private final List<BitSet> done = new ArrayList<BitSet>();
+	/**
+	 * 	Tiles whose every pixel is inside the set (only the first of every branch, their descendants are implied). Keys of {@link #key(int, int, int)}.
+	 */
+	private final Set<Long> interior = new HashSet<Long>();
+	/**
+	 * 	Uniform tiles and their color, for the manifest. Keys of {@link #key(int, int, int)}.
+	 */
+	private final Map<Long, Integer> uniform = new HashMap<Long, Integer>();
+	/**
+	 * 	First file written with every content, by its SHA-1.
+	 */
+	private final Map<String, File> contents = new HashMap<String, File>();
+	/**
+	 * 	Journal of finished tiles.
+	 */
+	private PrintWriter log;
+	/**
+	 * 	Counters for the manifest: PNG files, hard links, uniform tiles and the tiles skipped because they are under an interior one.
+	 */
+	private final AtomicInteger written = new AtomicInteger(), linked = new AtomicInteger(), uniformCount = new AtomicInteger(), implied = new AtomicInteger();
+	/**
+	 * 	First error of a worker. It stops the generation.
+	 */
+	private volatile Exception failure;
+
+	public static void main(String[] args) throws Exception
+	{
+		TilePyramid pyramid = new TilePyramid();
+		try
+		{
+			pyramid.parse(args);
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: TilePyramid [--levels n] [--iter n] [--palette classic|smooth] [--bitshift b] [--subdivide] [--float] output-directory");
+			System.exit(1);
+		}
+		pyramid.generate();
+	}
+
+	/**
+	 * 	Reads the options of the command line.
+	 */
+	private void parse(String[] args)
+	{
+		engine.setSinglePrecision(false);
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if(!arg.startsWith("--"))
+			{
+				if(output != null)
+					throw new IllegalArgumentException("More than one output directory");
+				output = new File(arg);
+				continue;
+			}
+			if(arg.equals("--subdivide"))
+			{
+				engine.setSubdividing(true);
+				continue;
+			}
+			if(arg.equals("--float"))
+			{
+				engine.setSinglePrecision(true);
+				continue;
+			}
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value of " + arg);
+			String value = args[++i];
+			try
+			{
+				if(arg.equals("--levels"))
+					levels = Integer.parseInt(value);
+				else if(arg.equals("--iter"))
+					maxIter = Integer.parseInt(value);
+				else if(arg.equals("--palette"))
+					mode = Palette.Mode.valueOf(value.toUpperCase());
+				else if(arg.equals("--bitshift"))
+					bitshift = Integer.parseInt(value);
+				else
+					throw new IllegalArgumentException("Unknown option " + arg);
+			}
+			catch(NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Wrong value of " + arg + ": " + value);
+			}
+		}
+		if(output == null)
+			throw new IllegalArgumentException("Missing output directory");
+		if(levels < 0 || levels > MAX_LEVEL)
+			throw new IllegalArgumentException("Levels must be between 0 and " + MAX_LEVEL);
+		if(maxIter <= 0)
+			throw new IllegalArgumentException("MAX_ITER must be positive");
+	}
+
+	/**
+	 * 	Generates every level, from 0 to {@link #levels}, and writes the manifest.
+	 */
+	private void generate() throws Exception
+	{
+		if(!output.isDirectory() && !output.mkdirs())
+			throw new IOException("Can't create " + output);
+		for (int z = 0; z <= levels; z++)
+			done.add(new BitSet(1 << (2 * z)));
+		File journal = new File(output, "tiles.log");
+		int resumed = readLog(journal);
+		if(resumed > 0)
+			System.out.println("Continuing after " + resumed + " finished tiles");
+		log = new PrintWriter(new FileWriter(journal, true));
+
+		int threads = Runtime.getRuntime().availableProcessors();
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		// Tiles queued at once. It keeps the queue small on the deep levels.
+		final Semaphore slots = new Semaphore(threads * 4);
+		long start = System.nanoTime();
+		try
+		{
+			for (int z = 0; z <= levels && failure == null; z++)
+			{
+				final int level = z;
+				int side = 1 << z;
+				BitSet finished = done.get(z);
+				for (int x = 0; x < side && failure == null; x++)
+				{
+					for (int y = 0; y < side && failure == null; y++)
+					{
+						if(finished.get(x * side + y))
+							continue;
+						if(isUnderInterior(z, x, y))
+						{
+							implied.incrementAndGet();
+							continue;
+						}
+						slots.acquire();
+						final int tx = x, ty = y;
+						workers.execute(new Runnable()
+						{
+							@Override
+							public void run()
+							{
+								try
+								{
+									if(failure == null)
+										tile(level, tx, ty);
+								}
+								catch(Exception e)
+								{
+									failure = e;
+								}
+								finally
+								{
+									slots.release();
+								}
+							}
+						});
+					}
+				}
+				// Every tile of this level must be finished before its children look for interior parents
+				slots.acquire(threads * 4);
+				slots.release(threads * 4);
+				System.out.println("Level " + z + " finished (" + written.get() + " files, " + linked.get() + " links, " + uniformCount.get() + " uniform, " + implied.get() + " skipped)");
+			}
+		}
+		finally
+		{
+			workers.shutdown();
+			log.close();
+		}
+		if(failure != null)
+			throw failure;
+
+		writeManifest();
+		System.out.printf("Finished in %.1f s%n", (System.nanoTime() - start) / 1e9);
+	}
+
+	/**
+	 * 	Calculates, colors and stores the tile (x, y) of level z. It's called from the worker threads.
+	 */
+	private void tile(int z, int x, int y) throws IOException
+	{
+		// Pixels per unit, and the pixel of the tile where the origin is. Both are whole numbers for every level.
+		double zoom = TILE * (1 << z) / (2 * HALF_SIDE);
+		int centerX = (int)(-MIN_RE * zoom) - x * TILE;
+		int centerY = (int)(HALF_SIDE * zoom) - y * TILE;
+		View view = new View(centerX, centerY, zoom, maxIter, TILE, TILE);
+		IterationBuffer buffer = new IterationBuffer(TILE, TILE, false);
+		engine.render(view, buffer, 1, false, CancelToken.NONE);
+
+		int[] colors = new int[TILE * TILE];
+		Palette palette = new Palette(bitshift);
+		palette.setMode(mode);
+		palette.color(buffer, maxIter, colors);
+
+		boolean same = true, inside = true;
+		for (int i = 0; i < colors.length; i++)
+		{
+			same &= colors[i] == colors[0];
+			inside &= buffer.iterations[i] == MandelbrotKernel.INTERIOR;
+		}
+		if(same)
+		{
+			finish(z, x, y, (inside ? "I " : "U ") + Integer.toHexString(colors[0]));
+			return;
+		}
+
+		ByteArrayOutputStream png = new ByteArrayOutputStream();
+		ImageWriter writer = ImageWriter.png(png, TILE, TILE);
+		writer.write(colors, TILE);
+		writer.close();
+		byte[] bytes = png.toByteArray();
+		String hash = sha1(bytes);
+
+		File file = new File(output, z + File.separator + x + File.separator + y + ".png");
+		File dir = file.getParentFile();
+		if(!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+			throw new IOException("Can't create " + dir);
+		File first;
+		synchronized(contents)
+		{
+			first = contents.get(hash);
+			if(first == null)
+				contents.put(hash, file);
+		}
+		if(first == null || !link(first, file))
+		{
+			// Written to a temporary file first, so an interrupted run never leaves half a tile
+			File tmp = new File(dir, y + ".png.tmp");
+			FileOutputStream out = new FileOutputStream(tmp);
+			try
+			{
+				out.write(bytes);
+			}
+			finally
+			{
+				out.close();
+			}
+			if(file.exists() && !file.delete() || !tmp.renameTo(file))
+				throw new IOException("Can't write " + file);
+			written.incrementAndGet();
+		}
+		else
+			linked.incrementAndGet();
+		finish(z, x, y, "T " + hash);
+	}
+
+	/**
+	 * 	Makes file a hard link to first, which has the same content.
+	 * @return True if it was linked, false if the file system doesn't support it.
+	 */
+	private static boolean link(File first, File file)
+	{
+		try
+		{
+			Files.deleteIfExists(file.toPath());
+			Files.createLink(file.toPath(), first.toPath());
+			return true;
+		}
+		catch(Exception e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * 	Marks a tile as finished and appends it to the journal.
+	 * @param entry: What was stored: "T sha1" for a file, "U color" for a uniform tile and "I color" for an interior one.
+	 */
+	private void finish(int z, int x, int y, String entry) throws IOException
+	{
+		String line = z + " " + x + " " + y + " " + entry;
+		synchronized(this)
+		{
+			record(z, x, y, entry);
+			log.println(line);
+			log.flush();
+			if(log.checkError())
+				throw new IOException("Can't write the journal");
+		}
+	}
+
+	/**
+	 * 	Keeps a finished tile in memory.
+	 */
+	private synchronized void record(int z, int x, int y, String entry)
+	{
+		done.get(z).set(x * (1 << z) + y);
+		String[] parts = entry.split(" ");
+		if(parts[0].equals("T"))
+			return;
+		uniform.put(key(z, x, y), (int)Long.parseLong(parts[1], 16));
+		uniformCount.incrementAndGet();
+		if(parts[0].equals("I"))
+			interior.add(key(z, x, y));
+	}
+
+	/**
+	 * 	Reads the journal of a previous run, if any.
+	 * @return The number of tiles that were finished.
+	 */
+	private int readLog(File journal) throws IOException
+	{
+		if(!journal.exists())
+			return 0;
+		int count = 0;
+		BufferedReader in = new BufferedReader(new FileReader(journal));
+		try
+		{
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				String[] parts = line.split(" ");
+				// The last line can be incomplete if the run was killed
+				if(parts.length != 5)
+					continue;
+				int z = Integer.parseInt(parts[0]), x = Integer.parseInt(parts[1]), y = Integer.parseInt(parts[2]);
+				if(z > levels)
+					continue;
+				if(parts[3].equals("T"))
+				{
+					File file = new File(output, z + File.separator + x + File.separator + y + ".png");
+					if(!file.exists())
+						continue;
+					if(!contents.containsKey(parts[4]))
+						contents.put(parts[4], file);
+				}
+				record(z, x, y, parts[3] + " " + parts[4]);
+				count++;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return count;
+	}
+
+	/**
+	 * 	Returns whether an ancestor of the tile (x, y) of level z is an interior tile.
+	 */
+	private boolean isUnderInterior(int z, int x, int y)
+	{
+		for (int k = z - 1; k >= 0; k--)
+			if(interior.contains(key(k, x >> (z - k), y >> (z - k))))
+				return true;
+		return false;
+	}
+
+	/**
+	 * 	Writes <i>manifest.json</i>: the layout of the pyramid and every uniform tile with its color.
+	 * 	Interior tiles stand for their descendants too, which are neither written nor listed.
+	 */
+	private void writeManifest() throws IOException
+	{
+		Writer out = new FileWriter(new File(output, "manifest.json"));
+		try
+		{
+			out.write("{\n");
+			out.write("  \"scheme\": \"xyz\",\n");
+			out.write("  \"path\": \"{z}/{x}/{y}.png\",\n");
+			out.write("  \"tileSize\": " + TILE + ",\n");
+			out.write("  \"minZoom\": 0,\n");
+			out.write("  \"maxZoom\": " + levels + ",\n");
+			out.write("  \"bounds\": { \"minRe\": " + MIN_RE + ", \"maxRe\": " + (MIN_RE + 2 * HALF_SIDE) + ", \"minIm\": " + -HALF_SIDE + ", \"maxIm\": " + HALF_SIDE + ", \"imGrowsDown\": true },\n");
+			out.write("  \"maxIter\": " + maxIter + ",\n");
+			out.write("  \"palette\": \"" + mode.name().toLowerCase() + "\",\n");
+			out.write("  \"bitshift\": " + bitshift + ",\n");
+			out.write("  \"files\": " + contents.size() + ",\n");
+			out.write("  \"uniformTiles\": [");
+			boolean first = true;
+			for (Map.Entry<Long, Integer> tile : uniform.entrySet())
+			{
+				long k = tile.getKey();
+				String color = String.format("%08x", tile.getValue());
+				out.write((first ? "\n" : ",\n") + "    { \"z\": " + (k >>> 58) + ", \"x\": " + ((k >>> 29) & 0x1fffffff) + ", \"y\": " + (k & 0x1fffffff)
+						+ ", \"rgba\": \"" + color + "\", \"interior\": " + interior.contains(k) + " }");
+				first = false;
+			}
+			out.write("\n  ]\n}\n");
+		}
+		finally
+		{
+			out.close();
+		}
+	}
+
+	/**
+	 * 	Packs a tile in a long: 6 bits of level and 29 bits for every coordinate.
+	 */
+	private static long key(int z, int x, int y)
+	{
+		return (long)z << 58 | (long)x << 29 | y;
+	}
+
+	/**
+	 * 	Gets the SHA-1 of bytes in hexadecimal.
+	 */
+	private static String sha1(byte[] bytes)
+	{
+		try
+		{
+			StringBuilder hex = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(bytes))
+				hex.append(String.format("%02x", b & 0xff));
+			return hex.toString();
+		}
+		catch(NoSuchAlgorithmException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+}
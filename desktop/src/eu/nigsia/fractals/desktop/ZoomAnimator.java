@@ -0,0 +1,530 @@
+package eu.nigsia.fractals.desktop;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import eu.nigsia.fractals.Main;
+import eu.nigsia.fractals.render.CancelToken;
+import eu.nigsia.fractals.render.IterationBuffer;
+import eu.nigsia.fractals.render.MandelbrotEngine;
+import eu.nigsia.fractals.render.Palette;
+import eu.nigsia.fractals.render.View;
+import eu.nigsia.fractals.util.ImageWriter;
+
+/**
+ * 	Headless renderer of zoom animations of the Mandelbrot set, from one view to another. It needs no window nor OpenGL.
+ * 	The zoom changes exponentially with time, so the animation zooms at a constant speed, and the center moves so the end point approaches the middle of the screen at the same pace.
+ *
+ * 	Consecutive frames show almost the same region, so they aren't calculated one by one. The frames are split in groups of {@value #DEFAULT_KEYFRAME}
+ * 	and only a keyframe per group is calculated: it covers every frame of the group with the pixel density of the deepest one, so it has more pixels than a frame.
+ * 	Since the zoom is exponential, the keyframes are exponentially spaced too. Every frame is then resampled from its keyframe (averaging the keyframe pixels under each frame pixel).
+ * 	A keyframe is calculated with every core ({@link MandelbrotEngine}) while the frames of the previous group are resampled and written by other threads.
+ *
+ *  Usage: ZoomAnimator [options] output
+ *
+ * 	The output is either a pattern of numbered files like <i>frames/frame%05d.png</i> (a directory gets <i>frame%05d.png</i> inside it),
+ * 	or a raw RGB stream (3 bytes per pixel, frame after frame): <i>-</i> for the standard output or a file ending in <i>.rgb</i>. The stream can be piped to an encoder:
+ * 	<i>ZoomAnimator ... - | ffmpeg -f rawvideo -pix_fmt rgb24 -s 1280x720 -r 30 -i - zoom.mp4</i>
+ * 	Both are opaque: the alpha of the palette is dropped, so its transparent interior is black.
+ *
+ * 	--width, --height: Size of the frames in pixels (1280x720 by default).
+ * 	--frames: Number of frames ({@value #DEFAULT_FRAMES} by default).
+ * 	--from-re, --from-im, --from-zoom: Center and zoom of the first frame (-0.5, 0 and {@value #DEFAULT_ZOOM} by default). The zoom is as in the window.
+ * 	--to-re, --to-im, --to-zoom: Center and zoom of the last frame (the Seahorse valley zoomed 10^5 times by default).
+ * 	--iter: MAX_ITER of the first frame ({@value #DEFAULT_ITER} by default).
+ * 	--to-iter: MAX_ITER of the last frame (the same as --iter by default). It grows with the exponent of the zoom.
+ * 	--keyframe: Frames per keyframe ({@value #DEFAULT_KEYFRAME} by default, less when the zoom changes more than {@value #MAX_GROUP_ZOOM} times in a group). 1 calculates every frame.
+ * 	--supersample: Pixel density of the keyframes relative to the deepest frame of their group (1 by default).
+ * 	--threads: Threads that resample and write the frames (one per core by default).
+ * 	--palette: classic or smooth (classic by default).
+ * 	--bitshift: Color bitshift of the classic palette ({@value #DEFAULT_BITSHIFT} by default).
+ * 	--subdivide: Use Mariani-Silver subdivision.
+ * 	--float: Let shallow views be calculated in single precision.
+ *
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class ZoomAnimator
+{
+	private static final int DEFAULT_WIDTH = 1280, DEFAULT_HEIGHT = 720;
+	private static final int DEFAULT_FRAMES = 300;
+	private static final double DEFAULT_ZOOM = 150;
+	private static final int DEFAULT_ITER = 1000;
+	private static final int DEFAULT_BITSHIFT = 4;
+	private static final int DEFAULT_KEYFRAME = 8;
+	/**
+	 * 	Maximum keyframe pixels averaged per frame pixel, in each axis.
+	 */
+	private static final int MAX_TAPS = 4;
+	/**
+	 * 	Keyframe pixels added around the frames of its group, so the resampling never reads outside of it.
+	 */
+	private static final int MARGIN = 2;
+	/**
+	 * 	Maximum zoom between the first and the last frame of a group. The keyframe has about its square times the pixels of a frame, so a fast zoom gets smaller groups.
+	 */
+	private static final double MAX_GROUP_ZOOM = 2;
+
+	/**
+	 * 	Size of the frames.
+	 */
+	private int width = DEFAULT_WIDTH, height = DEFAULT_HEIGHT;
+	/**
+	 * 	Number of frames.
+	 */
+	private int frames = DEFAULT_FRAMES;
+	/**
+	 * 	Center and zoom (as in the window) of the first and the last frame.
+	 */
+	private double fromRe = -0.5, fromIm = 0, fromZoom = DEFAULT_ZOOM;
+	private double toRe = -0.743643887037151, toIm = 0.13182590420533, toZoom = DEFAULT_ZOOM * 1e5;
+	/**
+	 * 	Maximum number of iterations of the first and the last frame.
+	 */
+	private int fromIter = DEFAULT_ITER, toIter = -1;
+	/**
+	 * 	Frames per keyframe.
+	 */
+	private int keyframe = DEFAULT_KEYFRAME;
+	/**
+	 * 	Pixel density of the keyframes relative to the deepest frame of their group.
+	 */
+	private double supersample = 1;
+	/**
+	 * 	Threads that resample and write the frames.
+	 */
+	private int threads = Runtime.getRuntime().availableProcessors();
+	/**
+	 * 	Colors of the keyframes. It's only used by the thread that calculates them.
+	 */
+	private final Palette palette = new Palette(DEFAULT_BITSHIFT);
+	/**
+	 * 	Engine that calculates every keyframe.
+	 */
+	private final MandelbrotEngine engine = new MandelbrotEngine();
+	/**
+	 * 	Output given in the command line.
+	 */
+	private String output;
+	/**
+	 * 	Pattern of the numbered frames (a {@link String#format(String, Object...)} of the frame number), or null when a raw stream is written.
+	 */
+	private String pattern;
+	/**
+	 * 	Raw RGB stream, or null when numbered frames are written.
+	 */
+	private OutputStream stream;
+	/**
+	 * 	Where the progress is printed. It's the standard error when the stream is the standard output.
+	 */
+	private PrintStream console = System.out;
+
+	public static void main(String[] args) throws Exception
+	{
+		ZoomAnimator animator = new ZoomAnimator();
+		try
+		{
+			animator.parse(args);
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.err.println(e.getMessage());
+			System.err.println("Usage: ZoomAnimator [--width w] [--height h] [--frames n] [--from-re x] [--from-im y] [--from-zoom z] [--to-re x] [--to-im y] [--to-zoom z] [--iter n] [--to-iter n] "
+					+ "[--keyframe n] [--supersample s] [--threads n] [--palette classic|smooth] [--bitshift b] [--subdivide] [--float] frames/frame%05d.png|output.rgb|-");
+			System.exit(1);
+		}
+		animator.render();
+	}
+
+	/**
+	 * 	Reads the options of the command line.
+	 */
+	private void parse(String[] args)
+	{
+		engine.setSinglePrecision(false);
+		for (int i = 0; i < args.length; i++)
+		{
+			String arg = args[i];
+			if(!arg.startsWith("--"))
+			{
+				if(output != null)
+					throw new IllegalArgumentException("More than one output");
+				output = arg;
+				continue;
+			}
+			if(arg.equals("--subdivide"))
+			{
+				engine.setSubdividing(true);
+				continue;
+			}
+			if(arg.equals("--float"))
+			{
+				engine.setSinglePrecision(true);
+				continue;
+			}
+			if(i + 1 >= args.length)
+				throw new IllegalArgumentException("Missing value of " + arg);
+			String value = args[++i];
+			try
+			{
+				if(arg.equals("--width"))
+					width = Integer.parseInt(value);
+				else if(arg.equals("--height"))
+					height = Integer.parseInt(value);
+				else if(arg.equals("--frames"))
+					frames = Integer.parseInt(value);
+				else if(arg.equals("--from-re"))
+					fromRe = Double.parseDouble(value);
+				else if(arg.equals("--from-im"))
+					fromIm = Double.parseDouble(value);
+				else if(arg.equals("--from-zoom"))
+					fromZoom = Double.parseDouble(value);
+				else if(arg.equals("--to-re"))
+					toRe = Double.parseDouble(value);
+				else if(arg.equals("--to-im"))
+					toIm = Double.parseDouble(value);
+				else if(arg.equals("--to-zoom"))
+					toZoom = Double.parseDouble(value);
+				else if(arg.equals("--iter"))
+					fromIter = Integer.parseInt(value);
+				else if(arg.equals("--to-iter"))
+					toIter = Integer.parseInt(value);
+				else if(arg.equals("--keyframe"))
+					keyframe = Integer.parseInt(value);
+				else if(arg.equals("--supersample"))
+					supersample = Double.parseDouble(value);
+				else if(arg.equals("--threads"))
+					threads = Integer.parseInt(value);
+				else if(arg.equals("--palette"))
+					palette.setMode(Palette.Mode.valueOf(value.toUpperCase()));
+				else if(arg.equals("--bitshift"))
+					palette.setBitshift(Integer.parseInt(value));
+				else
+					throw new IllegalArgumentException("Unknown option " + arg);
+			}
+			catch(NumberFormatException e)
+			{
+				throw new IllegalArgumentException("Wrong value of " + arg + ": " + value);
+			}
+		}
+		if(output == null)
+			throw new IllegalArgumentException("Missing output");
+		if(toIter < 0)
+			toIter = fromIter;
+		if(width <= 0 || height <= 0 || frames <= 0 || keyframe <= 0 || threads <= 0 || fromIter <= 0 || toIter <= 0 || fromZoom <= 0 || toZoom <= 0)
+			throw new IllegalArgumentException("Sizes, zooms, counts and iterations must be positive");
+		if(!(supersample >= 1))
+			throw new IllegalArgumentException("The supersampling can't be less than 1");
+
+		if(output.equals("-"))
+		{
+			stream = new BufferedOutputStream(System.out, 1 << 16);
+			console = System.err;
+		}
+		else if(output.toLowerCase().endsWith(".rgb"))
+			pattern = null;
+		else if(output.contains("%"))
+			pattern = output;
+		else
+			pattern = new File(output, "frame%05d.png").getPath();
+	}
+
+	/**
+	 * 	Gets the zoom (as in the window) of the frame at time t, from 0 (first frame) to 1 (last frame). It changes exponentially.
+	 */
+	private double zoomAt(double t)
+	{
+		return fromZoom * Math.pow(toZoom / fromZoom, t);
+	}
+
+	/**
+	 * 	Gets how far the center of the frame at time t is from the first center to the last one, from 0 to 1.
+	 * 	It's proportional to how much the visible width has shrunk, so the last center approaches the middle of the screen at a constant pace.
+	 */
+	private double panAt(double t)
+	{
+		if(fromZoom == toZoom)
+			return t;
+		return (1 / fromZoom - 1 / zoomAt(t)) / (1 / fromZoom - 1 / toZoom);
+	}
+
+	/**
+	 * 	Gets the time of a frame, from 0 to 1.
+	 */
+	private double timeOf(int frame)
+	{
+		return frames == 1 ? 0 : (double)frame / (frames - 1);
+	}
+
+	/**
+	 * 	Gets the region of a frame in the complex plane: center (re, im) and pixels per unit.
+	 */
+	private double[] frameOf(int frame)
+	{
+		double t = timeOf(frame), pan = panAt(t);
+		return new double[]{ fromRe + (toRe - fromRe) * pan, fromIm + (toIm - fromIm) * pan, zoomAt(t) * width / Main.WIDTH };
+	}
+
+	/**
+	 * 	Calculates every keyframe and writes every frame.
+	 */
+	private void render() throws IOException, InterruptedException
+	{
+		if(pattern == null && stream == null)
+			stream = new BufferedOutputStream(new FileOutputStream(output), 1 << 16);
+		if(pattern != null)
+		{
+			File dir = new File(String.format(Locale.ROOT, pattern, 0)).getAbsoluteFile().getParentFile();
+			if(dir != null && !dir.isDirectory() && !dir.mkdirs())
+				throw new IOException("Can't create " + dir);
+		}
+		console.println("Rendering " + frames + " frames of " + width + "x" + height + ", zoom " + fromZoom + " to " + toZoom + ", a keyframe every " + keyframe + " frames");
+
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		ExecutorService writer = Executors.newSingleThreadExecutor();
+		Future<?> writing = null;
+		long start = System.nanoTime(), keyPixels = 0;
+		try
+		{
+			for (int first = 0, last; first < frames; first = last + 1)
+			{
+				last = lastOfGroup(first);
+				Keyframe key = renderKeyframe(first, last);
+				keyPixels += (long)key.width * key.height;
+
+				final List<Future<int[]>> group = new ArrayList<Future<int[]>>();
+				for (int f = first; f <= last; f++)
+					group.add(workers.submit(new FrameTask(key, f)));
+
+				// Only two groups are in memory: this one and the one being written
+				waitFor(writing);
+				final int done = last + 1;
+				writing = writer.submit(new Callable<Void>()
+				{
+					@Override
+					public Void call() throws IOException, InterruptedException
+					{
+						byte[] rgb = stream != null ? new byte[width * height * 3] : null;
+						for (Future<int[]> frame : group)
+						{
+							int[] colors = waitFor(frame);
+							if(stream != null)
+								writeRgb(colors, rgb);
+						}
+						console.printf("\r%d of %d frames (%.1f%%)", done, frames, 100.0 * done / frames);
+						return null;
+					}
+				});
+			}
+			waitFor(writing);
+			if(stream != null)
+				stream.flush();
+		}
+		finally
+		{
+			workers.shutdownNow();
+			writer.shutdownNow();
+			if(stream != null && stream != System.out)
+				stream.close();
+		}
+		console.printf("%nWrote %d frames in %.1f s, calculating %.2f pixels per frame pixel%n", frames, (System.nanoTime() - start) / 1e9, (double)keyPixels / ((long)width * height * frames));
+	}
+
+	/**
+	 * 	Gets the last frame of the group that starts at first: {@link #keyframe} frames at most, and less if the zoom changes more than {@link #MAX_GROUP_ZOOM} times.
+	 */
+	private int lastOfGroup(int first)
+	{
+		int last = first;
+		double zoom = zoomAt(timeOf(first));
+		while(last + 1 < frames && last + 1 - first < keyframe)
+		{
+			double ratio = zoomAt(timeOf(last + 1)) / zoom;
+			if(Math.max(ratio, 1 / ratio) > MAX_GROUP_ZOOM)
+				break;
+			last++;
+		}
+		return last;
+	}
+
+	/**
+	 * 	Calculates the keyframe of the frames first to last: the smallest rectangle that covers all of them, with the pixel density of the deepest one.
+	 */
+	private Keyframe renderKeyframe(int first, int last)
+	{
+		double minRe = Double.MAX_VALUE, maxRe = -Double.MAX_VALUE, minIm = Double.MAX_VALUE, maxIm = -Double.MAX_VALUE, density = 0;
+		for (int f = first; f <= last; f++)
+		{
+			double[] frame = frameOf(f);
+			minRe = Math.min(minRe, frame[0] - width / 2.0 / frame[2]);
+			maxRe = Math.max(maxRe, frame[0] + width / 2.0 / frame[2]);
+			minIm = Math.min(minIm, frame[1] - height / 2.0 / frame[2]);
+			maxIm = Math.max(maxIm, frame[1] + height / 2.0 / frame[2]);
+			density = Math.max(density, frame[2]);
+		}
+		density *= supersample;
+		// Pixel (0, 0) of the keyframe is MARGIN pixels before (minRe, minIm)
+		double centerX = Math.floor(-minRe * density) + MARGIN, centerY = Math.floor(-minIm * density) + MARGIN;
+		if(Math.abs(centerX) > Integer.MAX_VALUE / 2 || Math.abs(centerY) > Integer.MAX_VALUE / 2)
+			throw new IllegalArgumentException("The center is too far away for the zoom of frame " + last);
+		int w = (int)Math.ceil(maxRe * density + centerX) + MARGIN + 1, h = (int)Math.ceil(maxIm * density + centerY) + MARGIN + 1;
+		int maxIter = (int)Math.round(fromIter + (toIter - fromIter) * timeOf(last));
+
+		View view = new View((int)centerX, (int)centerY, density, maxIter, w, h);
+		IterationBuffer buffer = new IterationBuffer(w, h, false);
+		engine.render(view, buffer, 1, false, CancelToken.NONE);
+		int[] colors = new int[w * h];
+		palette.color(buffer, maxIter, colors);
+		return new Keyframe(view, colors);
+	}
+
+	/**
+	 * 	Writes a frame to {@link #stream} as RGB bytes.
+	 * @param rgb: Buffer of width * height * 3 bytes.
+	 */
+	private void writeRgb(int[] colors, byte[] rgb) throws IOException
+	{
+		for (int i = 0, j = 0; i < colors.length; i++)
+		{
+			int c = colors[i];
+			rgb[j++] = (byte)(c >>> 24);
+			rgb[j++] = (byte)(c >>> 16);
+			rgb[j++] = (byte)(c >>> 8);
+		}
+		stream.write(rgb);
+	}
+
+	/**
+	 * 	Waits until a task is finished and rethrows its exception, if any.
+	 */
+	private static <T> T waitFor(Future<T> task) throws IOException, InterruptedException
+	{
+		if(task == null)
+			return null;
+		try
+		{
+			return task.get();
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
+				throw (IOException)e.getCause();
+			throw new RuntimeException(e.getCause());
+		}
+	}
+
+	/**
+	 * 	A calculated keyframe: its {@link View} and its RGBA8888 colors. It's never modified, so every frame of its group reads it at once.
+	 */
+	private static final class Keyframe
+	{
+		final View view;
+		final int width, height;
+		final int[] colors;
+
+		Keyframe(View view, int[] colors)
+		{
+			this.view = view;
+			this.width = view.width;
+			this.height = view.height;
+			this.colors = colors;
+		}
+	}
+
+	/**
+	 * 	Resamples a frame from its keyframe. Each frame pixel is the average of a grid of bilinear samples over the keyframe pixels it covers.
+	 * 	It returns the colors when they go to the stream, and writes the numbered file (returning null) otherwise.
+	 */
+	private final class FrameTask implements Callable<int[]>
+	{
+		private final Keyframe key;
+		private final int frame;
+
+		FrameTask(Keyframe key, int frame)
+		{
+			this.key = key;
+			this.frame = frame;
+		}
+
+		@Override
+		public int[] call() throws IOException
+		{
+			double[] region = frameOf(frame);
+			View view = key.view;
+			// Keyframe pixels per frame pixel, and the samples of every frame column and row (the same for every row and column)
+			double scale = view.zoom / region[2];
+			int taps = Math.min(MAX_TAPS, (int)Math.ceil(scale - 1e-9));
+			int[] columns = new int[width * taps], columnWeights = new int[width * taps];
+			int[] rows = new int[height * taps], rowWeights = new int[height * taps];
+			for (int x = 0; x < width; x++)
+				samples((region[0] + (x - width / 2.0) / region[2]) * view.zoom + view.centerX, scale, taps, key.width, columns, columnWeights, x * taps);
+			for (int y = 0; y < height; y++)
+				samples((region[1] + (y - height / 2.0) / region[2]) * view.zoom + view.centerY, scale, taps, key.height, rows, rowWeights, y * taps);
+
+			int[] colors = new int[width * height], src = key.colors;
+			int n = taps * taps;
+			for (int y = 0, i = 0; y < height; y++)
+				for (int x = 0; x < width; x++, i++)
+				{
+					int r = 0, g = 0, b = 0, a = 0;
+					for (int ty = y * taps; ty < (y + 1) * taps; ty++)
+					{
+						int top = rows[ty] * key.width, bottom = top + key.width, fy = rowWeights[ty];
+						for (int tx = x * taps; tx < (x + 1) * taps; tx++)
+						{
+							int x0 = columns[tx], fx = columnWeights[tx];
+							// Weights of the 4 neighbours, adding up to 2^16
+							int w00 = (256 - fx) * (256 - fy), w10 = fx * (256 - fy), w01 = (256 - fx) * fy, w11 = fx * fy;
+							int c00 = src[top + x0], c10 = src[top + x0 + 1], c01 = src[bottom + x0], c11 = src[bottom + x0 + 1];
+							r += (c00 >>> 24) * w00 + (c10 >>> 24) * w10 + (c01 >>> 24) * w01 + (c11 >>> 24) * w11 + (1 << 15) >>> 16;
+							g += (c00 >>> 16 & 0xff) * w00 + (c10 >>> 16 & 0xff) * w10 + (c01 >>> 16 & 0xff) * w01 + (c11 >>> 16 & 0xff) * w11 + (1 << 15) >>> 16;
+							b += (c00 >>> 8 & 0xff) * w00 + (c10 >>> 8 & 0xff) * w10 + (c01 >>> 8 & 0xff) * w01 + (c11 >>> 8 & 0xff) * w11 + (1 << 15) >>> 16;
+							a += (c00 & 0xff) * w00 + (c10 & 0xff) * w10 + (c01 & 0xff) * w01 + (c11 & 0xff) * w11 + (1 << 15) >>> 16;
+						}
+					}
+					colors[i] = (r + n / 2) / n << 24 | (g + n / 2) / n << 16 | (b + n / 2) / n << 8 | (a + n / 2) / n;
+				}
+
+			if(pattern == null)
+				return colors;
+			ImageWriter image = ImageWriter.create(new File(String.format(Locale.ROOT, pattern, frame)), width, height);
+			try
+			{
+				image.write(colors, height);
+			}
+			finally
+			{
+				image.close();
+			}
+			return null;
+		}
+
+		/**
+		 * 	Gets the samples of a frame column (or row) centered at the keyframe position p: taps positions spread over scale keyframe pixels.
+		 * 	Each one is stored as the keyframe pixel before it and the weight of the next one (0 to 256), from index.
+		 * @param size: Width (or height) of the keyframe.
+		 */
+		private void samples(double p, double scale, int taps, int size, int[] pixels, int[] weights, int index)
+		{
+			for (int t = 0; t < taps; t++)
+			{
+				double s = p + ((t + 0.5) / taps - 0.5) * scale;
+				int p0 = Math.max(0, Math.min(size - 2, (int)Math.floor(s)));
+				pixels[index + t] = p0;
+				weights[index + t] = (int)Math.round(Math.max(0, Math.min(1, s - p0)) * 256);
+			}
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	Platform of the html version: there are no vectorized kernels and a single core.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+final class Platform
+{
+	private Platform(){}
+
+	/**
+	 * 	There are no vectorized kernels in the html version.
+	 * @param name: Name of its class.
+	 * @return Always null.
+	 */
+	static RowKernel loadRowKernel(String name)
+	{
+		return null;
+	}
+
+	/**
+	 * 	Gets the number of cores available, which is always 1.
+	 */
+	static int getProcessors()
+	{
+		return 1;
+	}
+}
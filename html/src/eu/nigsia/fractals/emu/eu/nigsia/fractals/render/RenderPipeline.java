@@ -0,0 +1,144 @@
+package eu.nigsia.fractals.render;
+
+/**
+ * 	RenderPipeline of the html version, which has no threads: the requested view is calculated by the GL thread in {@link #poll()}.
+ * 	It calculates the passes like the threaded one (see {@link PassRenderer}), but the coarse ones are never seen since the view is finished before poll returns.
+ * 	There is no disk cache, only the memory one.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class RenderPipeline
+{
+	/**
+	 * 	Side of the blocks of the first pass in pixels.
+	 */
+	public static final int COARSEST_BLOCK = 8;
+
+	/**
+	 * 	Engine that calculates every pass.
+	 */
+	private final MandelbrotEngine engine;
+	/**
+	 * 	Memory cache of the engine owned by the pipeline, or null for none.
+	 */
+	private final TileCache cache;
+	/**
+	 * 	Passes of the requested views.
+	 */
+	private final PassRenderer passes;
+	/**
+	 * 	Last requested {@link View} or {@link DeepView} that hasn't been calculated yet.
+	 */
+	private Object pending;
+
+	/**
+	 * 	Creates a pipeline. Deep views are calculated by a new {@link DeepEngine}.
+	 * @param engine: The {@link MandelbrotEngine} that calculates every pass.
+	 */
+	public RenderPipeline(MandelbrotEngine engine)
+	{
+		this(engine, new DeepEngine());
+	}
+
+	/**
+	 * 	Creates a pipeline.
+	 * @param engine: The {@link MandelbrotEngine} that calculates every pass.
+	 * @param deepEngine: The {@link DeepEngine} that calculates the deep views.
+	 */
+	public RenderPipeline(MandelbrotEngine engine, DeepEngine deepEngine)
+	{
+		this.engine = engine;
+		this.cache = null;
+		this.passes = new PassRenderer(engine, deepEngine);
+	}
+
+	/**
+	 * 	Creates a pipeline that owns a memory cache of engine until {@link #shutdown()}. Deep views are calculated by a new {@link DeepEngine}.
+	 * @param engine: The {@link MandelbrotEngine} that calculates every pass.
+	 * @param cacheBytes: Size of the disk cache, which the html version doesn't have.
+	 * @param memoryCacheBytes: Size of the {@link MemoryTileCache}. 0 means that the engine's cache isn't touched.
+	 */
+	public RenderPipeline(MandelbrotEngine engine, long cacheBytes, long memoryCacheBytes)
+	{
+		this.engine = engine;
+		this.cache = memoryCacheBytes > 0 ? new MemoryTileCache(memoryCacheBytes, null) : null;
+		this.passes = new PassRenderer(engine, new DeepEngine());
+		if(cache != null)
+			engine.setCache(cache);
+	}
+
+	/**
+	 * 	Asks for view to be calculated by the next {@link #poll()}. It replaces any other request.
+	 * @param view: The {@link View} to calculate.
+	 */
+	public void request(View view)
+	{
+		pending = view;
+	}
+
+	/**
+	 * 	Asks for a deep view to be calculated by the next {@link #poll()}. It replaces any other request.
+	 * @param view: The {@link DeepView} to calculate.
+	 */
+	public void request(DeepView view)
+	{
+		pending = view;
+	}
+
+	/**
+	 * 	Calculates the last requested view, if any, and gets the last finished pass. This is meant to be called from the GL thread every frame.
+	 * @return The last finished {@link Frame}, or null if there is no new one since the last call.
+	 */
+	public Frame poll()
+	{
+		if(pending != null)
+		{
+			Object next = pending;
+			pending = null;
+			passes.render(next, CancelToken.NONE);
+		}
+		return passes.poll();
+	}
+
+	/**
+	 * 	Gets the last validation. This is meant to be called from the GL thread every frame.
+	 * @return The {@link KernelDiff} of the last validated view, or null if there is no new one since the last call.
+	 */
+	public KernelDiff pollValidation()
+	{
+		return passes.pollValidation();
+	}
+
+	/**
+	 * 	Returns whether the views calculated in single precision are validated.
+	 */
+	public boolean isValidating(){	return passes.isValidating();	}
+	/**
+	 * 	Sets whether every finished view calculated in single precision is calculated again with {@link Kernel#DOUBLE} and compared. It doubles the cost of those views.
+	 */
+	public void setValidating(boolean validating){	passes.setValidating(validating);	}
+
+	/**
+	 * 	Gets the maximum number of extra samples of every finished view. 0 means that supersampling is off.
+	 */
+	public int getSampleBudget(){	return passes.getSampleBudget();	}
+	/**
+	 * 	Sets the supersampling of the finished views. It's used from the next view on.
+	 * @param budget: Maximum number of extra samples of every view, or 0 to turn it off. A budget equal to the pixels of the view costs at most as much as the view.
+	 * @param threshold: Smallest difference of iterations between neighbours that is supersampled.
+	 */
+	public void setSupersampling(int budget, float threshold)
+	{
+		passes.setSupersampling(budget, threshold);
+	}
+
+	/**
+	 * 	Drops the request that wasn't calculated and gives back the cache it owns. The pipeline can't be used after this.
+	 */
+	public void shutdown()
+	{
+		pending = null;
+		if(cache != null && engine.getCache() == cache)
+			engine.setCache(null);
+	}
+}
@@ -0,0 +1,32 @@
+package java.util.concurrent;
+
+/**
+ * 	ForkJoinPool of the html version, which has a single thread: every task is calculated on the calling thread.
+ * 	It only has the methods core uses.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class ForkJoinPool
+{
+	public ForkJoinPool(){}
+
+	/**
+	 * 	Creates a pool. There is a single thread whatever parallelism is.
+	 */
+	public ForkJoinPool(int parallelism){}
+
+	/**
+	 * 	Calculates task on the calling thread.
+	 */
+	public <T> T invoke(ForkJoinTask<T> task)
+	{
+		return task.invoke();
+	}
+
+	/**
+	 * 	Gets the number of threads of the pool, which is always 1.
+	 */
+	public int getParallelism(){	return 1;	}
+
+	public void shutdown(){}
+}
@@ -0,0 +1,43 @@
+package java.util.concurrent;
+
+/**
+ * 	ForkJoinTask of the html version: the forked tasks are calculated one after the other, on the calling thread.
+ * 	It only has the methods core uses.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public abstract class ForkJoinTask<V>
+{
+	/**
+	 * 	Calculates the task and returns its result.
+	 */
+	public final V invoke()
+	{
+		exec();
+		return getRawResult();
+	}
+
+	/**
+	 * 	Calculates both tasks, one after the other.
+	 */
+	public static void invokeAll(ForkJoinTask<?> t1, ForkJoinTask<?> t2)
+	{
+		t1.invoke();
+		t2.invoke();
+	}
+
+	/**
+	 * 	Calculates every task, one after the other.
+	 */
+	public static void invokeAll(ForkJoinTask<?>... tasks)
+	{
+		for (ForkJoinTask<?> t : tasks)
+			t.invoke();
+	}
+
+	public abstract V getRawResult();
+
+	protected abstract void setRawResult(V value);
+
+	protected abstract boolean exec();
+}
@@ -0,0 +1,24 @@
+package java.util.concurrent;
+
+/**
+ * 	RecursiveAction of the html version. See {@link ForkJoinTask}.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public abstract class RecursiveAction extends ForkJoinTask<Void>
+{
+	/**
+	 * 	The calculation of the task.
+	 */
+	protected abstract void compute();
+
+	public final Void getRawResult(){	return null;	}
+
+	protected final void setRawResult(Void value){}
+
+	protected final boolean exec()
+	{
+		compute();
+		return true;
+	}
+}
@@ -0,0 +1,39 @@
+package java.util.concurrent.atomic;
+
+/**
+ * 	AtomicLong of the html version, which has a single thread, so a plain long is atomic.
+ * 	It only has the methods core uses.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class AtomicLong
+{
+	/**
+	 * 	The value.
+	 */
+	private long value;
+
+	public AtomicLong(){}
+
+	public AtomicLong(long value){	this.value = value;	}
+
+	public final long get(){	return value;	}
+
+	public final void set(long value){	this.value = value;	}
+
+	public final long incrementAndGet(){	return ++value;	}
+
+	public final long decrementAndGet(){	return --value;	}
+
+	public final long addAndGet(long delta){	return value += delta;	}
+
+	public final long getAndAdd(long delta)
+	{
+		long old = value;
+		value += delta;
+		return old;
+	}
+
+	@Override
+	public String toString(){	return Long.toString(value);	}
+}
@@ -0,0 +1,174 @@
+package eu.nigsia.fractals.render.simd;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import eu.nigsia.fractals.render.FloatKernel;
+import eu.nigsia.fractals.render.IterationBuffer;
+import eu.nigsia.fractals.render.MandelbrotKernel;
+import eu.nigsia.fractals.render.RowKernel;
+import eu.nigsia.fractals.render.View;
+
+/**
+ * 	Single precision version of {@link VectorKernel}: the same lane refilling, with {@link FloatVector}, so every vector holds twice as many pixels.
+ * 	Every lane does exactly the same operations as {@link FloatKernel}, bound of the error included, so the result is bit-identical to it.
+ * 	The pixels whose bound is too big are calculated with {@link MandelbrotKernel} when their lane is refilled.
+ * 	The iterations are counted in floats, so maxIter must be below 2^24.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class FloatVectorKernel implements RowKernel
+{
+	/**
+	 * 	Widest vector shape the CPU supports (8 floats on AVX2, 16 on AVX-512).
+	 */
+	private static final VectorSpecies<Float> SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	@Override
+	public void iterate(View view, int y, int x, int count, IterationBuffer out)
+	{
+		int lanes = SPECIES.length();
+		int maxIter = view.maxIter;
+		int row = y * view.width;
+		double cYd = view.im(y);
+		float cY = (float)cYd;
+		FloatVector cy = FloatVector.broadcast(SPECIES, cY);
+		FloatVector one = FloatVector.broadcast(SPECIES, 1f);
+
+		// State of every lane while it's stored in arrays (between two refills)
+		int[] pixel = new int[lanes];
+		float[] cxs = new float[lanes], zxs = new float[lanes], zys = new float[lanes], iters = new float[lanes];
+		float[] savedXs = new float[lanes], savedYs = new float[lanes], powers = new float[lanes], stepss = new float[lanes];
+		float[] errors = new float[lanes], sizes = new float[lanes];
+		boolean[] running = new boolean[lanes], cycles = new boolean[lanes], doubts = new boolean[lanes];
+		for (int i = 0; i < lanes; i++)
+			pixel[i] = -1;
+
+		int next = x, end = x + count;
+		while(true)
+		{
+			// Store the lanes that finished and give them the next pixels
+			int live = 0;
+			for (int i = 0; i < lanes; i++)
+			{
+				if(running[i])
+				{
+					live++;
+					continue;
+				}
+				if(pixel[i] >= 0)
+				{
+					int index = row + pixel[i];
+					if(doubts[i])
+						MandelbrotKernel.iterate(view.re(pixel[i]), cYd, maxIter, out, index);
+					else if(cycles[i])
+						out.set(index, MandelbrotKernel.INTERIOR, MandelbrotKernel.INTERIOR, zxs[i], zys[i]);
+					else
+					{
+						int iter = (int)iters[i];
+						out.set(index, iter, MandelbrotKernel.smooth(iter, maxIter, zxs[i] * zxs[i] + zys[i] * zys[i]), zxs[i], zys[i]);
+					}
+					pixel[i] = -1;
+				}
+				while(next < end && pixel[i] < 0)
+				{
+					double cXd = view.re(next);
+					if(MandelbrotKernel.isInCardioidOrBulb(cXd, cYd))
+						out.set(row + next, MandelbrotKernel.INTERIOR, MandelbrotKernel.INTERIOR, 0, 0);
+					else
+					{
+						float cX = (float)cXd;
+						pixel[i] = next;
+						cxs[i] = cX;
+						errors[i] = (float)(Math.abs(cXd - cX) + Math.abs(cYd - cY));
+						sizes[i] = Math.abs(cX) + Math.abs(cY);
+						zxs[i] = zys[i] = iters[i] = savedXs[i] = savedYs[i] = stepss[i] = 0;
+						powers[i] = 1;
+						running[i] = true;
+						live++;
+					}
+					next++;
+				}
+			}
+			if(live == 0)
+				return;
+
+			FloatVector cx = FloatVector.fromArray(SPECIES, cxs, 0);
+			FloatVector zx = FloatVector.fromArray(SPECIES, zxs, 0);
+			FloatVector zy = FloatVector.fromArray(SPECIES, zys, 0);
+			FloatVector iter = FloatVector.fromArray(SPECIES, iters, 0);
+			FloatVector savedX = FloatVector.fromArray(SPECIES, savedXs, 0);
+			FloatVector savedY = FloatVector.fromArray(SPECIES, savedYs, 0);
+			FloatVector power = FloatVector.fromArray(SPECIES, powers, 0);
+			FloatVector steps = FloatVector.fromArray(SPECIES, stepss, 0);
+			FloatVector error = FloatVector.fromArray(SPECIES, errors, 0);
+			FloatVector size = FloatVector.fromArray(SPECIES, sizes, 0);
+			VectorMask<Float> active = VectorMask.fromArray(SPECIES, running, 0);
+			VectorMask<Float> cycle = active.not().and(active);
+			boolean cycled = false;
+
+			// Iterate until a lane finishes. Lanes without a pixel are iterated too, but they are never read.
+			while(true)
+			{
+				FloatVector norm = zx.mul(zx).add(zy.mul(zy));
+				FloatVector radius = norm.lanewise(VectorOperators.SQRT);
+				VectorMask<Float> alive = active.and(iter.compare(VectorOperators.LT, maxIter));
+				active = alive.and(radius.add(error).compare(VectorOperators.LT, 2f));
+				if(active.trueCount() != live)
+				{
+					// The lanes whose bound reaches 2 escape if the whole bound is beyond it, or fall back to doubles
+					alive.andNot(active).and(radius.sub(error).compare(VectorOperators.LT, 2f)).intoArray(doubts, 0);
+					break;
+				}
+				error = radius.mul(2f).mul(error).add(error.mul(error)).add(norm.add(size).mul(FloatKernel.ROUNDING));
+
+				FloatVector tmp = zx.mul(zx).sub(zy.mul(zy)).add(cx);
+				zy = zx.mul(2f).mul(zy).add(cy);
+				zx = tmp;
+				iter = iter.add(one);
+
+				// Brent's cycle detection, like FloatKernel
+				cycle = zx.compare(VectorOperators.EQ, savedX).and(zy.compare(VectorOperators.EQ, savedY)).and(active);
+				if(cycle.anyTrue())
+				{
+					VectorMask<Float> doubt = cycle.and(error.compare(VectorOperators.GT, FloatKernel.CYCLE_ERROR));
+					doubt.intoArray(doubts, 0);
+					active = active.andNot(cycle);
+					cycle = cycle.andNot(doubt);
+					cycled = true;
+					break;
+				}
+				steps = steps.add(one);
+				VectorMask<Float> save = steps.compare(VectorOperators.EQ, power);
+				savedX = savedX.blend(zx, save);
+				savedY = savedY.blend(zy, save);
+				power = power.blend(power.mul(2f), save);
+				steps = steps.blend(0f, save);
+			}
+
+			// When a lane found a cycle, the others left the loop in the middle of the step
+			if(cycled)
+			{
+				steps = steps.add(one, active);
+				VectorMask<Float> save = steps.compare(VectorOperators.EQ, power).and(active);
+				savedX = savedX.blend(zx, save);
+				savedY = savedY.blend(zy, save);
+				power = power.blend(power.mul(2f), save);
+				steps = steps.blend(0f, save);
+			}
+
+			zx.intoArray(zxs, 0);
+			zy.intoArray(zys, 0);
+			iter.intoArray(iters, 0);
+			savedX.intoArray(savedXs, 0);
+			savedY.intoArray(savedYs, 0);
+			power.intoArray(powers, 0);
+			steps.intoArray(stepss, 0);
+			error.intoArray(errors, 0);
+			active.intoArray(running, 0);
+			cycle.intoArray(cycles, 0);
+		}
+	}
+}
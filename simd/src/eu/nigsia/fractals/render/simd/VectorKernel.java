@@ -0,0 +1,154 @@
+package eu.nigsia.fractals.render.simd;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import eu.nigsia.fractals.render.IterationBuffer;
+import eu.nigsia.fractals.render.MandelbrotKernel;
+import eu.nigsia.fractals.render.RowKernel;
+import eu.nigsia.fractals.render.View;
+
+/**
+ * 	Escape-time kernel of the Mandelbrot set that iterates several pixels at once with the Vector API ({@link DoubleVector}), one pixel per lane.
+ * 	Every lane does exactly the same operations, in the same order, as {@link MandelbrotKernel} (including Brent's cycle detection), so the result is bit-identical.
+ * 	Neighbour pixels can need very different numbers of iterations, so lanes are not iterated in lockstep batches:
+ * 	as soon as a lane escapes, its pixel is stored and the lane takes the next pixel of the row. The vector only stops when the row runs out of pixels.
+ * 	It needs Java 16 or later, started with <i>--add-modules jdk.incubator.vector</i>. {@link eu.nigsia.fractals.render.MandelbrotEngine} loads it only when it's available.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public final class VectorKernel implements RowKernel
+{
+	/**
+	 * 	Widest vector shape the CPU supports (4 doubles on AVX2, 8 on AVX-512).
+	 */
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public void iterate(View view, int y, int x, int count, IterationBuffer out)
+	{
+		int lanes = SPECIES.length();
+		int maxIter = view.maxIter;
+		int row = y * view.width;
+		double cY = view.im(y);
+		DoubleVector cy = DoubleVector.broadcast(SPECIES, cY);
+		DoubleVector one = DoubleVector.broadcast(SPECIES, 1.0);
+
+		// State of every lane while it's stored in arrays (between two refills)
+		int[] pixel = new int[lanes];
+		double[] cxs = new double[lanes], zxs = new double[lanes], zys = new double[lanes], iters = new double[lanes];
+		double[] savedXs = new double[lanes], savedYs = new double[lanes], powers = new double[lanes], stepss = new double[lanes];
+		boolean[] running = new boolean[lanes], cycles = new boolean[lanes];
+		for (int i = 0; i < lanes; i++)
+			pixel[i] = -1;
+
+		int next = x, end = x + count;
+		while(true)
+		{
+			// Store the lanes that finished and give them the next pixels
+			int live = 0;
+			for (int i = 0; i < lanes; i++)
+			{
+				if(running[i])
+				{
+					live++;
+					continue;
+				}
+				if(pixel[i] >= 0)
+				{
+					int index = row + pixel[i];
+					if(cycles[i])
+						out.set(index, MandelbrotKernel.INTERIOR, MandelbrotKernel.INTERIOR, zxs[i], zys[i]);
+					else
+					{
+						int iter = (int)iters[i];
+						out.set(index, iter, MandelbrotKernel.smooth(iter, maxIter, zxs[i] * zxs[i] + zys[i] * zys[i]), zxs[i], zys[i]);
+					}
+					pixel[i] = -1;
+				}
+				while(next < end && pixel[i] < 0)
+				{
+					double cX = view.re(next);
+					if(MandelbrotKernel.isInCardioidOrBulb(cX, cY))
+						out.set(row + next, MandelbrotKernel.INTERIOR, MandelbrotKernel.INTERIOR, 0, 0);
+					else
+					{
+						pixel[i] = next;
+						cxs[i] = cX;
+						zxs[i] = zys[i] = iters[i] = savedXs[i] = savedYs[i] = stepss[i] = 0;
+						powers[i] = 1;
+						running[i] = true;
+						live++;
+					}
+					next++;
+				}
+			}
+			if(live == 0)
+				return;
+
+			DoubleVector cx = DoubleVector.fromArray(SPECIES, cxs, 0);
+			DoubleVector zx = DoubleVector.fromArray(SPECIES, zxs, 0);
+			DoubleVector zy = DoubleVector.fromArray(SPECIES, zys, 0);
+			DoubleVector iter = DoubleVector.fromArray(SPECIES, iters, 0);
+			DoubleVector savedX = DoubleVector.fromArray(SPECIES, savedXs, 0);
+			DoubleVector savedY = DoubleVector.fromArray(SPECIES, savedYs, 0);
+			DoubleVector power = DoubleVector.fromArray(SPECIES, powers, 0);
+			DoubleVector steps = DoubleVector.fromArray(SPECIES, stepss, 0);
+			VectorMask<Double> active = VectorMask.fromArray(SPECIES, running, 0);
+			VectorMask<Double> cycle = active.not().and(active);
+			boolean cycled = false;
+
+			// Iterate until a lane finishes. Lanes without a pixel are iterated too, but they are never read.
+			while(true)
+			{
+				active = active.and(zx.mul(zx).add(zy.mul(zy)).compare(VectorOperators.LT, 4.0))
+						.and(iter.compare(VectorOperators.LT, maxIter));
+				if(active.trueCount() != live)
+					break;
+
+				DoubleVector tmp = zx.mul(zx).sub(zy.mul(zy)).add(cx);
+				zy = zx.mul(2.0).mul(zy).add(cy);
+				zx = tmp;
+				iter = iter.add(one);
+
+				// Brent's cycle detection, like MandelbrotKernel
+				cycle = zx.compare(VectorOperators.EQ, savedX).and(zy.compare(VectorOperators.EQ, savedY)).and(active);
+				if(cycle.anyTrue())
+				{
+					active = active.andNot(cycle);
+					cycled = true;
+					break;
+				}
+				steps = steps.add(one);
+				VectorMask<Double> save = steps.compare(VectorOperators.EQ, power);
+				savedX = savedX.blend(zx, save);
+				savedY = savedY.blend(zy, save);
+				power = power.blend(power.mul(2.0), save);
+				steps = steps.blend(0.0, save);
+			}
+
+			// When a lane found a cycle, the others left the loop in the middle of the step
+			if(cycled)
+			{
+				steps = steps.add(one, active);
+				VectorMask<Double> save = steps.compare(VectorOperators.EQ, power).and(active);
+				savedX = savedX.blend(zx, save);
+				savedY = savedY.blend(zy, save);
+				power = power.blend(power.mul(2.0), save);
+				steps = steps.blend(0.0, save);
+			}
+
+			zx.intoArray(zxs, 0);
+			zy.intoArray(zys, 0);
+			iter.intoArray(iters, 0);
+			savedX.intoArray(savedXs, 0);
+			savedY.intoArray(savedYs, 0);
+			power.intoArray(powers, 0);
+			steps.intoArray(stepss, 0);
+			active.intoArray(running, 0);
+			cycle.intoArray(cycles, 0);
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package eu.nigsia.fractals.render.simd;
+
+import org.junit.Test;
+
+import eu.nigsia.fractals.render.CancelToken;
+import eu.nigsia.fractals.render.FloatKernel;
+import eu.nigsia.fractals.render.IterationBuffer;
+import eu.nigsia.fractals.render.Kernel;
+import eu.nigsia.fractals.render.MandelbrotEngine;
+import eu.nigsia.fractals.render.MandelbrotKernel;
+import eu.nigsia.fractals.render.RowKernel;
+import eu.nigsia.fractals.render.View;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 	Checks that the vectorized kernels store exactly the same bits as the plain ones, pixel by pixel, on views with every kind of pixel.
+ * 	@autor Ignasi Snchez Rodrguez (https://www.github.com/Nigsia)
+ *  @year  2015
+ */
+public class VectorKernelTest
+{
+	/**
+	 * 	The whole set, a boundary with many deep pixels, a view of the cardioid's interior and a zoom into a spiral.
+	 */
+	private static final View[] VIEWS = {
+		new View(70, 50, 40, 300, 100, 100),
+		new View(1552, 4840, 6380, 1000, 120, 90),
+		new View(-50, 0, 200, 2000, 100, 60),
+		new View(74614, -12932, 100000, 5000, 80, 80),
+	};
+
+	@Test
+	public void doubleRowsAreBitIdentical()
+	{
+		for (View view : VIEWS)
+			for (boolean orbits : new boolean[]{ true, false })
+			{
+				IterationBuffer expected = new IterationBuffer(view.width, view.height, orbits);
+				IterationBuffer actual = new IterationBuffer(view.width, view.height, orbits);
+				for (int y = 0; y < view.height; y++)
+				{
+					for (int x = 0; x < view.width; x++)
+						MandelbrotKernel.iterate(view.re(x), view.im(y), view.maxIter, expected, x + y * view.width);
+					iterate(new VectorKernel(), view, y, actual);
+				}
+				assertSame(view, expected, actual);
+			}
+	}
+
+	@Test
+	public void floatRowsAreBitIdentical()
+	{
+		for (View view : VIEWS)
+		{
+			IterationBuffer expected = new IterationBuffer(view.width, view.height);
+			IterationBuffer actual = new IterationBuffer(view.width, view.height);
+			for (int y = 0; y < view.height; y++)
+			{
+				for (int x = 0; x < view.width; x++)
+					FloatKernel.iterate(view.re(x), view.im(y), view.maxIter, expected, x + y * view.width);
+				iterate(new FloatVectorKernel(), view, y, actual);
+			}
+			assertSame(view, expected, actual);
+		}
+	}
+
+	@Test
+	public void engineRendersTheSameView()
+	{
+		assertTrue("Run with --add-modules jdk.incubator.vector", MandelbrotEngine.isVectorAvailable());
+		MandelbrotEngine engine = new MandelbrotEngine();
+		for (View view : VIEWS)
+		{
+			IterationBuffer expected = new IterationBuffer(view.width, view.height);
+			IterationBuffer actual = new IterationBuffer(view.width, view.height);
+			engine.render(view, expected, Kernel.DOUBLE, CancelToken.NONE);
+			engine.render(view, actual, Kernel.DOUBLE_VECTOR, CancelToken.NONE);
+			assertSame(view, expected, actual);
+		}
+	}
+
+	/**
+	 * 	Calculates the row y in runs of different lengths, so some of them don't fill the lanes and some start in the middle of the row.
+	 */
+	private static void iterate(RowKernel kernel, View view, int y, IterationBuffer out)
+	{
+		int x = 0;
+		for (int count = 1; x < view.width; count = count * 2 + 1)
+		{
+			int n = Math.min(count, view.width - x);
+			kernel.iterate(view, y, x, n, out);
+			x += n;
+		}
+	}
+
+	private static void assertSame(View view, IterationBuffer expected, IterationBuffer actual)
+	{
+		for (int i = 0; i < view.size(); i++)
+		{
+			String pixel = view + " pixel " + (i % view.width) + ", " + (i / view.width);
+			assertEquals(pixel, expected.iterations[i], actual.iterations[i]);
+			assertEquals(pixel, Float.floatToIntBits(expected.smooth[i]), Float.floatToIntBits(actual.smooth[i]));
+			if(expected.hasOrbits())
+			{
+				assertEquals(pixel, Double.doubleToLongBits(expected.zx[i]), Double.doubleToLongBits(actual.zx[i]));
+				assertEquals(pixel, Double.doubleToLongBits(expected.zy[i]), Double.doubleToLongBits(actual.zy[i]));
+			}
+		}
+	}
+}